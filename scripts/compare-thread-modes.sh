@@ -0,0 +1,14 @@
+#!/usr/bin/env bash
+# Runs the same load against the API in platform-thread and virtual-thread mode and prints both reports.
+# Requires Java 21 for the virtual-thread run. Uses the loadtest profile, so no database has to be running.
+#
+# Usage: scripts/compare-thread-modes.sh [extra LoadGenerator options, e.g. --clients=400 --duration=30]
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+./mvnw -q -DskipTests package
+
+echo "== platform threads =="
+SKIP_BUILD=true PROFILES=loadtest scripts/loadtest.sh "$@"
+echo "== virtual threads =="
+SKIP_BUILD=true PROFILES=loadtest,virtual-threads scripts/loadtest.sh "$@"
@@ -0,0 +1,32 @@
+#!/usr/bin/env bash
+# Starts the API with the loadtest profile (in-memory H2, no MySQL needed), replays the load mix against it and
+# prints throughput and latency percentiles per operation.
+#
+# Usage: scripts/loadtest.sh [extra LoadGenerator options, e.g. --clients=128 --duration=120 --mix=get=80,list=20]
+# Set PROFILES to add profiles, e.g. PROFILES=loadtest,virtual-threads.
+set -euo pipefail
+
+PORT=${PORT:-8080}
+PROFILES=${PROFILES:-loadtest}
+BASE_URL="http://localhost:${PORT}"
+JAR=target/api-rest-0.0.1-SNAPSHOT.jar
+
+cd "$(dirname "$0")/.."
+if [[ "${SKIP_BUILD:-false}" != "true" ]]; then
+  ./mvnw -q -DskipTests package
+fi
+
+rm -rf target/loadtest-images
+java ${JAVA_OPTS:-} -jar "${JAR}" --server.port="${PORT}" --spring.profiles.active="${PROFILES}" \
+  > "target/loadtest-${PROFILES//,/-}.log" 2>&1 &
+PID=$!
+trap 'kill ${PID} 2> /dev/null; wait ${PID} 2> /dev/null || true' EXIT
+
+for _ in $(seq 1 60); do
+  if curl -fs "${BASE_URL}/actuator/health" > /dev/null; then
+    break
+  fi
+  sleep 1
+done
+
+java -cp target/test-classes app.brickup.apirest.loadtest.LoadGenerator --url="${BASE_URL}" "$@"
@@ -0,0 +1,19 @@
+#!/usr/bin/env bash
+# Moves the images kept one per file into segments, points their tasks at the new locations and exits. Images
+# larger than app.images.segments.max-image-size stay in files. Safe to run again: it picks up where it stopped.
+#
+# Stop the application first, since the segments can only be open in one process, and pass it the same
+# configuration (database, app.images.directory) it runs with; then start it with app.images.store=segments.
+#
+# Usage: scripts/migrate-images.sh [application options, e.g. --spring.profiles.active=prod]
+set -euo pipefail
+
+JAR=target/api-rest-0.0.1-SNAPSHOT.jar
+
+cd "$(dirname "$0")/.."
+if [[ "${SKIP_BUILD:-false}" != "true" ]]; then
+  ./mvnw -q -DskipTests package
+fi
+
+java ${JAVA_OPTS:-} -jar "${JAR}" --spring.main.web-application-type=none --app.images.store=segments \
+  --app.images.segments.migrate=true "$@"
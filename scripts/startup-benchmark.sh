@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# Measures time to the first request for the plain jar, the AOT-processed jar with a CDS archive, and the same
+# with the warm-up enabled. Builds with the aot profile and uses the loadtest profile against an H2 file database,
+# seeded once, so every start runs the Flyway validation and reads real rows.
+#
+# Usage: scripts/startup-benchmark.sh [extra StartupBenchmark options, e.g. --runs=10 --requests=500]
+set -euo pipefail
+
+PORT=${PORT:-8080}
+BASE_URL="http://localhost:${PORT}"
+JAR=target/api-rest-0.0.1-SNAPSHOT.jar
+CDS_JAR=target/cds/api-rest-0.0.1-SNAPSHOT-cds.jar
+
+cd "$(dirname "$0")/.."
+if [[ "${SKIP_BUILD:-false}" != "true" ]]; then
+  ./mvnw -q -Paot -DskipTests package
+fi
+
+rm -rf target/startup-db target/loadtest-images target/startup-*.log
+APP_ARGS=(--server.port="${PORT}" --spring.profiles.active=loadtest
+  "--spring.datasource.url=jdbc:h2:file:./target/startup-db/brickup;MODE=MySQL;DATABASE_TO_LOWER=TRUE")
+CDS=(-XX:SharedArchiveFile=target/cds/application.jsa -Dspring.aot.enabled=true -jar "${CDS_JAR}")
+
+benchmark() {
+  java -cp target/test-classes app.brickup.apirest.loadtest.StartupBenchmark --url="${BASE_URL}" "$@"
+}
+
+benchmark --name=jar --seed=200 "${@}" -- java ${JAVA_OPTS:-} -jar "${JAR}" "${APP_ARGS[@]}"
+benchmark --name=aot-cds "${@}" -- java ${JAVA_OPTS:-} "${CDS[@]}" "${APP_ARGS[@]}"
+benchmark --name=aot-cds-warmup "${@}" -- java ${JAVA_OPTS:-} "${CDS[@]}" "${APP_ARGS[@]}" --app.warmup.enabled=true
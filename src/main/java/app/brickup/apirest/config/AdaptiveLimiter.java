@@ -0,0 +1,167 @@
+package app.brickup.apirest.config;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrency limit for one class of endpoints that adapts to latency, by additive increase and multiplicative
+ * decrease. A request served within the latency target while the limit is in use raises it by {@code 1 / limit},
+ * about one per round of requests; a slower one cuts it by a tenth, at most once per round, as the requests
+ * admitted before a cut did not see the lower limit yet. The limit stays between {@code min-limit} and
+ * {@code max-limit} and starts at the minimum.
+ * <p>
+ * Requests over the limit wait in a bounded FIFO queue until a slot frees up or their {@code queue-timeout} passes.
+ * Waiting holds the request thread, so the queue capacity bounds how many threads one class can take beyond its
+ * limit.
+ */
+public class AdaptiveLimiter {
+    public enum Admission {
+        ADMITTED, QUEUE_FULL, TIMED_OUT
+    }
+
+    /**
+     * Settings of an endpoint class. {@code deadline} is the time a request has from arrival, queueing included,
+     * see {@link RequestDeadline}.
+     */
+    public record Settings(int minLimit, int maxLimit, Duration latencyTarget, int queueCapacity,
+                           Duration queueTimeout, Duration deadline) {
+    }
+
+    private static final double BACKOFF_RATIO = 0.9;
+    // Weight of the newest sample in the latency average used for Retry-After.
+    private static final double SMOOTHING = 0.1;
+    private static final long MAX_RETRY_AFTER = 60;
+
+    private final Settings settings;
+    private final long latencyTarget;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // Tickets of the waiting requests, oldest first.
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private long lastBackoff = System.nanoTime();
+    private double averageLatency;
+
+    public AdaptiveLimiter(Settings settings) {
+        if (settings.minLimit() < 1 || settings.maxLimit() < settings.minLimit()) {
+            throw new IllegalArgumentException("Expected 1 <= min-limit <= max-limit");
+        }
+        this.settings = settings;
+        this.latencyTarget = settings.latencyTarget().toNanos();
+        this.limit = settings.minLimit();
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Takes a slot, waiting in the queue until {@code arrivedAt} plus the queue timeout if the limit is reached.
+     * Every admitted request must be followed by {@link #release}.
+     */
+    public Admission acquire(long arrivedAt) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (queue.isEmpty() && inFlight < permits()) {
+                inFlight++;
+                return Admission.ADMITTED;
+            }
+            if (queue.size() >= settings.queueCapacity()) {
+                return Admission.QUEUE_FULL;
+            }
+
+            Object ticket = new Object();
+            queue.addLast(ticket);
+            try {
+                long remaining = arrivedAt + settings.queueTimeout().toNanos() - System.nanoTime();
+                while (queue.peekFirst() != ticket || inFlight >= permits()) {
+                    if (remaining <= 0) {
+                        return Admission.TIMED_OUT;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+                return Admission.ADMITTED;
+            } finally {
+                queue.remove(ticket);
+                // The next in line may fit as well, or be the one a timed out request was blocking.
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot of a request admitted at {@code admittedAt} and adjusts the limit to its latency.
+     */
+    public void release(long admittedAt, long completedAt) {
+        lock.lock();
+        try {
+            long latency = completedAt - admittedAt;
+            averageLatency = averageLatency == 0 ? latency : averageLatency + SMOOTHING * (latency - averageLatency);
+            if (latency > latencyTarget) {
+                if (admittedAt - lastBackoff > 0) {
+                    limit = Math.max(settings.minLimit(), limit * BACKOFF_RATIO);
+                    lastBackoff = completedAt;
+                }
+            } else if (inFlight >= limit / 2) {
+                limit = Math.min(settings.maxLimit(), limit + 1 / limit);
+            }
+            inFlight--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Seconds until a rejected request is likely to get a slot: the time for the queue ahead of it to drain at the
+     * current limit and average latency.
+     */
+    public long retryAfterSeconds() {
+        lock.lock();
+        try {
+            double seconds = averageLatency * (queue.size() + 1) / permits() / TimeUnit.SECONDS.toNanos(1);
+            return Math.min(MAX_RETRY_AFTER, Math.max(1, (long) Math.ceil(seconds)));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int permits() {
+        return (int) limit;
+    }
+}
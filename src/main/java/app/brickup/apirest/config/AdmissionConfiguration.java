@@ -0,0 +1,57 @@
+package app.brickup.apirest.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+
+@Configuration
+public class AdmissionConfiguration {
+    /**
+     * Registered here rather than scanned, so web slice tests do not need a meter registry.
+     */
+    @Bean
+    public AdmissionFilter admissionFilter(Environment environment, MeterRegistry registry,
+                                           @Value("${app.admission.enabled}") boolean enabled,
+                                           @Value("${app.admission.deadline}") Duration deadline) {
+        return new AdmissionFilter(enabled, limiter(environment, registry, "images"),
+                limiter(environment, registry, "uploads"), deadline, registry);
+    }
+
+    /**
+     * Replaces the transaction manager Spring Boot would create, with the same customizations
+     * ({@code spring.transaction.*}).
+     */
+    @Bean
+    public PlatformTransactionManager transactionManager(ObjectProvider<TransactionManagerCustomizers> customizers) {
+        DeadlineTransactionManager transactionManager = new DeadlineTransactionManager();
+        customizers.ifAvailable(c -> c.customize(transactionManager));
+        return transactionManager;
+    }
+
+    private static AdaptiveLimiter limiter(Environment environment, MeterRegistry registry, String endpointClass) {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(Binder.get(environment)
+                .bind("app.admission." + endpointClass, AdaptiveLimiter.Settings.class).get());
+        Gauge.builder("tasks.admission.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Current concurrency limit")
+                .tag("class", endpointClass)
+                .register(registry);
+        Gauge.builder("tasks.admission.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("Requests being served")
+                .tag("class", endpointClass)
+                .register(registry);
+        Gauge.builder("tasks.admission.queued", limiter, AdaptiveLimiter::getQueued)
+                .description("Requests waiting for a slot")
+                .tag("class", endpointClass)
+                .register(registry);
+        return limiter;
+    }
+}
@@ -0,0 +1,145 @@
+package app.brickup.apirest.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import app.brickup.apirest.util.ImageResponseUtil;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Admission control, so a burst of image downloads or uploads cannot take every request thread and starve the
+ * JSON endpoints. Downloads ({@code GET /api/tasks/{id}/image}) and uploads (multipart bodies larger than a plain
+ * form, chunks and completions under {@code /api/uploads}) each go through their own {@link AdaptiveLimiter}; the
+ * remaining endpoints are not limited. It runs before the multipart body is read, so a rejected upload costs
+ * little.
+ * <p>
+ * A request that finds the queue of its class full is answered {@code 429}, one that waits past its queue timeout
+ * {@code 503}, both with {@code Retry-After}. Every {@code /api} request also gets a {@link RequestDeadline}: the
+ * {@code deadline} of its class, or {@code app.admission.deadline}, from arrival. The change feed and the export
+ * are long-lived by design and are left out.
+ * <p>
+ * Limited requests are kept off sendfile, see {@link ImageResponseUtil#NO_SENDFILE}: the slot is only released, and
+ * the download timed, once the body has been written, at the cost of copying large images through the connector.
+ */
+public class AdmissionFilter extends OncePerRequestFilter {
+    private static final Pattern IMAGE = Pattern.compile("/api/tasks/[^/]+/image");
+    // Multipart requests up to this size carry form fields only, not an image worth limiting.
+    private static final long SMALL_MULTIPART = 64 * 1024;
+
+    private final boolean enabled;
+    private final AdaptiveLimiter images;
+    private final AdaptiveLimiter uploads;
+    private final Duration deadline;
+    private final MeterRegistry registry;
+
+    public AdmissionFilter(boolean enabled, AdaptiveLimiter images, AdaptiveLimiter uploads, Duration deadline,
+                           MeterRegistry registry) {
+        this.enabled = enabled;
+        this.images = images;
+        this.uploads = uploads;
+        this.deadline = deadline;
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = path(request);
+        return !enabled || !path.startsWith("/api/") || path.equals("/api/tasks/stream")
+                || path.equals("/api/tasks/export");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long arrivedAt = System.nanoTime();
+        String endpointClass = endpointClass(request);
+        AdaptiveLimiter limiter = switch (endpointClass) {
+            case "images" -> images;
+            case "uploads" -> uploads;
+            default -> null;
+        };
+        if (limiter == null) {
+            withDeadline(arrivedAt + deadline.toNanos(), request, response, chain);
+            return;
+        }
+
+        AdaptiveLimiter.Admission admission;
+        try {
+            admission = limiter.acquire(arrivedAt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admission = AdaptiveLimiter.Admission.TIMED_OUT;
+        }
+        if (admission != AdaptiveLimiter.Admission.ADMITTED) {
+            reject(response, endpointClass, limiter, admission);
+            return;
+        }
+
+        request.setAttribute(ImageResponseUtil.NO_SENDFILE, Boolean.TRUE);
+        long admittedAt = System.nanoTime();
+        try {
+            withDeadline(arrivedAt + limiter.getSettings().deadline().toNanos(), request, response, chain);
+        } finally {
+            limiter.release(admittedAt, System.nanoTime());
+        }
+    }
+
+    private String endpointClass(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = path(request);
+        if (("GET".equals(method) || "HEAD".equals(method)) && IMAGE.matcher(path).matches()) {
+            return "images";
+        }
+        if (path.startsWith("/api/uploads/") && ("PUT".equals(method) || path.endsWith("/complete"))) {
+            return "uploads";
+        }
+        String contentType = request.getContentType();
+        long length = request.getContentLengthLong();
+        if (contentType != null && contentType.startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)
+                && (length < 0 || length > SMALL_MULTIPART)) {
+            return "uploads";
+        }
+        return "other";
+    }
+
+    private static void withDeadline(long deadline, HttpServletRequest request, HttpServletResponse response,
+                                     FilterChain chain) throws ServletException, IOException {
+        Long previous = RequestDeadline.set(deadline);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestDeadline.set(previous);
+        }
+    }
+
+    private void reject(HttpServletResponse response, String endpointClass, AdaptiveLimiter limiter,
+                        AdaptiveLimiter.Admission admission) throws IOException {
+        boolean queueFull = admission == AdaptiveLimiter.Admission.QUEUE_FULL;
+        Counter.builder("tasks.admission.rejected")
+                .description("Requests rejected by admission control")
+                .tag("class", endpointClass)
+                .tag("reason", queueFull ? "queue-full" : "timeout")
+                .register(registry)
+                .increment();
+
+        response.setStatus(queueFull ? HttpStatus.TOO_MANY_REQUESTS.value() : HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(limiter.retryAfterSeconds()));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(queueFull ? "Too many requests!" : "Server busy!");
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+}
@@ -0,0 +1,61 @@
+package app.brickup.apirest.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class AsyncConfiguration {
+    /**
+     * Runs image resizing off the request threads. The queue is bounded so a burst of uploads cannot pile up
+     * work in memory; rejected jobs are dropped and the original image keeps being served.
+     * <p>
+     * Resizing is CPU-bound, so this pool stays on platform threads even when {@code spring.threads.virtual.enabled}
+     * is set: virtual threads would only remove the bound on concurrent decodes.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor imageDerivativeExecutor(@Value("${app.images.derivatives.threads}") int threads,
+                                                          @Value("${app.images.derivatives.queue-capacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("image-derivative-");
+        return executor;
+    }
+
+    /**
+     * Writes to the subscribers of {@code /api/tasks/stream}. A subscriber has at most one drain queued or running,
+     * so a queue as large as the subscriber limit never rejects. A send blocks while the client's socket buffer is
+     * full, up to the connector's write timeout, so the thread count bounds how many stalled clients can delay the
+     * others. The sends only wait on sockets, so the threads are virtual in virtual-thread mode.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor taskStreamExecutor(@Value("${app.tasks.stream.threads}") int threads,
+                                                     @Value("${app.tasks.stream.max-subscribers}") int maxSubscribers,
+                                                     Environment environment) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(maxSubscribers);
+        setThreads(executor, "task-stream-", environment);
+        return executor;
+    }
+
+    /**
+     * Names the threads of the executor, and makes them virtual when {@code spring.threads.virtual.enabled} is set
+     * on Java 21. Boot only switches the executors it creates itself, and defining these keeps it from creating
+     * {@code applicationTaskExecutor}. The pool size and queue still apply.
+     */
+    static void setThreads(ThreadPoolTaskExecutor executor, String namePrefix, Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            executor.setThreadFactory(new VirtualThreadTaskExecutor(namePrefix).getVirtualThreadFactory());
+        } else {
+            executor.setThreadNamePrefix(namePrefix);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.service.TaskChangeTracker;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+public class DataSourceConfiguration {
+    /**
+     * The primary pool from {@code spring.datasource} and a read-only pool per entry of
+     * {@code app.datasource.replica-urls}, with the same credentials and {@code spring.datasource.hikari} settings.
+     * Without replicas every connection comes from the primary. This is the first shard; replicas cannot be combined
+     * with further shards.
+     */
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment,
+                                                             MeterRegistry registry,
+                                                             @Value("${app.datasource.replica-urls}") List<String> replicaUrls,
+                                                             @Value("${app.datasource.shard-urls}") List<String> shardUrls,
+                                                             @Value("${app.datasource.max-lag}") Duration maxLag) {
+        if (!urls(replicaUrls).isEmpty() && !urls(shardUrls).isEmpty()) {
+            throw new IllegalStateException("app.datasource.replica-urls and app.datasource.shard-urls cannot be "
+                    + "combined: replicas are only known for the first shard");
+        }
+        HikariDataSource primary = pool(properties, environment, registry, properties.determineUrl(), "primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls(replicaUrls)) {
+            HikariDataSource replica = pool(properties, environment, registry, url, "replica-" + (replicas.size() + 1));
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, maxLag);
+        Gauge.builder("tasks.datasource.replicas.available", routing, ReplicaRoutingDataSource::availableReplicas)
+                .description("Replicas currently serving reads")
+                .register(registry);
+        return routing;
+    }
+
+    /**
+     * The shards of the task table: the data source above, then a pool per entry of {@code app.datasource.shard-urls}
+     * with the same credentials and {@code spring.datasource.hikari} settings. Without shard URLs there is only the
+     * first.
+     */
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(ReplicaRoutingDataSource replicaRoutingDataSource,
+                                                         DataSourceProperties properties, Environment environment,
+                                                         MeterRegistry registry,
+                                                         @Value("${app.datasource.shard-urls}") List<String> shardUrls) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(replicaRoutingDataSource);
+        for (String url : urls(shardUrls)) {
+            shards.add(pool(properties, environment, registry, url, "shard-" + shards.size()));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * The data source everything uses. Connections are only fetched on the first statement, once the transaction
+     * is known to be read-only or not and the shard has been selected.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    /**
+     * Replicas must have applied every change this instance has seen before they serve its reads.
+     */
+    @Bean
+    public SmartInitializingSingleton replicaRequiredVersion(ReplicaRoutingDataSource routingDataSource,
+                                                             TaskChangeTracker changeTracker) {
+        return () -> routingDataSource.setRequiredVersion(changeTracker::knownVersion);
+    }
+
+    /**
+     * Registered here rather than scanned, so web slice tests do not need a data source.
+     */
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(ReplicaRoutingDataSource routingDataSource,
+                                                     @Value("${app.datasource.read-your-writes-window}") Duration window) {
+        return new ReadYourWritesFilter(routingDataSource, window);
+    }
+
+    private static List<String> urls(List<String> urls) {
+        return urls.stream()
+                .filter(url -> !url.isBlank())
+                .map(String::trim)
+                .toList();
+    }
+
+    static HikariDataSource pool(DataSourceProperties properties, Environment environment,
+                                         MeterRegistry registry, String url, String name) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        // The pools are not beans, so Spring Boot does not bind their hikaricp.* metrics itself.
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+        return pool;
+    }
+}
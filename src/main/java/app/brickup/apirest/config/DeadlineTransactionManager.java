@@ -0,0 +1,30 @@
+package app.brickup.apirest.config;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds every transaction started for a request by what is left of its {@link RequestDeadline}. Hibernate applies
+ * the timeout to each statement as a JDBC query timeout, so queries are cancelled once the client would no longer
+ * get an answer instead of holding a connection. Transactions outside requests, like the scheduled jobs, keep their
+ * own timeout.
+ */
+public class DeadlineTransactionManager extends JpaTransactionManager {
+    @Override
+    protected int determineTimeout(TransactionDefinition definition) {
+        int timeout = super.determineTimeout(definition);
+        Long remaining = RequestDeadline.remainingNanos();
+        if (remaining == null) {
+            return timeout;
+        }
+        if (remaining <= 0) {
+            throw new TransactionTimedOutException("The request deadline has passed");
+        }
+        // Timeouts are in whole seconds; rounding up leaves the statement at least the time the request has left.
+        int seconds = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toSeconds(remaining + 999_999_999));
+        return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? seconds : Math.min(timeout, seconds);
+    }
+}
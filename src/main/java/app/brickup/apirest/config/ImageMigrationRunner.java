@@ -0,0 +1,47 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.service.ImageMigrationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Moves the images kept in files into segments at startup when {@code app.images.segments.migrate} is set, before
+ * the warm-up and before the instance reports itself ready. Without a web server, as started by
+ * {@code scripts/migrate-images.sh}, the application exits once it is done. Like the {@link WarmupRunner}, the bean
+ * always exists and reads the setting when it runs.
+ */
+@Slf4j
+@Component
+@Order(0)
+public class ImageMigrationRunner implements ApplicationRunner {
+    private final ApplicationContext context;
+    private final ImageMigrationService migration;
+    private final boolean enabled;
+
+    public ImageMigrationRunner(ApplicationContext context, ImageMigrationService migration,
+                                @Value("${app.images.segments.migrate}") boolean enabled) {
+        this.context = context;
+        this.migration = migration;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        log.info("Image migration done: {}", migration.migrate());
+        if (!(context instanceof WebServerApplicationContext)) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+}
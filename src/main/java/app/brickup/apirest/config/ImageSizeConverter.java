@@ -0,0 +1,18 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.model.ImageSize;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Accepts {@code ?size=thumb|medium} in any case.
+ */
+@Component
+public class ImageSizeConverter implements Converter<String, ImageSize> {
+    @Override
+    public ImageSize convert(String source) {
+        return ImageSize.valueOf(source.trim().toUpperCase(Locale.ROOT));
+    }
+}
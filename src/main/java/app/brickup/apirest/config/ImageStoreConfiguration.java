@@ -0,0 +1,43 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.service.FileImageStore;
+import app.brickup.apirest.service.ImageStore;
+import app.brickup.apirest.service.SegmentImageStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class ImageStoreConfiguration {
+    /**
+     * Always there: it is the store with {@code app.images.store=files}, and with segments it keeps the images too
+     * large for them. The garbage collector works on its files either way.
+     */
+    @Bean
+    public FileImageStore fileImageStore(@Value("${app.images.directory}") String directory) {
+        return new FileImageStore(directory);
+    }
+
+    /**
+     * The store named by {@code app.images.store}. Chosen here rather than with conditions, so the setting still
+     * applies to a context processed ahead of time.
+     */
+    @Bean
+    @Primary
+    public ImageStore imageStore(FileImageStore files,
+                                 @Value("${app.images.store}") ImageStore.Type type,
+                                 @Value("${app.images.segments.directory}") String directory,
+                                 @Value("${app.images.segments.segment-size}") DataSize segmentSize,
+                                 @Value("${app.images.segments.max-image-size}") DataSize maxImageSize) throws IOException {
+        return switch (type) {
+            case FILES -> files;
+            case SEGMENTS -> new SegmentImageStore(files, Path.of(directory), Math.toIntExact(segmentSize.toBytes()),
+                    Math.toIntExact(maxImageSize.toBytes()));
+        };
+    }
+}
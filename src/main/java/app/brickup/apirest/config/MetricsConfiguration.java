@@ -0,0 +1,96 @@
+package app.brickup.apirest.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+@Configuration
+public class MetricsConfiguration {
+    /**
+     * Publishes the number of rows each repository method returned, or updated for modifying queries, as
+     * {@code tasks.repository.rows}. Spring Boot already times the same calls as
+     * {@code spring.data.repository.invocations}.
+     */
+    @Bean
+    static BeanPostProcessor repositoryRowsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxy, information) -> proxy.addAdvice(new RowsInterceptor(registry.getObject(),
+                                    information.getRepositoryInterface().getSimpleName()))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static class RowsInterceptor implements MethodInterceptor {
+        private final MeterRegistry registry;
+        private final String repository;
+        private final Map<Method, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+        RowsInterceptor(MeterRegistry registry, String repository) {
+            this.registry = registry;
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Object result = invocation.proceed();
+
+            if (result instanceof Stream<?> stream) {
+                // Rows are only known once the caller has consumed the stream.
+                AtomicLong rows = new AtomicLong();
+                return stream.peek(row -> rows.incrementAndGet())
+                        .onClose(() -> summary(invocation.getMethod()).record(rows.get()));
+            }
+
+            long rows = rows(result);
+            if (rows >= 0) {
+                summary(invocation.getMethod()).record(rows);
+            }
+            return result;
+        }
+
+        private static long rows(Object result) {
+            if (result instanceof Collection<?> collection) {
+                return collection.size();
+            }
+            if (result instanceof Slice<?> slice) {
+                return slice.getNumberOfElements();
+            }
+            if (result instanceof Optional<?> optional) {
+                return optional.isPresent() ? 1 : 0;
+            }
+            if (result instanceof Integer updated) {
+                return updated;
+            }
+            return -1;
+        }
+
+        private DistributionSummary summary(Method method) {
+            return summaries.computeIfAbsent(method, m -> DistributionSummary.builder("tasks.repository.rows")
+                    .description("Rows returned or updated by a repository method")
+                    .tag("repository", repository)
+                    .tag("method", m.getName())
+                    .register(registry));
+        }
+    }
+}
@@ -1,13 +0,0 @@
-package app.brickup.apirest.config;
-
-import org.modelmapper.ModelMapper;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-@Configuration
-public class ModelMapperConfiguration {
-    @Bean
-    public ModelMapper getModelMapper() {
-        return new ModelMapper();
-    }
-}
@@ -0,0 +1,81 @@
+package app.brickup.apirest.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Read-your-writes across instances. A client that sends a write gets a cookie holding the end of the
+ * {@code read-your-writes-window}; until then its reads are served by the primary, whichever instance receives
+ * them, so it sees its own changes even if a replica has not applied them yet. Reads on the instance that made the
+ * write are already consistent, see {@link ReplicaRoutingDataSource}.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+    static final String COOKIE = "read-primary-until";
+    private static final Set<String> READS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReplicaRoutingDataSource routingDataSource;
+    private final Duration window;
+
+    public ReadYourWritesFilter(ReplicaRoutingDataSource routingDataSource, Duration window) {
+        this.routingDataSource = routingDataSource;
+        this.window = window;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !routingDataSource.hasReplicas() || window.isZero();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long now = System.currentTimeMillis();
+        if (!READS.contains(request.getMethod())) {
+            // Set before the response is committed. A write that fails only sends a few reads to the primary.
+            Cookie cookie = new Cookie(COOKIE, Long.toString(now + window.toMillis()));
+            cookie.setMaxAge((int) Math.max(1, window.toSeconds()));
+            cookie.setPath("/");
+            cookie.setHttpOnly(true);
+            response.addCookie(cookie);
+            chain.doFilter(request, response);
+            return;
+        }
+
+        long until = primaryUntil(request);
+        // A later deadline than a write can produce was not set by us; it must not pin a client to the primary.
+        if (until <= now || until > now + window.toMillis()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        boolean previous = ReplicaRoutingDataSource.requirePrimary(true);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.requirePrimary(previous);
+        }
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return 0;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+}
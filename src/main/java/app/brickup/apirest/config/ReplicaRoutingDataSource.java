@@ -0,0 +1,230 @@
+package app.brickup.apirest.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Sends connections taken inside read-only transactions to the read replicas, round robin, and everything else to
+ * the primary. It has to sit behind a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}:
+ * transaction managers ask for the connection before the transaction is marked read-only, and the proxy only
+ * fetches it on the first statement.
+ * <p>
+ * A replica only serves a read once it has applied the {@code requiredVersion}, the change version of the task
+ * table this instance has seen, so the reads of this instance never go back in time: its own writes, the list
+ * ETags and the task cache stay consistent. When the version last seen on a replica is older, it is read again on
+ * the connection before using it. Replicas are probed every {@code health-check-interval}; one that fails a probe
+ * or a connection attempt, or lags more than {@code max-lag} behind the primary, is skipped until a probe finds it
+ * healthy again. Reads fall back to the primary when no replica qualifies, and while
+ * {@link ReadYourWritesFilter} requires it.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    // The rows TaskChangeTracker bumps with every write, so their sum shows how far a replica has got.
+    private static final String VERSION_QUERY = "SELECT SUM(version) FROM task_changes";
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLag;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile LongSupplier requiredVersion = () -> Long.MIN_VALUE;
+    // Primary versions read by the probes within the last max-lag, newest last. Only used by the probing thread.
+    private final Deque<Probe> probes = new ArrayDeque<>();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, Duration maxLag) {
+        this.primary = primary;
+        this.replicas = IntStream.range(0, replicas.size())
+                .mapToObj(i -> new Replica(replicas.get(i), i + 1))
+                .toList();
+        this.maxLag = maxLag.toNanos();
+    }
+
+    /**
+     * Makes the reads of the current thread use the primary, or stop requiring it. Returns the previous setting.
+     */
+    static boolean requirePrimary(boolean required) {
+        boolean previous = Boolean.TRUE.equals(PRIMARY_REQUIRED.get());
+        if (required) {
+            PRIMARY_REQUIRED.set(true);
+        } else {
+            PRIMARY_REQUIRED.remove();
+        }
+        return previous;
+    }
+
+    void setRequiredVersion(LongSupplier requiredVersion) {
+        this.requiredVersion = requiredVersion;
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    public int availableReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.available).count();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !Boolean.TRUE.equals(PRIMARY_REQUIRED.get())) {
+            Connection connection = replicaConnection();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The credentials are part of the pool configuration");
+    }
+
+    private Connection replicaConnection() {
+        int size = replicas.size();
+        if (size == 0) {
+            return null;
+        }
+        long required = requiredVersion.getAsLong();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.available) {
+                continue;
+            }
+            Connection connection = null;
+            try {
+                connection = replica.dataSource.getConnection();
+                if (replica.version >= required || replica.observe(version(connection)) >= required) {
+                    return connection;
+                }
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Replica {} failed, reading from the primary until it recovers: {}", replica.number,
+                        e.getMessage());
+                replica.available = false;
+                closeQuietly(connection);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the change version of the primary and of each replica. A replica is behind by at most the time since
+     * the newest probe whose primary version it has reached.
+     */
+    @Scheduled(fixedDelayString = "${app.datasource.health-check-interval}")
+    public void checkReplicas() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        try (Connection connection = primary.getConnection()) {
+            probes.addLast(new Probe(now, version(connection)));
+        } catch (SQLException e) {
+            log.warn("Could not read the change version of the primary: {}", e.getMessage());
+            return;
+        }
+        while (now - probes.getFirst().time > maxLag) {
+            probes.removeFirst();
+        }
+
+        for (Replica replica : replicas) {
+            boolean available;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                available = lag(now, replica.observe(version(connection))) <= maxLag;
+            } catch (SQLException e) {
+                log.debug("Replica {} probe failed", replica.number, e);
+                available = false;
+            }
+            if (available != replica.available) {
+                log.info("Replica {} is {}", replica.number, available ? "available" : "unavailable");
+            }
+            replica.available = available;
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+        if (primary instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private long lag(long now, long replicaVersion) {
+        Iterator<Probe> newestFirst = probes.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Probe probe = newestFirst.next();
+            if (probe.version <= replicaVersion) {
+                return now - probe.time;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private static long version(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(VERSION_QUERY);
+             ResultSet result = statement.executeQuery()) {
+            result.next();
+            long version = result.getLong(1);
+            if (result.wasNull()) {
+                throw new SQLException("task_changes is empty");
+            }
+            return version;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.debug("Could not close a replica connection", e);
+            }
+        }
+    }
+
+    private record Probe(long time, long version) {
+    }
+
+    private static final class Replica {
+        private final DataSource dataSource;
+        private final int number;
+        // Starts unavailable, until the first probe.
+        private volatile boolean available;
+        private volatile long version = Long.MIN_VALUE;
+
+        private Replica(DataSource dataSource, int number) {
+            this.dataSource = dataSource;
+            this.number = number;
+        }
+
+        synchronized long observe(long observed) {
+            version = Math.max(version, observed);
+            return version;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package app.brickup.apirest.config;
+
+/**
+ * Deadline of the request handled by the current thread, as a {@link System#nanoTime()} instant. Set by
+ * {@link AdmissionFilter}; {@link DeadlineTransactionManager} turns what is left of it into transaction timeouts.
+ */
+public final class RequestDeadline {
+    private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<>();
+
+    private RequestDeadline() {
+    }
+
+    /**
+     * Sets the deadline of the current thread, or clears it when null. Returns the previous one.
+     */
+    static Long set(Long deadline) {
+        Long previous = DEADLINE.get();
+        if (deadline != null) {
+            DEADLINE.set(deadline);
+        } else {
+            DEADLINE.remove();
+        }
+        return previous;
+    }
+
+    /**
+     * The deadline of the current thread, or null without one.
+     */
+    static Long get() {
+        return DEADLINE.get();
+    }
+
+    /**
+     * Nanoseconds left until the deadline, negative once it has passed, or null without one.
+     */
+    public static Long remainingNanos() {
+        Long deadline = DEADLINE.get();
+        return deadline != null ? deadline - System.nanoTime() : null;
+    }
+}
@@ -0,0 +1,47 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.repository.TaskShards;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+
+/**
+ * Takes connections from the shard selected on the current thread, see {@link TaskShards}. Like
+ * {@link ReplicaRoutingDataSource} it has to sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, so the shard is only looked up on the
+ * first statement, once the repository call has selected it.
+ */
+public class ShardRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    public int count() {
+        return shards.size();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return shards.get(TaskShards.resolve()).getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The credentials are part of the pool configuration");
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource shard : shards) {
+            if (shard instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.repository.ShardRoutingInterceptor;
+import app.brickup.apirest.repository.TaskIdGenerator;
+import app.brickup.apirest.repository.TaskIds;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskSequence;
+import app.brickup.apirest.repository.TaskShards;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ShardingConfiguration {
+    @Bean
+    public TaskShards taskShards(ShardRoutingDataSource routingDataSource, ThreadPoolTaskExecutor shardQueryExecutor) {
+        return new TaskShards(routingDataSource.count(), shardQueryExecutor);
+    }
+
+    /**
+     * With a single shard ids keep coming from {@code tasks_seq}, small enough for any client, over a pool of one
+     * connection of their own; with several, each id has to name its shard. Two instances on the same node would
+     * hand out the same ids, so the node has no default and startup fails without one.
+     */
+    @Bean
+    public TaskIds taskIds(TaskShards shards, DataSourceProperties properties, Environment environment,
+                           MeterRegistry registry, @Value("${app.tasks.ids.node:}") Integer node) {
+        if (!shards.isSharded()) {
+            HikariDataSource pool = DataSourceConfiguration.pool(properties, environment, registry,
+                    properties.determineUrl(), "tasks-seq");
+            pool.setMaximumPoolSize(1);
+            return new TaskSequence(pool);
+        }
+        if (node == null) {
+            throw new IllegalStateException("app.tasks.ids.node must be set with app.datasource.shard-urls, to a "
+                    + "value between 0 and " + (TaskIdGenerator.MAX_NODES - 1) + " no other instance uses");
+        }
+        return new TaskIdGenerator(node);
+    }
+
+    /**
+     * Queries every shard but the first, which runs on the calling thread, for {@link TaskShards#onEach}. Without a
+     * free thread the caller queries the shard itself, so a busy pool makes requests slower rather than failing
+     * them. The request deadline goes along to bound the transactions on the shards. The threads only wait on JDBC, so
+     * they are virtual in virtual-thread mode.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor shardQueryExecutor(@Value("${app.datasource.shard-query-threads}") int threads,
+                                                     Environment environment) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(0);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(query -> {
+            Long deadline = RequestDeadline.get();
+            return () -> {
+                Long previous = RequestDeadline.set(deadline);
+                try {
+                    query.run();
+                } finally {
+                    RequestDeadline.set(previous);
+                }
+            };
+        });
+        AsyncConfiguration.setThreads(executor, "shard-query-", environment);
+        return executor;
+    }
+
+    /**
+     * Routes the calls of {@link TaskRepository} to their shards, ahead of every other advice so the shard is
+     * selected before the repository's transaction starts.
+     */
+    @Bean
+    static BeanPostProcessor shardRoutingPostProcessor(ObjectProvider<TaskShards> shards,
+                                                       ObjectProvider<TaskIds> ids) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxy, information) -> {
+                                if (information.getRepositoryInterface() == TaskRepository.class) {
+                                    proxy.addAdvice(0, new ShardRoutingInterceptor(shards.getObject(),
+                                            ids.getObject()));
+                                }
+                            }));
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Migrates every shard with the same Flyway configuration. With several shards, the tasks created before ids
+     * named their shard must all have ids {@link TaskIdGenerator#shardOf} puts on the first one.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardedMigration(TaskShards shards, DataSource dataSource) {
+        return flyway -> {
+            for (int shard = 0; shard < shards.count(); shard++) {
+                shards.on(shard, flyway::migrate);
+            }
+            if (shards.isSharded()) {
+                Long next = shards.on(0, () -> new JdbcTemplate(dataSource)
+                        .queryForObject("SELECT next_val FROM tasks_seq", Long.class));
+                if (next != null && next - 1 > TaskIdGenerator.maxLegacyId()) {
+                    throw new IllegalStateException("Tasks with ids up to " + (next - 1) + " were created before "
+                            + "sharding; at most " + TaskIdGenerator.maxLegacyId() + " can stay on the first shard");
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,151 @@
+package app.brickup.apirest.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only requests to {@code /api/tasks} over the loopback interface before the instance reports itself
+ * ready, so the first real requests find the classes loaded, the connection pool filled, the caches populated and
+ * the hot paths compiled. Spring Boot publishes {@code ReadinessState.ACCEPTING_TRAFFIC} only once the application
+ * runners have returned; until then {@code /actuator/health/readiness} answers 503.
+ * <p>
+ * Only GET requests are sent, so warming up never changes data or publishes events. It stops after
+ * {@code iterations} rounds or {@code timeout}, whichever comes first, and a failure never prevents the startup.
+ * The bean always exists and reads {@code app.warmup.enabled} when it runs, so the setting still applies to a
+ * context processed ahead of time, where conditions are fixed at build time.
+ */
+@Slf4j
+@Component
+public class WarmupRunner implements ApplicationRunner {
+    private final Environment environment;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int iterations;
+    private final Duration timeout;
+
+    public WarmupRunner(Environment environment, ObjectMapper objectMapper,
+                        @Value("${app.warmup.enabled}") boolean enabled,
+                        @Value("${app.warmup.iterations}") int iterations,
+                        @Value("${app.warmup.timeout}") Duration timeout) {
+        this.environment = environment;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.iterations = iterations;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (!enabled || port == null) {
+            return;
+        }
+
+        String base = "http://" + environment.getProperty("server.address", "localhost") + ":" + port + "/api/tasks";
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        Counts counts = new Counts();
+        try {
+            Sample sample = sample(http, base, counts);
+            for (int i = 0; i < iterations && System.nanoTime() < deadline; i++) {
+                for (HttpRequest request : round(base, sample, i)) {
+                    send(http, request, counts);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Warm-up stopped early", e);
+        }
+        log.info("Warm-up sent {} requests in {} ms, {} failed", counts.requests,
+                Duration.ofNanos(System.nanoTime() - start).toMillis(), counts.failures);
+    }
+
+    /**
+     * Reads the first page once to find ids and images that exist, and the list ETag to revalidate.
+     */
+    private Sample sample(HttpClient http, String base, Counts counts) throws IOException, InterruptedException {
+        // Without Accept-Encoding, so the body can be read as is.
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(base + "?limit=50")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        counts.record(response.statusCode());
+        List<Long> ids = new ArrayList<>();
+        List<Long> withImage = new ArrayList<>();
+        for (JsonNode item : objectMapper.readTree(response.body()).path("items")) {
+            ids.add(item.path("id").asLong());
+            if (item.hasNonNull("linkImage")) {
+                withImage.add(item.path("id").asLong());
+            }
+        }
+        // With no tasks, the 404 paths get warmed up instead.
+        if (ids.isEmpty()) {
+            ids.add(0L);
+        }
+        if (withImage.isEmpty()) {
+            withImage.add(ids.get(0));
+        }
+        return new Sample(ids, withImage, response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+    }
+
+    private static List<HttpRequest> round(String base, Sample sample, int i) {
+        List<HttpRequest> requests = new ArrayList<>();
+        requests.add(get(base + "?limit=50"));
+        if (sample.eTag != null) {
+            requests.add(HttpRequest.newBuilder(URI.create(base + "?limit=50"))
+                    .header(HttpHeaders.IF_NONE_MATCH, sample.eTag)
+                    .build());
+        }
+        requests.add(get(base + "?limit=50&status=PENDENTE&fields=description,status"));
+        requests.add(get(base + "?limit=10&q=tarefa"));
+        requests.add(get(base + "/" + sample.ids.get(i % sample.ids.size())));
+        requests.add(get(base + "/" + sample.withImage.get(i % sample.withImage.size()) + "/image?size=THUMB"));
+        return requests;
+    }
+
+    private static void send(HttpClient http, HttpRequest request, Counts counts) throws InterruptedException {
+        try {
+            counts.record(http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        } catch (IOException e) {
+            counts.record(500);
+        }
+    }
+
+    private static HttpRequest get(String uri) {
+        return HttpRequest.newBuilder(URI.create(uri)).header(HttpHeaders.ACCEPT_ENCODING, "gzip").build();
+    }
+
+    private record Sample(List<Long> ids, List<Long> withImage, String eTag) {
+    }
+
+    private static final class Counts {
+        private int requests;
+        private int failures;
+
+        void record(int status) {
+            requests++;
+            if (status >= 500) {
+                failures++;
+            }
+        }
+    }
+}
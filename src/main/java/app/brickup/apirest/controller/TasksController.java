@@ -1,18 +1,34 @@
 package app.brickup.apirest.controller;
 
+import app.brickup.apirest.dto.ImageResource;
 import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.dto.TaskStatsDTO;
+import app.brickup.apirest.model.ImageSize;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.service.TaskBatchService;
+import app.brickup.apirest.service.TaskEventPublisher;
+import app.brickup.apirest.service.TaskExportService;
+import app.brickup.apirest.service.TaskMetrics;
 import app.brickup.apirest.service.TaskService;
+import app.brickup.apirest.util.ETagUtil;
+import app.brickup.apirest.util.ImageResponseUtil;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.List;
 
 import org.springframework.web.multipart.MultipartFile;
@@ -20,27 +36,89 @@ import org.springframework.web.multipart.MultipartFile;
 @RestController
 @RequestMapping("/api/tasks")
 public class TasksController {
+    static final int MAX_BATCH_SIZE = 10_000;
+    static final int MAX_QUERY_LENGTH = 100;
+
     private final TaskService service;
+    private final TaskExportService exportService;
+    private final TaskBatchService batchService;
+    private final TaskMetrics metrics;
+    private final TaskEventPublisher eventPublisher;
 
-    public TasksController(TaskService service) {
+    public TasksController(TaskService service, TaskExportService exportService, TaskBatchService batchService,
+                           TaskMetrics metrics, TaskEventPublisher eventPublisher) {
         this.service = service;
+        this.exportService = exportService;
+        this.batchService = batchService;
+        this.metrics = metrics;
+        this.eventPublisher = eventPublisher;
     }
 
     @GetMapping
-    public List<TaskDTO> listAll() {
-        return service.findAll();
+    public ResponseEntity<TaskPageDTO> listAll(@RequestParam(required = false) String cursor,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestParam(required = false) Status status,
+                                               @RequestParam(required = false) @Size(max = MAX_QUERY_LENGTH) String q,
+                                               @RequestParam(required = false) String fields,
+                                               WebRequest request) {
+        // The version is read before the tasks, so a write that lands in between changes the next ETag.
+        String eTag = ETagUtil.forList(service.listVersion(), cursor, limit, status, q, fields);
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        TaskPageDTO page = q != null && !q.isBlank()
+                ? service.search(q, cursor, limit, status, fields)
+                : service.findPage(cursor, limit, status, fields);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(page);
+    }
+
+    /**
+     * Change feed replacing list polling: {@code tasks} events carry the created, updated and deleted tasks,
+     * {@code reset} asks the client to list the tasks again. Reconnects resume from {@code Last-Event-ID}.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        return eventPublisher.subscribe(lastEventId);
+    }
+
+    /**
+     * Counts per status and recent creations for dashboards, without reading the tasks.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<TaskStatsDTO> stats() {
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(service.stats());
+    }
+
+    @GetMapping("/export")
+    public void export(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        exportService.exportTo(response.getOutputStream());
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<TaskDTO> findById(@PathVariable @NotNull Long id) {
-        return ResponseEntity.ok(service.findById(id));
+    public ResponseEntity<TaskDTO> findById(@PathVariable @NotNull Long id, WebRequest request) {
+        TaskDTO task = service.findById(id);
+        if (request.checkNotModified(ETagUtil.fromVersion(task.getVersion()))) {
+            return null;
+        }
+        return ResponseEntity.ok(task);
     }
 
     @GetMapping("/{id}/image")
-    public void getImageByTaskId(@PathVariable Long id, HttpServletResponse response) throws IOException {
-        InputStream resource = service.getResource(id);
-        response.setContentType(MediaType.IMAGE_JPEG_VALUE);
-        StreamUtils.copy(resource, response.getOutputStream());
+    public void getImageByTaskId(@PathVariable Long id, @RequestParam(required = false) ImageSize size,
+                                 HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImageResource image = service.getResource(id, size);
+
+        // Always revalidate: the URL is stable while the image behind it can be replaced by a PATCH.
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePublic().getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(image.getETag(), image.getLastModified())) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        long bytes = ImageResponseUtil.write(request, response, image);
+        metrics.recordDownload(System.nanoTime() - start, bytes);
     }
 
     @PostMapping()
@@ -51,9 +129,32 @@ public class TasksController {
     }
 
     @PatchMapping("/{id}")
-    public ResponseEntity<TaskDTO> updateTask(@PathVariable @NotNull Long id, @Valid @ModelAttribute TaskDTO dto, MultipartFile image) {
-        TaskDTO updatedTask = service.updateTask(dto, id, image);
-        return ResponseEntity.ok(updatedTask);
+    public ResponseEntity<TaskDTO> updateTask(@PathVariable @NotNull Long id, @Valid @ModelAttribute TaskDTO dto, MultipartFile image,
+                                              @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        TaskDTO updatedTask = service.updateTask(dto, id, image, ETagUtil.toVersion(ifMatch));
+        return ResponseEntity.ok().eTag(ETagUtil.fromVersion(updatedTask.getVersion())).body(updatedTask);
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<List<TaskDTO>> saveTasks(@RequestBody @Size(max = MAX_BATCH_SIZE) List<@Valid TaskDTO> dtos) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(batchService.saveAll(dtos));
+    }
+
+    @PatchMapping("/batch")
+    public ResponseEntity<List<TaskDTO>> updateTasks(@RequestBody @Size(max = MAX_BATCH_SIZE) List<@Valid TaskDTO> dtos) {
+        return ResponseEntity.ok(batchService.updateAll(dtos));
+    }
+
+    @DeleteMapping("/batch")
+    public ResponseEntity<Void> removeTasks(@RequestBody @Size(max = MAX_BATCH_SIZE) List<@NotNull Long> ids) {
+        batchService.deleteAll(ids);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> removeByStatus(@RequestParam Status status) {
+        service.deleteByStatus(status);
+        return ResponseEntity.noContent().build();
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,63 @@
+package app.brickup.apirest.controller;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.UploadDTO;
+import app.brickup.apirest.service.UploadService;
+import app.brickup.apirest.util.ETagUtil;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Resumable uploads for large task images: create a session, {@code PUT} the chunks with {@code Content-Range}
+ * (in any order, in parallel if desired), check which ranges arrived, then complete it to attach the image.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+public class UploadsController {
+    private final UploadService service;
+
+    public UploadsController(UploadService service) {
+        this.service = service;
+    }
+
+    @PostMapping
+    public ResponseEntity<UploadDTO> create(@RequestParam long size) throws IOException {
+        UploadDTO upload = service.create(size);
+        return ResponseEntity.created(URI.create("/api/uploads/" + upload.getId())).body(upload);
+    }
+
+    @GetMapping("/{id}")
+    public UploadDTO status(@PathVariable String id) {
+        return service.status(id);
+    }
+
+    /**
+     * Chunks must be sent as {@code application/octet-stream}: a form content type would have the servlet container
+     * consume the body as parameters, leaving nothing to write.
+     */
+    @PutMapping(path = "/{id}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public UploadDTO writeChunk(@PathVariable String id, @RequestHeader(HttpHeaders.CONTENT_RANGE) String contentRange,
+                                InputStream body) throws IOException {
+        return service.write(id, contentRange, body);
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<TaskDTO> complete(@PathVariable String id, @RequestParam Long taskId,
+                                            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws IOException {
+        TaskDTO task = service.complete(id, taskId, ETagUtil.toVersion(ifMatch));
+        return ResponseEntity.ok().eTag(ETagUtil.fromVersion(task.getVersion())).body(task);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) throws IOException {
+        service.cancel(id);
+        return ResponseEntity.noContent().build();
+    }
+}
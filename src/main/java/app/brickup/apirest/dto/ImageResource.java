@@ -0,0 +1,26 @@
+package app.brickup.apirest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * An image ready to be sent: either a whole file at {@code path}, or {@code data}, a read-only slice of a mapped
+ * segment file, in which case there is no path.
+ */
+@Getter
+@AllArgsConstructor
+public class ImageResource {
+    private Path path;
+    private String contentType;
+    private long length;
+    private long lastModified;
+    private String eTag;
+    private ByteBuffer data;
+
+    public ImageResource(Path path, String contentType, long length, long lastModified, String eTag) {
+        this(path, contentType, length, lastModified, eTag, null);
+    }
+}
@@ -0,0 +1,13 @@
+package app.brickup.apirest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class StoredImage {
+    private String location;
+    private String contentType;
+    private long size;
+    private String hash;
+}
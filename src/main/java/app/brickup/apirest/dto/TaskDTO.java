@@ -1,10 +1,13 @@
 package app.brickup.apirest.dto;
 
 import app.brickup.apirest.model.Status;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotBlank;
 import lombok.Getter;
 import lombok.Setter;
 
+// Properties left out by the fields parameter are null and must not appear in the response at all.
+@JsonInclude(JsonInclude.Include.NON_NULL)
 @Getter
 @Setter
 public class TaskDTO {
@@ -13,4 +16,5 @@ public class TaskDTO {
     private String description;
     private Status status;
     private String linkImage;
+    private Long version;
 }
\ No newline at end of file
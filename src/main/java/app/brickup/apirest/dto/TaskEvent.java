@@ -0,0 +1,31 @@
+package app.brickup.apirest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One change sent on {@code /api/tasks/stream}. Deletions carry only the id.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskEvent {
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private Type type;
+    private Long taskId;
+    private TaskDTO task;
+
+    public static TaskEvent created(TaskDTO task) {
+        return new TaskEvent(Type.CREATED, task.getId(), task);
+    }
+
+    public static TaskEvent updated(TaskDTO task) {
+        return new TaskEvent(Type.UPDATED, task.getId(), task);
+    }
+
+    public static TaskEvent deleted(Long id) {
+        return new TaskEvent(Type.DELETED, id, null);
+    }
+}
@@ -0,0 +1,13 @@
+package app.brickup.apirest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class TaskPageDTO {
+    private List<TaskDTO> items;
+    private String next;
+}
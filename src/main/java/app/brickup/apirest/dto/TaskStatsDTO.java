@@ -0,0 +1,22 @@
+package app.brickup.apirest.dto;
+
+import app.brickup.apirest.model.Status;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Body of {@code /api/tasks/stats}. The {@code created*} counts cover the instance that answered.
+ */
+@Getter
+@AllArgsConstructor
+public class TaskStatsDTO {
+    private Map<Status, Long> counts;
+    private long total;
+    private long createdLastMinute;
+    private long createdLast5Minutes;
+    private long createdLastHour;
+    private Instant reconciledAt;
+}
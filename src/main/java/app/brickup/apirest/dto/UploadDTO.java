@@ -0,0 +1,26 @@
+package app.brickup.apirest.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * State of a resumable upload. {@code ranges} lists the byte ranges received so far, end exclusive, so a client
+ * resuming after a failure only sends the gaps.
+ */
+@Getter
+@AllArgsConstructor
+public class UploadDTO {
+    private String id;
+    private long size;
+    private long received;
+    private List<Range> ranges;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Range {
+        private long start;
+        private long end;
+    }
+}
@@ -2,11 +2,17 @@ package app.brickup.apirest.exceptions;
 
 import app.brickup.apirest.dto.Exceptions;
 import jakarta.persistence.EntityNotFoundException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionTimedOutException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.io.FileNotFoundException;
 import java.util.List;
@@ -29,6 +35,58 @@ public class Handler {
         return ResponseEntity.status(404).body("File not found!");
     }
 
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<String> invalidCursorHandler() {
+        return ResponseEntity.badRequest().body("Invalid cursor!");
+    }
+
+    @ExceptionHandler(InvalidFieldsException.class)
+    public ResponseEntity<String> invalidFieldsHandler() {
+        return ResponseEntity.badRequest().body("Invalid fields!");
+    }
+
+    @ExceptionHandler(UploadNotFoundException.class)
+    public ResponseEntity<String> uploadNotFoundHandler() {
+        return ResponseEntity.status(404).body("Upload not found!");
+    }
+
+    @ExceptionHandler(InvalidUploadException.class)
+    public ResponseEntity<String> invalidUploadHandler(InvalidUploadException exception) {
+        return ResponseEntity.badRequest().body(exception.getMessage());
+    }
+
+    @ExceptionHandler(TooManyUploadsException.class)
+    public ResponseEntity<String> tooManyUploadsHandler(TooManyUploadsException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "60")
+                .body(exception.getMessage());
+    }
+
+    @ExceptionHandler(PreconditionFailedException.class)
+    public ResponseEntity<String> preconditionFailedHandler(PreconditionFailedException exception) {
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> optimisticLockingHandler() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("The task was modified by another request!");
+    }
+
+    @ExceptionHandler(TooManySubscribersException.class)
+    public ResponseEntity<String> tooManySubscribersHandler(TooManySubscribersException exception) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(exception.getMessage());
+    }
+
+    @ExceptionHandler({TransactionTimedOutException.class, QueryTimeoutException.class})
+    public ResponseEntity<String> timeoutHandler() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Request timed out!");
+    }
+
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<String> argumentTypeMismatchHandler(MethodArgumentTypeMismatchException exception) {
+        return ResponseEntity.badRequest().body("Invalid value for " + exception.getName() + "!");
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<String> illegalArgumentHandler() {
         return ResponseEntity.status(404).body("File not found!");
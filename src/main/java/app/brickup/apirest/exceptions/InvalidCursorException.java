@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException() {
+        super("Invalid cursor!");
+    }
+}
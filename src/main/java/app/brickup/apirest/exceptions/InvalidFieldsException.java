@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class InvalidFieldsException extends RuntimeException {
+    public InvalidFieldsException() {
+        super("Invalid fields!");
+    }
+}
@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class InvalidUploadException extends RuntimeException {
+    public InvalidUploadException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class PreconditionFailedException extends RuntimeException {
+    public PreconditionFailedException() {
+        super("The task was modified by another request!");
+    }
+}
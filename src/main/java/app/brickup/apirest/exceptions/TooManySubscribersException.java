@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class TooManySubscribersException extends RuntimeException {
+    public TooManySubscribersException() {
+        super("Too many subscribers!");
+    }
+}
@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class TooManyUploadsException extends RuntimeException {
+    public TooManyUploadsException() {
+        super("Too many uploads in progress!");
+    }
+}
@@ -0,0 +1,7 @@
+package app.brickup.apirest.exceptions;
+
+public class UploadNotFoundException extends RuntimeException {
+    public UploadNotFoundException() {
+        super("Upload not found!");
+    }
+}
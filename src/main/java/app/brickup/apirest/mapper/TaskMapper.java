@@ -0,0 +1,82 @@
+package app.brickup.apirest.mapper;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.util.FieldsUtil;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Plain field-by-field mapping between {@link Task} and {@link TaskDTO}. No reflection is involved,
+ * so list endpoints only pay for the object allocation itself.
+ */
+@Component
+public class TaskMapper {
+
+    public TaskDTO toDTO(Task task) {
+        TaskDTO dto = new TaskDTO();
+        dto.setId(task.getId());
+        dto.setDescription(task.getDescription());
+        dto.setStatus(task.getStatus());
+        dto.setLinkImage(task.getLinkImage());
+        dto.setVersion(task.getVersion());
+        return dto;
+    }
+
+    public TaskDTO toDTO(TaskRepository.Summary summary) {
+        TaskDTO dto = new TaskDTO();
+        dto.setId(summary.id());
+        dto.setDescription(summary.description());
+        dto.setStatus(summary.status());
+        dto.setVersion(summary.version());
+        return dto;
+    }
+
+    /**
+     * Clears the properties not listed in {@code fields}, so they are left out of the response. A {@code null} set
+     * keeps every property.
+     */
+    public TaskDTO select(TaskDTO dto, Set<String> fields) {
+        if (fields == null) {
+            return dto;
+        }
+        if (!fields.contains(FieldsUtil.DESCRIPTION)) {
+            dto.setDescription(null);
+        }
+        if (!fields.contains(FieldsUtil.STATUS)) {
+            dto.setStatus(null);
+        }
+        if (!fields.contains(FieldsUtil.LINK_IMAGE)) {
+            dto.setLinkImage(null);
+        }
+        if (!fields.contains(FieldsUtil.VERSION)) {
+            dto.setVersion(null);
+        }
+        return dto;
+    }
+
+    /**
+     * Builds a new entity from client input. The id, version and image location are owned by the server and are
+     * never taken from the request.
+     */
+    public Task toEntity(TaskDTO dto) {
+        Task task = new Task();
+        task.setDescription(dto.getDescription());
+        task.setStatus(dto.getStatus());
+        return task;
+    }
+
+    /**
+     * Copies the fields present in the request onto an existing entity, leaving the others untouched.
+     */
+    public void merge(TaskDTO dto, Task target) {
+        if (dto.getDescription() != null) {
+            target.setDescription(dto.getDescription());
+        }
+        if (dto.getStatus() != null) {
+            target.setStatus(dto.getStatus());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package app.brickup.apirest.model;
+
+public enum ImageSize {
+    THUMB(160),
+    MEDIUM(640);
+
+    private final int maxDimension;
+
+    ImageSize(int maxDimension) {
+        this.maxDimension = maxDimension;
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+}
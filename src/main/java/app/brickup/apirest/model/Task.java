@@ -7,17 +7,30 @@ import lombok.NoArgsConstructor;
 
 @Entity
 @Table(name = "tasks")
+// Rows of a search: the task and the relevance its shard gave it, so results from several shards can be merged.
+@SqlResultSetMapping(name = Task.SEARCH_MATCH, entities = @EntityResult(entityClass = Task.class),
+        columns = @ColumnResult(name = "relevance", type = Double.class))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Task {
+    public static final String SEARCH_MATCH = "Task.searchMatch";
+
+    // Assigned when the task is first saved: from tasks_seq with a single shard, otherwise by TaskIdGenerator, which
+    // also names the shard holding it. Ids are known before the insert, so inserts can still be sent as JDBC batches.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private String description;
     @Enumerated(EnumType.STRING)
     private Status status;
     @Column(name = "link_image")
     private String linkImage;
+    @Column(name = "content_type")
+    private String contentType;
+    @Version
+    private Long version;
 
+    public Task(Long id, String description, Status status, String linkImage) {
+        this(id, description, status, linkImage, null, null);
+    }
 }
@@ -0,0 +1,351 @@
+package app.brickup.apirest.repository;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import jakarta.persistence.EntityNotFoundException;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Sends the calls of {@link TaskRepository} to the shards holding their tasks. It sits in front of the repository's
+ * transaction interceptor, so the shard is selected before the repository's own transaction takes a connection.
+ * <p>
+ * New tasks get their id here, on the shard selected or else on the next one in turn; a {@code saveAll} puts all
+ * its new tasks on one shard. Calls by id go to the shard of the id, and ids of shards that are not configured find
+ * nothing, or are reported as missing tasks where nothing cannot be returned. Calls for several ids are split by shard. Queries over all tasks run on every shard at once and their
+ * results are merged: keyset pages by id, searches by relevance and then id, counts and bulk updates summed.
+ * <p>
+ * Once a shard is selected, by {@link TaskShards#on} or by an earlier call in the same transaction, queries over all
+ * tasks work on that shard alone, and calls by id for another shard fail. Calls that need several shards must come
+ * outside a transaction, so each shard runs in its own. Calls whose results cannot be merged, such as streams, only
+ * run on a selected shard. With a single shard only the ids are assigned here, from {@code tasks_seq}.
+ * <p>
+ * Every method of the repository must have a routing rule, checked when the interceptor is created: a new query
+ * method fails startup until it is added to one of the sets below.
+ */
+public class ShardRoutingInterceptor implements MethodInterceptor {
+    private static final Comparator<TaskRepositoryCustom.Match> RELEVANCE =
+            Comparator.comparingDouble(TaskRepositoryCustom.Match::relevance).reversed()
+                    .thenComparing(match -> match.task().getId());
+
+    // Calls by id, sent to the shard of the id.
+    private static final Set<String> BY_ID = Set.of("findById", "existsById", "getReferenceById", "getById", "getOne",
+            "deleteById", "findStatusById", "deleteTaskById", "patch", "delete");
+    // Calls for several ids or tasks, split by shard.
+    private static final Set<String> BY_IDS = Set.of("findAllById", "deleteAllById", "deleteAllByIdInBatch",
+            "lockStatusesByIds", "deleteAll", "deleteAllInBatch");
+    // Queries over all tasks, run on every shard and merged unless a shard is selected.
+    private static final Set<String> OVER_ALL_SHARDS = Set.of("findByIdGreaterThanOrderByIdAsc",
+            "findByStatusAndIdGreaterThanOrderByIdAsc", "search", "countByStatus", "findLinkedImages",
+            "findFileImagesAfter", "deleteAllByStatusInBatch", "relinkImage", "count");
+    // Calls whose results are not merged, including deleteAll and deleteAllInBatch without arguments: they only run
+    // on a selected shard.
+    private static final Set<String> SELECTED_SHARD = Set.of("streamAll", "findAll", "findBy", "findOne", "exists",
+            "flush", "deleteAll", "deleteAllInBatch");
+
+    private enum Route {
+        SAVE, BY_ID, BY_IDS, OVER_ALL_SHARDS, SELECTED_SHARD
+    }
+
+    private final TaskShards shards;
+    private final TaskIds ids;
+
+    /**
+     * @throws IllegalStateException when a method of {@link TaskRepository} has no routing rule, so a new query
+     *                               fails at startup rather than on its first call
+     */
+    public ShardRoutingInterceptor(TaskShards shards, TaskIds ids) {
+        requireRoutes(TaskRepository.class);
+        this.shards = shards;
+        this.ids = ids;
+    }
+
+    static void requireRoutes(Class<?> repositoryInterface) {
+        List<String> unrouted = Arrays.stream(repositoryInterface.getMethods())
+                .filter(method -> !method.isDefault() && !Modifier.isStatic(method.getModifiers()))
+                .filter(method -> route(method) == null)
+                .map(Method::getName)
+                .distinct()
+                .sorted()
+                .toList();
+        if (!unrouted.isEmpty()) {
+            throw new IllegalStateException(repositoryInterface.getSimpleName() + " methods without a shard routing "
+                    + "rule in ShardRoutingInterceptor: " + unrouted);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Object[] args = invocation.getArguments();
+        // Default methods only make calls that are routed themselves.
+        if (method.getDeclaringClass() == Object.class || method.isDefault()) {
+            return invocation.proceed();
+        }
+        Route route = route(method);
+        if (route == Route.SAVE) {
+            return method.getName().startsWith("saveAll")
+                    ? saveAll(invocation, (Iterable<Task>) args[0])
+                    : save(invocation, (Task) args[0]);
+        }
+        if (!shards.isSharded()) {
+            return invocation.proceed();
+        }
+
+        return switch (route) {
+            case BY_ID -> byId(invocation, args[0] instanceof Task task ? task.getId() : (Long) args[0]);
+            case BY_IDS -> byIds(invocation, (Iterable<Object>) args[0],
+                    item -> item instanceof Task task ? task.getId() : (Long) item);
+            case OVER_ALL_SHARDS -> TaskShards.current() != null ? invocation.proceed() : overAllShards(invocation);
+            case SELECTED_SHARD -> {
+                if (TaskShards.current() == null) {
+                    throw notRouted(method);
+                }
+                yield invocation.proceed();
+            }
+            case SAVE -> throw new IllegalStateException();
+        };
+    }
+
+    private static Route route(Method method) {
+        String name = method.getName();
+        if (name.startsWith("save")) {
+            return Route.SAVE;
+        }
+        if (BY_ID.contains(name)) {
+            return Route.BY_ID;
+        }
+        if (BY_IDS.contains(name) && method.getParameterCount() > 0) {
+            return Route.BY_IDS;
+        }
+        if (OVER_ALL_SHARDS.contains(name)) {
+            return Route.OVER_ALL_SHARDS;
+        }
+        if (SELECTED_SHARD.contains(name)) {
+            return Route.SELECTED_SHARD;
+        }
+        return null;
+    }
+
+    private Object overAllShards(MethodInvocation invocation) {
+        Method method = invocation.getMethod();
+        Object[] args = invocation.getArguments();
+        return switch (method.getName()) {
+            case "findByIdGreaterThanOrderByIdAsc", "findByStatusAndIdGreaterThanOrderByIdAsc" ->
+                    mergeById(everyShard(invocation, args), limit(args));
+            case "search" -> search(invocation, args);
+            case "countByStatus" -> sumByStatus(everyShard(invocation, args));
+            case "findLinkedImages" -> ShardRoutingInterceptor.<String>flatten(everyShard(invocation, args))
+                    .distinct()
+                    .toList();
+            case "findFileImagesAfter" -> ShardRoutingInterceptor.<String>flatten(everyShard(invocation, args))
+                    .distinct()
+                    .sorted()
+                    .limit(limit(args))
+                    .toList();
+            case "deleteAllByStatusInBatch", "relinkImage" -> everyShard(invocation, args).stream()
+                    .mapToInt(updated -> (Integer) updated)
+                    .sum();
+            case "count" -> everyShard(invocation, args).stream()
+                    .mapToLong(count -> (Long) count)
+                    .sum();
+            default -> throw new IllegalStateException("No merge for TaskRepository." + method.getName());
+        };
+    }
+
+    private Object save(MethodInvocation invocation, Task task) throws Throwable {
+        if (task.getId() != null) {
+            return shards.isSharded() ? byId(invocation, task.getId()) : invocation.proceed();
+        }
+        int shard = targetShard();
+        task.setId(ids.next(shard));
+        return on(shard, invocation);
+    }
+
+    private Object saveAll(MethodInvocation invocation, Iterable<Task> tasks) throws Throwable {
+        int shard = -1;
+        for (Task task : tasks) {
+            if (task.getId() == null) {
+                if (shard < 0) {
+                    shard = targetShard();
+                }
+                task.setId(ids.next(shard));
+            }
+        }
+        if (!shards.isSharded()) {
+            return invocation.proceed();
+        }
+        return byIds(invocation, tasks, Task::getId);
+    }
+
+    private int targetShard() {
+        Integer current = TaskShards.current();
+        return current != null ? current : shards.nextShard();
+    }
+
+    private Object byId(MethodInvocation invocation, Long id) {
+        int shard = shards.shardOf(id);
+        if (!shards.exists(shard)) {
+            return nothing(invocation.getMethod());
+        }
+        return on(shard, invocation);
+    }
+
+    private <T> Object byIds(MethodInvocation invocation, Iterable<T> items, Function<T, Long> id) {
+        Map<Integer, List<T>> groups = shards.byShard(items, id);
+        groups.keySet().removeIf(shard -> !shards.exists(shard));
+        if (groups.isEmpty()) {
+            return nothing(invocation.getMethod());
+        }
+        if (groups.size() == 1) {
+            Map.Entry<Integer, List<T>> group = groups.entrySet().iterator().next();
+            return on(group.getKey(), clone(invocation, group.getValue()));
+        }
+        requireNoTransaction(invocation.getMethod());
+
+        List<Object> results = shards.onEach(shard -> {
+            List<T> group = groups.get(shard);
+            return group != null ? proceed(clone(invocation, group)) : null;
+        });
+        results.removeIf(result -> result == null);
+        return switch (invocation.getMethod().getName()) {
+            case "findAllById", "lockStatusesByIds", "saveAll", "saveAllAndFlush" -> flatten(results).toList();
+            default -> null;
+        };
+    }
+
+    private Object search(MethodInvocation invocation, Object[] args) {
+        int offset = (Integer) args[2];
+        int limit = (Integer) args[3];
+        // Every shard may hold any part of the page, so each returns everything up to its end.
+        Object[] fromStart = {args[0], args[1], 0, offset + limit};
+        return ShardRoutingInterceptor.<TaskRepositoryCustom.Match>flatten(everyShard(invocation, fromStart))
+                .sorted(RELEVANCE)
+                .skip(offset)
+                .limit(limit)
+                .toList();
+    }
+
+    private List<Object> everyShard(MethodInvocation invocation, Object[] args) {
+        requireNoTransaction(invocation.getMethod());
+        return shards.onEach(shard -> proceed(clone(invocation, args)));
+    }
+
+    private Object on(int shard, MethodInvocation invocation) {
+        return shards.on(shard, () -> proceed(invocation));
+    }
+
+    private static MethodInvocation clone(MethodInvocation invocation, List<?> firstArgument) {
+        Object[] args = invocation.getArguments().clone();
+        args[0] = firstArgument;
+        return clone(invocation, args);
+    }
+
+    private static MethodInvocation clone(MethodInvocation invocation, Object[] args) {
+        return ((ProxyMethodInvocation) invocation).invocableClone(args);
+    }
+
+    private static Object proceed(MethodInvocation invocation) {
+        try {
+            return invocation.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+    private static Object mergeById(List<Object> results, long limit) {
+        return flatten(results)
+                .sorted(Comparator.comparingLong(ShardRoutingInterceptor::idOf))
+                .limit(limit)
+                .toList();
+    }
+
+    private static long idOf(Object row) {
+        if (row instanceof Task task) {
+            return task.getId();
+        }
+        if (row instanceof TaskRepository.Summary summary) {
+            return summary.id();
+        }
+        throw new IllegalArgumentException("Cannot order " + row.getClass().getName() + " by id");
+    }
+
+    private static List<Object[]> sumByStatus(List<Object> results) {
+        Map<Status, Long> counts = new EnumMap<>(Status.class);
+        ShardRoutingInterceptor.<Object[]>flatten(results)
+                .forEach(row -> counts.merge((Status) row[0], ((Number) row[1]).longValue(), Long::sum));
+        return counts.entrySet().stream()
+                .map(count -> new Object[]{count.getKey(), count.getValue()})
+                .toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Stream<T> flatten(List<Object> results) {
+        return results.stream().flatMap(result -> ((Collection<T>) result).stream());
+    }
+
+    private static long limit(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof Limit limit) {
+                return limit.isLimited() ? limit.max() : Long.MAX_VALUE;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * What a call finds for tasks that cannot exist.
+     */
+    private static Object nothing(Method method) {
+        Class<?> type = method.getReturnType();
+        if (type == Optional.class) {
+            return Optional.empty();
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (List.class.isAssignableFrom(type)) {
+            return List.of();
+        }
+        if (type == void.class) {
+            return null;
+        }
+        // Such ids come from clients, so they are tasks that do not exist rather than a configuration error.
+        throw new EntityNotFoundException("Task not found!");
+    }
+
+    private static void requireNoTransaction(Method method) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("TaskRepository." + method.getName() + " spans several shards and cannot "
+                    + "run inside a transaction; select a shard with TaskShards.on");
+        }
+    }
+
+    private static UnsupportedOperationException notRouted(Method method) {
+        return new UnsupportedOperationException("TaskRepository." + method.getName() + " only runs on a selected "
+                + "shard; select one with TaskShards.on");
+    }
+}
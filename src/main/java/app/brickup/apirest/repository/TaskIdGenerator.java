@@ -0,0 +1,107 @@
+package app.brickup.apirest.repository;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Ids of new tasks when the tasks are sharded, unique across every instance and shard without asking a database: from
+ * the highest bit down, 37 bits of hundredths of a second since 2024-01-01, 4 bits of shard, 4 bits of node and an
+ * 8-bit sequence. The 53 bits keep ids exact as JavaScript numbers. Ids grow with time, so the list stays roughly in
+ * creation order, and each id names the shard holding its task.
+ * <p>
+ * Every instance writing to the same databases needs its own {@code node}. Up to 256 ids per hundredth of a second
+ * are handed out; past that, or when the clock goes back, the generator waits for its clock to move on. The time
+ * part lasts until 2067.
+ */
+public class TaskIdGenerator implements TaskIds {
+    public static final int MAX_SHARDS = 1 << 4;
+    public static final int MAX_NODES = 1 << 4;
+    // 2024-01-01T00:00:00Z
+    static final long EPOCH = 1_704_067_200_000L;
+    static final long TICK_MILLIS = 10;
+
+    private static final int SEQUENCE_BITS = 8;
+    private static final int NODE_SHIFT = SEQUENCE_BITS;
+    private static final int SHARD_SHIFT = NODE_SHIFT + 4;
+    private static final int TIME_SHIFT = SHARD_SHIFT + 4;
+    private static final int TIME_BITS = 37;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    // Ids below 2^40 are left to tasks_seq: the time part passed 2^24 two days after the epoch, long before the first
+    // id was handed out here.
+    private static final int LEGACY_BITS = 40;
+
+    private final int node;
+    private final LongSupplier clock;
+    private long lastTick = -1;
+    private int sequence;
+
+    public TaskIdGenerator(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    TaskIdGenerator(int node, LongSupplier clock) {
+        if (node < 0 || node >= MAX_NODES) {
+            throw new IllegalArgumentException("The node must be between 0 and " + (MAX_NODES - 1));
+        }
+        this.node = node;
+        this.clock = clock;
+    }
+
+    @Override
+    public synchronized long next(int shard) {
+        if (shard < 0 || shard >= MAX_SHARDS) {
+            throw new IllegalArgumentException("No shard " + shard);
+        }
+        long tick = tick();
+        if (tick < lastTick) {
+            tick = lastTick;
+        }
+        if (tick == lastTick) {
+            if (sequence == MAX_SEQUENCE) {
+                tick = nextTick();
+                sequence = 0;
+            } else {
+                sequence++;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTick = tick;
+        return tick << TIME_SHIFT | (long) shard << SHARD_SHIFT | (long) node << NODE_SHIFT | sequence;
+    }
+
+    /**
+     * The shard holding the task. Ids up to {@link #maxLegacyId()} were handed out by the {@code tasks_seq} table
+     * before the tasks were sharded, and those tasks are on the first shard.
+     */
+    public static int shardOf(long id) {
+        if (id <= maxLegacyId()) {
+            return 0;
+        }
+        return (int) (id >>> SHARD_SHIFT) & (MAX_SHARDS - 1);
+    }
+
+    /**
+     * The largest id {@code tasks_seq} may have handed out for tasks to stay on the first shard.
+     */
+    public static long maxLegacyId() {
+        return (1L << LEGACY_BITS) - 1;
+    }
+
+    private long tick() {
+        long millis = clock.getAsLong();
+        long tick = (millis - EPOCH) / TICK_MILLIS;
+        if (tick >> (LEGACY_BITS - TIME_SHIFT) == 0 || tick >> TIME_BITS != 0) {
+            throw new IllegalStateException("The clock is outside the range of task ids: " + millis);
+        }
+        return tick;
+    }
+
+    private long nextTick() {
+        long tick;
+        do {
+            Thread.onSpinWait();
+            tick = tick();
+        } while (tick <= lastTick);
+        return tick;
+    }
+}
@@ -0,0 +1,12 @@
+package app.brickup.apirest.repository;
+
+/**
+ * Hands out the ids {@link ShardRoutingInterceptor} assigns to new tasks before their first save. Ids are known before
+ * the insert, so inserts can still be sent as JDBC batches.
+ */
+public interface TaskIds {
+    /**
+     * A new id for a task to be stored on the given shard.
+     */
+    long next(int shard);
+}
@@ -1,9 +1,120 @@
 package app.brickup.apirest.repository;
 
+import app.brickup.apirest.model.Status;
 import app.brickup.apirest.model.Task;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+/**
+ * Query methods run in a read-only transaction like the inherited ones, so they are routed to read replicas and
+ * bounded by the request deadline. {@link ShardRoutingInterceptor} sends each call to the shards holding its tasks
+ * and assigns the ids of new tasks.
+ */
 @Repository
-public interface TaskRepository extends JpaRepository<Task, Long> {
+@Transactional(readOnly = true)
+public interface TaskRepository extends JpaRepository<Task, Long>, TaskRepositoryCustom {
+    int STREAM_FETCH_SIZE = 1000;
+
+    List<Task> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<Task> findByStatusAndIdGreaterThanOrderByIdAsc(Status status, Long id, Limit limit);
+
+    /**
+     * Same page as {@link #findByIdGreaterThanOrderByIdAsc(Long, Limit)}, selecting only the columns of
+     * {@code type}, e.g. {@link Summary}.
+     */
+    <T> List<T> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit, Class<T> type);
+
+    <T> List<T> findByStatusAndIdGreaterThanOrderByIdAsc(Status status, Long id, Limit limit, Class<T> type);
+
+    /**
+     * Streams every task in id order. Must be consumed inside a read-only transaction and closed afterwards.
+     * Connector/J only honours the fetch size when {@code useCursorFetch=true} is set on the JDBC url,
+     * in which case rows are pulled from a server-side cursor in chunks of {@value #STREAM_FETCH_SIZE}.
+     */
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("select t from Task t order by t.id")
+    Stream<Task> streamAll();
+
+    /**
+     * Deletes a task with a single statement, without loading it first.
+     *
+     * @return the number of rows deleted, 0 when there is no such task
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Task t where t.id = :id")
+    int deleteTaskById(Long id);
+
+    /**
+     * Deletes every task with the given status with a single statement. Their images are left for
+     * {@code ImageGarbageCollector}.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from Task t where t.status = :status")
+    int deleteAllByStatusInBatch(Status status);
+
+    @Query("select t.status from Task t where t.id = :id")
+    Optional<Status> findStatusById(Long id);
+
+    /**
+     * Rows of status and number of tasks with it.
+     */
+    @Query("select t.status, count(t) from Task t group by t.status")
+    List<Object[]> countByStatus();
+
+    /**
+     * Rows of id and status of those of the given tasks that exist. They stay locked until the transaction ends,
+     * so a delete that follows removes exactly these tasks.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t.id, t.status from Task t where t.id in :ids")
+    List<Object[]> lockStatusesByIds(Collection<Long> ids);
+
+    /**
+     * Which of the given image locations are still linked to a task.
+     */
+    @Query("select distinct t.linkImage from Task t where t.linkImage in :locations")
+    List<String> findLinkedImages(Collection<String> locations);
+
+    /**
+     * Image locations outside the segments, in order, starting after {@code after}.
+     */
+    @Query("select distinct t.linkImage from Task t where t.linkImage > :after and t.linkImage not like 'segment:%' "
+            + "order by t.linkImage")
+    List<String> findFileImagesAfter(String after, Limit limit);
+
+    /**
+     * Points every task linked to the image at {@code from} to {@code to}, bumping their versions.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Task t set t.linkImage = :to, t.version = t.version + 1 where t.linkImage = :from")
+    int relinkImage(String from, String to);
+
+    /**
+     * Projection of a task without its image columns, which are by far the widest.
+     */
+    record Summary(Long id, String description, Status status, Long version) {
+    }
 }
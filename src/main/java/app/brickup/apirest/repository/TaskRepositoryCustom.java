@@ -0,0 +1,42 @@
+package app.brickup.apirest.repository;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+
+import java.util.List;
+
+public interface TaskRepositoryCustom {
+    /**
+     * How {@link #search} matches descriptions: a MySQL {@code FULLTEXT} index ordered by relevance, or a
+     * substring {@code LIKE} ordered by id for databases without one, such as the H2 used by the loadtest profile.
+     */
+    enum SearchMode {
+        FULLTEXT, LIKE
+    }
+
+    /**
+     * Columns to change in a partial update. {@code null} leaves a column untouched.
+     */
+    record Changes(String description, Status status, String linkImage, String contentType) {
+    }
+
+    /**
+     * Applies the changes with a single {@code UPDATE ... SET} that also bumps the version. When
+     * {@code expectedVersion} is given the row is only updated if it still has that version.
+     *
+     * @return the number of rows updated, 0 when the task does not exist or its version differs
+     */
+    int patch(Long id, Long expectedVersion, Changes changes);
+
+    /**
+     * A task found by {@link #search} and how well it matched; 0 when the search mode does not rank.
+     */
+    record Match(Task task, double relevance) {
+    }
+
+    /**
+     * Tasks whose description matches {@code query}, most relevant first and then by id, optionally restricted to a
+     * status.
+     */
+    List<Match> search(String query, Status status, int offset, int limit);
+}
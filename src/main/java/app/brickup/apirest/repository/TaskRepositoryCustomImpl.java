@@ -0,0 +1,89 @@
+package app.brickup.apirest.repository;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Locale;
+
+public class TaskRepositoryCustomImpl implements TaskRepositoryCustom {
+    private static final String FULLTEXT_MATCH = "MATCH(description) AGAINST (:query IN NATURAL LANGUAGE MODE)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.search.mode}")
+    private SearchMode searchMode;
+
+    @Override
+    @Transactional
+    public int patch(Long id, Long expectedVersion, Changes changes) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Task> update = builder.createCriteriaUpdate(Task.class);
+        Root<Task> task = update.from(Task.class);
+
+        if (changes.description() != null) {
+            update.set(task.get("description"), changes.description());
+        }
+        if (changes.status() != null) {
+            update.set(task.get("status"), changes.status());
+        }
+        if (changes.linkImage() != null) {
+            update.set(task.get("linkImage"), changes.linkImage());
+            update.set(task.get("contentType"), changes.contentType());
+        }
+
+        Path<Long> version = task.get("version");
+        update.set(version, builder.sum(version, 1L));
+
+        Predicate where = builder.equal(task.get("id"), id);
+        if (expectedVersion != null) {
+            where = builder.and(where, builder.equal(version, expectedVersion));
+        }
+        update.where(where);
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Match> search(String query, Status status, int offset, int limit) {
+        Query search = searchMode == SearchMode.FULLTEXT ? fullTextQuery(query, status) : likeQuery(query, status);
+        if (status != null) {
+            search.setParameter("status", status.name());
+        }
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = search.setFirstResult(offset).setMaxResults(limit).getResultList();
+        return rows.stream()
+                .map(row -> new Match((Task) row[0], ((Number) row[1]).doubleValue()))
+                .toList();
+    }
+
+    private Query fullTextQuery(String query, Status status) {
+        String sql = "SELECT t.*, " + FULLTEXT_MATCH + " AS relevance FROM tasks t WHERE " + FULLTEXT_MATCH
+                + (status != null ? " AND status = :status" : "")
+                + " ORDER BY relevance DESC, id";
+        return entityManager.createNativeQuery(sql, Task.SEARCH_MATCH).setParameter("query", query);
+    }
+
+    private Query likeQuery(String query, Status status) {
+        String escaped = query.toLowerCase(Locale.ROOT)
+                .replace("!", "!!")
+                .replace("%", "!%")
+                .replace("_", "!_");
+        String sql = "SELECT t.*, 0 AS relevance FROM tasks t WHERE LOWER(description) LIKE :pattern ESCAPE '!'"
+                + (status != null ? " AND status = :status" : "")
+                + " ORDER BY id";
+        return entityManager.createNativeQuery(sql, Task.SEARCH_MATCH).setParameter("pattern", "%" + escaped + "%");
+    }
+}
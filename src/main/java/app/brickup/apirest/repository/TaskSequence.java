@@ -0,0 +1,124 @@
+package app.brickup.apirest.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ids of new tasks when the tasks are not sharded, from the {@code tasks_seq} table as before sharding: blocks of 50
+ * are taken like Hibernate's pooled-lo optimizer did, each in its own transaction, so instances sharing the database
+ * never hand out the same id and ids stay small.
+ * <p>
+ * Callers are inside transactions that may already hold a pooled connection, so blocks are taken on a data source of
+ * their own: a refill never waits for a connection the waiting callers hold. The next block is taken once half of
+ * the current one is used, by the caller that crosses the middle after getting its id and without holding the lock,
+ * so the others only wait when a whole half block goes out during one round trip.
+ */
+public class TaskSequence implements TaskIds, AutoCloseable {
+    static final int BLOCK_SIZE = 50;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition refilled = lock.newCondition();
+    // All guarded by the lock.
+    private long next;
+    private long end;
+    private Long prefetched;
+    private boolean refilling;
+
+    /**
+     * @param dataSource used for nothing else, and closed with the sequence
+     */
+    public TaskSequence(DataSource dataSource) {
+        this(new JdbcTemplate(dataSource), new DataSourceTransactionManager(dataSource), dataSource);
+    }
+
+    TaskSequence(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this(jdbcTemplate, transactionManager, null);
+    }
+
+    private TaskSequence(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                         DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public long next(int shard) {
+        long id;
+        boolean refill;
+        lock.lock();
+        try {
+            while (next == end && prefetched == null) {
+                if (refilling) {
+                    refilled.awaitUninterruptibly();
+                } else {
+                    refilling = true;
+                    lock.unlock();
+                    try {
+                        refill();
+                    } finally {
+                        lock.lock();
+                    }
+                }
+            }
+            if (next == end) {
+                next = prefetched;
+                end = next + BLOCK_SIZE;
+                prefetched = null;
+            }
+            id = next++;
+            refill = end - next == BLOCK_SIZE / 2 && prefetched == null && !refilling;
+            refilling |= refill;
+        } finally {
+            lock.unlock();
+        }
+        if (refill) {
+            try {
+                refill();
+            } catch (RuntimeException e) {
+                // This caller already has its id; the one that needs the block takes it and reports the failure.
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Takes the next block into {@code prefetched}. Called without the lock, by the one caller that set
+     * {@code refilling}; a failure leaves the refill to the next caller that needs it.
+     */
+    private void refill() {
+        Long lo = null;
+        try {
+            lo = transactionTemplate.execute(tx -> {
+                Long value = jdbcTemplate.queryForObject("SELECT next_val FROM tasks_seq FOR UPDATE", Long.class);
+                jdbcTemplate.update("UPDATE tasks_seq SET next_val = ?", value + BLOCK_SIZE);
+                return value;
+            });
+        } finally {
+            lock.lock();
+            try {
+                prefetched = lo;
+                refilling = false;
+                refilled.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (dataSource instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package app.brickup.apirest.repository;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * The databases the tasks are spread over, and the one the current thread works on. Shard 0 is
+ * {@code spring.datasource}; the others come from {@code app.datasource.shard-urls}. A task stays on the shard
+ * named by its id, see {@link TaskIdGenerator}, and new tasks go to the shards in turn.
+ * <p>
+ * Connections are taken from the shard selected with {@link #on}. Inside a transaction the selection sticks to the
+ * transaction until it ends, since its connection is only taken on the first statement, which can be a flush long
+ * after the call that selected the shard; asking the same transaction for another shard fails, as a transaction
+ * cannot span databases. Without a selection connections come from the first shard.
+ */
+public class TaskShards {
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int count;
+    private final Executor executor;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param executor runs the shards of {@link #onEach} but the first, which runs on the calling thread
+     */
+    public TaskShards(int count, Executor executor) {
+        if (count < 1 || count > TaskIdGenerator.MAX_SHARDS) {
+            throw new IllegalArgumentException("Between 1 and " + TaskIdGenerator.MAX_SHARDS + " shards are supported");
+        }
+        this.count = count;
+        this.executor = executor;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isSharded() {
+        return count > 1;
+    }
+
+    /**
+     * The shard holding the task, which may not be configured when the id was never handed out.
+     */
+    public int shardOf(long id) {
+        return TaskIdGenerator.shardOf(id);
+    }
+
+    public boolean exists(int shard) {
+        return shard >= 0 && shard < count;
+    }
+
+    /**
+     * The shard for the next new tasks.
+     */
+    int nextShard() {
+        return Math.floorMod(next.getAndIncrement(), count);
+    }
+
+    /**
+     * The shard selected on this thread, or null.
+     */
+    public static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The shard to take a connection from: the selected one, or the first. Inside a transaction without a selection,
+     * the first shard becomes its selection, so a later call for another shard fails instead of using the connection
+     * of the first.
+     */
+    public static int resolve() {
+        Integer shard = CURRENT.get();
+        if (shard != null) {
+            return shard;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            select(0);
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the action with the shard selected. Shards named by ids from clients must be checked with
+     * {@link #exists} first, as a missing shard here is a programming or configuration error.
+     *
+     * @throws IllegalArgumentException when the shard is not configured
+     * @throws IllegalStateException when another shard is already selected on this thread or its transaction
+     */
+    public <T> T on(int shard, Supplier<T> action) {
+        if (!exists(shard)) {
+            throw new IllegalArgumentException("No shard " + shard);
+        }
+        Integer current = CURRENT.get();
+        if (current != null) {
+            if (current != shard) {
+                throw new IllegalStateException("Shard " + current + " is selected on this thread or its transaction, "
+                        + "shard " + shard + " needs a transaction of its own");
+            }
+            return action.get();
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            select(shard);
+            return action.get();
+        }
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Runs the action on every shard at once, each with its shard selected, and returns the results in shard order,
+     * nulls included. With several shards it must be called outside a transaction, as each shard needs its own.
+     */
+    public <T> List<T> onEach(IntFunction<T> action) {
+        List<T> results = new ArrayList<>(count);
+        if (count == 1) {
+            results.add(on(0, () -> action.apply(0)));
+            return results;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive() || CURRENT.get() != null) {
+            throw new IllegalStateException("Work on every shard cannot run inside a transaction or on one shard");
+        }
+        List<CompletableFuture<T>> others = new ArrayList<>(count - 1);
+        for (int shard = 1; shard < count; shard++) {
+            int selected = shard;
+            others.add(CompletableFuture.supplyAsync(() -> on(selected, () -> action.apply(selected)), executor));
+        }
+        results.add(on(0, () -> action.apply(0)));
+        try {
+            for (CompletableFuture<T> other : others) {
+                results.add(other.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Groups the items by the shard of their id, in shard order. Items on shards that are not configured are
+     * grouped too, for the caller to decide about.
+     */
+    public <T> Map<Integer, List<T>> byShard(Iterable<T> items, Function<T, Long> id) {
+        Map<Integer, List<T>> groups = new TreeMap<>();
+        for (T item : items) {
+            groups.computeIfAbsent(shardOf(id.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return groups;
+    }
+
+    private static void select(int shard) {
+        CURRENT.set(shard);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                CURRENT.remove();
+            }
+        });
+    }
+}
@@ -0,0 +1,321 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.model.ImageSize;
+import app.brickup.apirest.util.ImageResponseUtil;
+import org.springframework.http.MediaType;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Content-addressed storage for task images, one file per image. Uploads are streamed to a temporary file while
+ * being hashed and then moved to {@code <root>/<first two hex chars>/<sha-256>}, so identical images are kept only
+ * once and concurrent uploads never share state. The location is the absolute path of the file.
+ */
+public class FileImageStore implements ImageStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final String DERIVATIVE_EXTENSION = ".jpg";
+
+    private final Path root;
+
+    public FileImageStore(String directory) {
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public StoredImage store(MultipartFile image) throws IOException {
+        Path tmpDir = Files.createDirectories(tempDirectory());
+        Path tmp = Files.createTempFile(tmpDir, "upload-", ".part");
+
+        try {
+            MessageDigest digest = sha256();
+            String contentType;
+            long size;
+
+            try (BufferedInputStream in = new BufferedInputStream(image.getInputStream(), BUFFER_SIZE);
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                // Sniff before hashing: the peeked bytes are pushed back and must only be digested once.
+                contentType = detectContentType(in);
+                size = new DigestInputStream(in, digest).transferTo(out);
+            }
+
+            return place(tmp, contentType, size, digest);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * The file is hashed in place and moved, never copied.
+     */
+    @Override
+    public StoredImage storeFile(Path file) throws IOException {
+        try {
+            MessageDigest digest = sha256();
+            String contentType;
+            long size;
+
+            try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+                contentType = detectContentType(in);
+                size = new DigestInputStream(in, digest).transferTo(OutputStream.nullOutputStream());
+            }
+
+            return place(file, contentType, size, digest);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file to its content address, or drops it when the same bytes are stored
+     * already.
+     */
+    private StoredImage place(Path tmp, String contentType, long size, MessageDigest digest) throws IOException {
+        String hash = HexFormat.of().formatHex(digest.digest());
+        Path target = pathFor(hash);
+
+        if (touch(target)) {
+            Files.delete(tmp);
+        } else {
+            Files.createDirectories(target.getParent());
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Another upload of the same bytes won the race; its copy is identical.
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        return new StoredImage(target.toString(), contentType, size, hash);
+    }
+
+    @Override
+    public ImageResource open(String location, String contentType) throws IOException {
+        if (location == null) {
+            throw new FileNotFoundException("File not found!");
+        }
+
+        Path path = Path.of(location);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("File not found!");
+        }
+
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        String fileName = path.getFileName().toString();
+        // Content-addressed files carry their own strong validator; older uploads fall back to size and mtime.
+        String eTag = HASH.matcher(fileName).matches()
+                ? "\"" + fileName + "\""
+                : "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+        return new ImageResource(path, contentType != null ? contentType : MediaType.IMAGE_JPEG_VALUE,
+                length, lastModified, eTag);
+    }
+
+    @Override
+    public ImageResource openDerivative(String location, ImageSize size) throws IOException {
+        Path path = derivativePath(location, size);
+        if (path == null) {
+            return null;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String eTag = "\"" + path.getFileName().toString().replace(DERIVATIVE_EXTENSION, "") + "\"";
+        return new ImageResource(path, MediaType.IMAGE_JPEG_VALUE, attributes.size(),
+                attributes.lastModifiedTime().toMillis(), eTag);
+    }
+
+    /**
+     * Where the resized copy of a content-addressed image lives. Older uploads have no derivatives.
+     */
+    public Path derivativePath(String location, ImageSize size) {
+        if (location == null) {
+            return null;
+        }
+        Path original = Path.of(location);
+        String fileName = original.getFileName().toString();
+        if (!HASH.matcher(fileName).matches()) {
+            return null;
+        }
+        return original.resolveSibling(fileName + "-" + size.name().toLowerCase(Locale.ROOT) + DERIVATIVE_EXTENSION);
+    }
+
+    @Override
+    public boolean supportsDerivatives(String location) {
+        return derivativePath(location, ImageSize.THUMB) != null;
+    }
+
+    @Override
+    public boolean hasDerivative(String location, ImageSize size) {
+        Path path = derivativePath(location, size);
+        return path != null && Files.exists(path);
+    }
+
+    @Override
+    public void storeDerivative(String location, ImageSize size, byte[] jpeg) throws IOException {
+        Path target = derivativePath(location, size);
+        Path tmp = Files.createTempFile(target.getParent(), "derivative-", ".part");
+        try {
+            Files.write(tmp, jpeg);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    @Override
+    public ImageInputStream openImageInput(String location) throws IOException {
+        try {
+            return new FileImageInputStream(Path.of(location).toFile());
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    Path pathFor(String hash) {
+        return root.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    Path shardDirectory(int shard) {
+        return root.resolve(String.format("%02x", shard));
+    }
+
+    @Override
+    public Path tempDirectory() {
+        return root.resolve("tmp");
+    }
+
+    /**
+     * The location of the original image a stored file belongs to: the file itself for an original, the image it
+     * was resized from for a derivative, or {@code null} for anything else.
+     */
+    String ownerLocation(Path file) {
+        String fileName = file.getFileName().toString();
+        if (HASH.matcher(fileName).matches()) {
+            return file.toString();
+        }
+        for (ImageSize size : ImageSize.values()) {
+            String suffix = "-" + size.name().toLowerCase(Locale.ROOT) + DERIVATIVE_EXTENSION;
+            String hash = fileName.endsWith(suffix) ? fileName.substring(0, fileName.length() - suffix.length()) : "";
+            if (HASH.matcher(hash).matches()) {
+                return file.resolveSibling(hash).toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Deletes a file unless it was modified after {@code cutoff}. The file is renamed out of the way before the
+     * check, so a concurrent {@link #store} of the same bytes either refreshed it in time and it is put back, or
+     * finds it gone and writes a new copy.
+     *
+     * @return the number of bytes reclaimed, or -1 if the file was kept or no longer exists
+     */
+    long deleteIfUnchangedSince(Path file, FileTime cutoff) throws IOException {
+        Path doomed = file.resolveSibling(file.getFileName() + ".deleting");
+        try {
+            Files.move(file, doomed, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+
+        BasicFileAttributes attributes = Files.readAttributes(doomed, BasicFileAttributes.class);
+        if (attributes.lastModifiedTime().compareTo(cutoff) > 0) {
+            Files.move(doomed, file, StandardCopyOption.ATOMIC_MOVE);
+            return -1;
+        }
+        Files.delete(doomed);
+        return attributes.size();
+    }
+
+    /**
+     * Marks an existing image as just written, so the garbage collector's grace period also covers uploads that
+     * were deduplicated against it. Returns false when there is no such file.
+     */
+    private static boolean touch(Path file) throws IOException {
+        try {
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Detects the image type from its leading bytes. Only PNG, JPEG, GIF and WebP are recognised; anything else,
+     * SVG and HTML included, is stored as {@code application/octet-stream} whatever the client declared, so an
+     * upload can never be served back as a document of the API's origin. The stream must support mark/reset;
+     * nothing is consumed.
+     */
+    static String detectContentType(InputStream in) throws IOException {
+        byte[] head = new byte[12];
+        in.mark(head.length);
+        int read = in.readNBytes(head, 0, head.length);
+        in.reset();
+
+        if (startsWith(head, read, 0, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n')) {
+            return MediaType.IMAGE_PNG_VALUE;
+        }
+        if (startsWith(head, read, 0, 0xff, 0xd8, 0xff)) {
+            return MediaType.IMAGE_JPEG_VALUE;
+        }
+        if (startsWith(head, read, 0, 'G', 'I', 'F', '8', '7', 'a')
+                || startsWith(head, read, 0, 'G', 'I', 'F', '8', '9', 'a')) {
+            return MediaType.IMAGE_GIF_VALUE;
+        }
+        if (startsWith(head, read, 0, 'R', 'I', 'F', 'F') && startsWith(head, read, 8, 'W', 'E', 'B', 'P')) {
+            return ImageResponseUtil.IMAGE_WEBP_VALUE;
+        }
+        return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+    }
+
+    private static boolean startsWith(byte[] head, int read, int offset, int... magic) {
+        if (read < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if ((head[offset + i] & 0xff) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.model.ImageSize;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Produces the resized copies served by {@code /api/tasks/{id}/image?size=}. Work runs on the bounded
+ * {@code imageDerivativeExecutor}; until a derivative exists the original image is served instead.
+ */
+@Slf4j
+@Service
+public class ImageDerivativeService {
+    private final ImageStore imageStore;
+    private final TaskExecutor executor;
+
+    public ImageDerivativeService(ImageStore imageStore, @Qualifier("imageDerivativeExecutor") TaskExecutor executor) {
+        this.imageStore = imageStore;
+        this.executor = executor;
+    }
+
+    public void generateAsync(String location) {
+        try {
+            executor.execute(() -> generate(location));
+        } catch (TaskRejectedException e) {
+            log.warn("Derivative queue is full, serving the original image for {}", location);
+        }
+    }
+
+    void generate(String location) {
+        try {
+            if (!imageStore.supportsDerivatives(location) || allPresent(location)) {
+                return;
+            }
+
+            // Decode once, subsampled down to roughly twice the largest derivative, and resize from there.
+            BufferedImage source = read(location, ImageSize.MEDIUM.getMaxDimension() * 2);
+            if (source == null) {
+                return;
+            }
+
+            for (ImageSize size : ImageSize.values()) {
+                if (imageStore.hasDerivative(location, size)
+                        || Math.max(source.getWidth(), source.getHeight()) <= size.getMaxDimension()) {
+                    continue;
+                }
+                imageStore.storeDerivative(location, size, encode(resize(source, size.getMaxDimension())));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not generate derivatives for {}", location, e);
+        }
+    }
+
+    private boolean allPresent(String location) {
+        for (ImageSize size : ImageSize.values()) {
+            if (!imageStore.hasDerivative(location, size)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BufferedImage read(String location, int targetDimension) throws IOException {
+        try (ImageInputStream input = imageStore.openImageInput(location)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longestSide / targetDimension);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage source, int maxDimension) {
+        double scale = (double) maxDimension / Math.max(source.getWidth(), source.getHeight());
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel; flatten transparent images onto white.
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
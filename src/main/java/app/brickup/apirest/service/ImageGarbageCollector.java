@@ -0,0 +1,163 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Removes stored images that no task references any more: images of deleted tasks, images replaced by a PATCH and
+ * their derivatives, plus temporary files left behind by interrupted writes. This covers the files of the
+ * {@link FileImageStore}, which with segments enabled still holds the images too large for them; the segments are
+ * compacted by the {@link SegmentCompactor}.
+ * <p>
+ * Each run looks at the next {@code batch-size} files in shard order and resumes where the previous run stopped, so
+ * the disk and database work per interval is bounded no matter how large the store is. Files modified within the
+ * grace period are never touched; that covers uploads whose task row has not been committed yet. Runs on the
+ * scheduler thread only and is not thread-safe.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "app.images.gc.enabled", havingValue = "true", matchIfMissing = true)
+public class ImageGarbageCollector {
+    private static final int SHARDS = 256;
+    // The temporary directory is visited after the last shard.
+    private static final int TEMP_DIRECTORY = SHARDS;
+
+    private final FileImageStore imageStore;
+    private final TaskRepository repository;
+    private final TaskMetrics metrics;
+    private final int batchSize;
+    private final Duration gracePeriod;
+
+    private int directory;
+    private String lastFileName;
+
+    public ImageGarbageCollector(FileImageStore imageStore, TaskRepository repository, TaskMetrics metrics,
+                                 @Value("${app.images.gc.batch-size}") int batchSize,
+                                 @Value("${app.images.gc.grace-period}") Duration gracePeriod) {
+        this.imageStore = imageStore;
+        this.repository = repository;
+        this.metrics = metrics;
+        this.batchSize = batchSize;
+        this.gracePeriod = gracePeriod;
+    }
+
+    @Scheduled(fixedDelayString = "${app.images.gc.interval}", initialDelayString = "${app.images.gc.interval}")
+    public void collect() {
+        try {
+            int deleted = collectBatch();
+            if (deleted > 0) {
+                log.info("Deleted {} unreferenced image files", deleted);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Image garbage collection failed", e);
+        }
+    }
+
+    /**
+     * Examines the next batch of files and deletes the unreferenced ones.
+     *
+     * @return the number of files deleted
+     */
+    int collectBatch() throws IOException {
+        FileTime cutoff = FileTime.from(Instant.now().minus(gracePeriod));
+        int deleted = 0;
+
+        Map<Path, String> candidates = new LinkedHashMap<>();
+        for (Path file : nextBatch()) {
+            if (!modifiedBefore(file, cutoff)) {
+                continue;
+            }
+            String fileName = file.getFileName().toString();
+            if (fileName.endsWith(".part") || fileName.endsWith(".deleting")) {
+                deleted += delete(file, cutoff);
+                continue;
+            }
+            String owner = imageStore.ownerLocation(file);
+            if (owner != null) {
+                candidates.put(file, owner);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            Set<String> referenced = new HashSet<>(repository.findLinkedImages(new HashSet<>(candidates.values())));
+            for (Map.Entry<Path, String> candidate : candidates.entrySet()) {
+                if (!referenced.contains(candidate.getValue())) {
+                    deleted += delete(candidate.getKey(), cutoff);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private int delete(Path file, FileTime cutoff) throws IOException {
+        long bytes = imageStore.deleteIfUnchangedSince(file, cutoff);
+        if (bytes < 0) {
+            return 0;
+        }
+        metrics.recordImageCollected(bytes);
+        return 1;
+    }
+
+    /**
+     * The next files after the cursor, moving on to the following directories until the batch is full or every
+     * directory has been visited once.
+     */
+    private List<Path> nextBatch() throws IOException {
+        List<Path> batch = new ArrayList<>(batchSize);
+        for (int visited = 0; visited <= SHARDS && batch.size() < batchSize; visited++) {
+            int wanted = batchSize - batch.size();
+            List<Path> files = list(directory == TEMP_DIRECTORY
+                    ? imageStore.tempDirectory()
+                    : imageStore.shardDirectory(directory), lastFileName, wanted);
+            batch.addAll(files);
+
+            if (files.size() < wanted) {
+                directory = (directory + 1) % (SHARDS + 1);
+                lastFileName = null;
+            } else {
+                lastFileName = files.get(files.size() - 1).getFileName().toString();
+            }
+        }
+        return batch;
+    }
+
+    private static List<Path> list(Path directory, String after, int limit) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> after == null || file.getFileName().toString().compareTo(after) > 0)
+                    .sorted()
+                    .limit(limit)
+                    .toList();
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+    }
+
+    private static boolean modifiedBefore(Path file, FileTime cutoff) throws IOException {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).lastModifiedTime().compareTo(cutoff) <= 0;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the images kept one per file into the segments of the {@link SegmentImageStore}, together with their resized
+ * copies, and points the tasks at the new locations. Images larger than {@code max-image-size} stay where they are.
+ * <p>
+ * Each batch of images is copied first and then relinked in one transaction. Content-addressed files are left to the
+ * {@link ImageGarbageCollector}, which deletes them once the grace period is over; files from before content
+ * addressing are never collected, so they are deleted here once their tasks have moved. Running it again picks up
+ * where it stopped.
+ */
+@Slf4j
+@Service
+public class ImageMigrationService {
+    private static final int BATCH_SIZE = 100;
+
+    private final ImageStore imageStore;
+    private final TaskRepository repository;
+    private final TaskCache cache;
+    private final TaskChangeTracker changeTracker;
+    private final TaskShards shards;
+    private final TransactionTemplate transactionTemplate;
+
+    public ImageMigrationService(ImageStore imageStore, TaskRepository repository, TaskCache cache,
+                                 TaskChangeTracker changeTracker, TaskShards shards,
+                                 PlatformTransactionManager transactionManager) {
+        this.imageStore = imageStore;
+        this.repository = repository;
+        this.cache = cache;
+        this.changeTracker = changeTracker;
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public Result migrate() throws IOException {
+        if (!(imageStore instanceof SegmentImageStore segments)) {
+            throw new IllegalStateException("Images can only be migrated with app.images.store=segments");
+        }
+
+        Result result = new Result();
+        String after = "";
+        List<String> locations;
+        while (!(locations = repository.findFileImagesAfter(after, Limit.of(BATCH_SIZE))).isEmpty()) {
+            Map<String, String> moved = new LinkedHashMap<>();
+            for (String location : locations) {
+                String imported = segments.importFile(location);
+                if (imported != null) {
+                    moved.put(location, imported);
+                } else {
+                    result.skipped++;
+                }
+            }
+            if (!moved.isEmpty()) {
+                result.tasks += relink(moved);
+                result.images += moved.size();
+                deleteLegacyFiles(moved.keySet());
+            }
+            after = locations.get(locations.size() - 1);
+            log.info("Moved {} images of {} tasks to segments so far", result.images, result.tasks);
+        }
+        return result;
+    }
+
+    /**
+     * Relinks the batch on every shard, each in a transaction of its own.
+     */
+    private int relink(Map<String, String> moved) {
+        return shards.onEach(shard -> transactionTemplate.execute(tx -> {
+            int tasks = 0;
+            for (Map.Entry<String, String> image : moved.entrySet()) {
+                tasks += repository.relinkImage(image.getKey(), image.getValue());
+            }
+            if (tasks > 0) {
+                changeTracker.recordChange();
+                cache.invalidateAllAfterCommit();
+            }
+            return tasks;
+        })).stream().mapToInt(tasks -> tasks != null ? tasks : 0).sum();
+    }
+
+    private static void deleteLegacyFiles(Iterable<String> locations) throws IOException {
+        for (String location : locations) {
+            Path path = Path.of(location);
+            if (!FileImageStore.HASH.matcher(path.getFileName().toString()).matches()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * Images moved, tasks pointed at them, and images left in files because they are too large or gone.
+     */
+    @Getter
+    public static final class Result {
+        private int images;
+        private int tasks;
+        private int skipped;
+
+        @Override
+        public String toString() {
+            return images + " images of " + tasks + " tasks moved, " + skipped + " left in files";
+        }
+    }
+}
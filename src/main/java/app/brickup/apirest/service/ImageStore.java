@@ -0,0 +1,61 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.model.ImageSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Where task images and their resized copies are kept. Images are content-addressed: storing the same bytes twice
+ * returns the same location, which is what tasks keep in {@code link_image}.
+ * <p>
+ * {@code app.images.store} selects the implementation: {@link FileImageStore} keeps one file per image,
+ * {@link SegmentImageStore} packs small images into large segment files.
+ */
+public interface ImageStore {
+    enum Type {
+        FILES, SEGMENTS
+    }
+
+    StoredImage store(MultipartFile image) throws IOException;
+
+    /**
+     * Stores a file that was written to {@link #tempDirectory()} by other means, such as a finished resumable
+     * upload. Its type is detected from its content, like that of uploaded images. The file is gone afterwards,
+     * whether it was stored or not.
+     */
+    StoredImage storeFile(Path file) throws IOException;
+
+    /**
+     * @throws java.io.FileNotFoundException when there is no image at the location
+     */
+    ImageResource open(String location, String contentType) throws IOException;
+
+    /**
+     * Opens a resized copy of the image, or returns {@code null} while it has not been generated yet.
+     */
+    ImageResource openDerivative(String location, ImageSize size) throws IOException;
+
+    /**
+     * Whether the image can have resized copies. Images uploaded before content addressing cannot.
+     */
+    boolean supportsDerivatives(String location);
+
+    boolean hasDerivative(String location, ImageSize size);
+
+    void storeDerivative(String location, ImageSize size, byte[] jpeg) throws IOException;
+
+    /**
+     * Reads the image for decoding, or returns {@code null} when it no longer exists.
+     */
+    ImageInputStream openImageInput(String location) throws IOException;
+
+    /**
+     * Where uploads in progress are written before being stored.
+     */
+    Path tempDirectory();
+}
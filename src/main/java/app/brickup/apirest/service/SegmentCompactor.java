@@ -0,0 +1,110 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.repository.TaskRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reclaims the space of images no task references any more from the segments of the {@link SegmentImageStore}.
+ * <p>
+ * Each run looks at the next sealed segment in id order and asks the database which of its images are still
+ * referenced. When unreferenced images, and images written again in a later segment, make up at least
+ * {@code compaction-threshold} of the segment, the rest is copied to the active segment and the file deleted.
+ * Images stored within the garbage collector's grace period are always kept. Does nothing when images are kept in
+ * files. Runs on the scheduler thread only and is not thread-safe.
+ */
+@Slf4j
+@Service
+public class SegmentCompactor {
+    private static final int QUERY_BATCH_SIZE = 500;
+
+    private final ImageStore imageStore;
+    private final TaskRepository repository;
+    private final TaskMetrics metrics;
+    private final double threshold;
+    private final Duration gracePeriod;
+
+    private long lastSegment;
+
+    public SegmentCompactor(ImageStore imageStore, TaskRepository repository, TaskMetrics metrics,
+                            @Value("${app.images.segments.compaction-threshold}") double threshold,
+                            @Value("${app.images.gc.grace-period}") Duration gracePeriod) {
+        this.imageStore = imageStore;
+        this.repository = repository;
+        this.metrics = metrics;
+        this.threshold = threshold;
+        this.gracePeriod = gracePeriod;
+        if (imageStore instanceof SegmentImageStore segments) {
+            metrics.monitorSegments(segments);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.images.segments.compaction-interval}",
+            initialDelayString = "${app.images.segments.compaction-interval}")
+    public void compact() {
+        if (!(imageStore instanceof SegmentImageStore segments)) {
+            return;
+        }
+        try {
+            long reclaimed = compactNext(segments);
+            if (reclaimed > 0) {
+                log.info("Compacted an image segment, reclaiming {} bytes", reclaimed);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Image segment compaction failed", e);
+        }
+    }
+
+    /**
+     * Examines the next sealed segment and compacts it if enough of it is unused.
+     *
+     * @return the number of bytes reclaimed
+     */
+    long compactNext(SegmentImageStore segments) throws IOException {
+        List<Long> sealed = segments.sealedSegments();
+        if (sealed.isEmpty()) {
+            return 0;
+        }
+        long id = sealed.stream().filter(segment -> segment > lastSegment).findFirst().orElse(sealed.get(0));
+        lastSegment = id;
+
+        SegmentImageStore.Usage usage = segments.usage(id);
+        Set<String> referenced = referenced(usage.bytesByOwner().keySet());
+        Set<String> unreferenced = new HashSet<>();
+        long live = 0;
+        for (Map.Entry<String, Long> owner : usage.bytesByOwner().entrySet()) {
+            if (referenced.contains(owner.getKey())) {
+                live += owner.getValue();
+            } else {
+                unreferenced.add(owner.getKey());
+            }
+        }
+        if (usage.size() - live < threshold * usage.size()) {
+            return 0;
+        }
+
+        long reclaimed = segments.compact(id, unreferenced,
+                System.currentTimeMillis() - gracePeriod.toMillis());
+        metrics.recordSegmentCompacted(reclaimed);
+        return reclaimed;
+    }
+
+    private Set<String> referenced(Set<String> locations) {
+        List<String> all = new ArrayList<>(locations);
+        Set<String> referenced = new HashSet<>();
+        for (int i = 0; i < all.size(); i += QUERY_BATCH_SIZE) {
+            referenced.addAll(repository.findLinkedImages(all.subList(i, Math.min(i + QUERY_BATCH_SIZE, all.size()))));
+        }
+        return referenced;
+    }
+}
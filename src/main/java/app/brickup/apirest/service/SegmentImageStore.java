@@ -0,0 +1,573 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.model.ImageSize;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Content-addressed storage that appends small images to large segment files instead of giving each its own file,
+ * so storing and serving them creates, looks up and opens no file.
+ * <p>
+ * A segment is a file of up to {@code segment-size} bytes, mapped into memory whole and filled by one appender at a
+ * time. Each record holds a key (the image hash, or the hash and size of a resized copy), the time it was written, a
+ * CRC-32 and the bytes. Images are served as slices of the mapping, located through an in-memory index from key to
+ * record. The index is rebuilt at startup from the record headers; the last segment, the only one a crash can leave
+ * half written, is also checked against the CRCs and cut at its first bad record.
+ * <p>
+ * Records are never changed in place. The {@link SegmentCompactor} copies the images still in use out of segments
+ * that are mostly unused and deletes them. Images larger than {@code max-image-size} are handed to the
+ * {@link FileImageStore}, and keep its locations.
+ * <p>
+ * The index only knows what this process wrote, so the directory is locked for as long as the store is open and
+ * cannot be shared with other instances.
+ */
+@Slf4j
+public class SegmentImageStore implements ImageStore, Closeable {
+    static final String LOCATION_PREFIX = "segment:";
+    private static final int MAGIC = 0x53454731;
+    // Magic, written at, key length, data length and CRC-32 of the data, followed by the key and the data.
+    private static final int HEADER_SIZE = 4 + 8 + 2 + 4 + 4;
+    private static final int MAX_KEY_SIZE = 128;
+    private static final String EXTENSION = ".seg";
+
+    private final FileImageStore files;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxImageSize;
+    private final FileChannel lock;
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Guarded by this, as is every append.
+    private Segment active;
+
+    public SegmentImageStore(FileImageStore files, Path directory, int segmentSize, int maxImageSize)
+            throws IOException {
+        if (maxImageSize > segmentSize - HEADER_SIZE - MAX_KEY_SIZE) {
+            throw new IllegalArgumentException("Images of max-image-size do not fit in a segment");
+        }
+        this.files = files;
+        this.directory = directory.toAbsolutePath().normalize();
+        this.segmentSize = segmentSize;
+        this.maxImageSize = maxImageSize;
+
+        Files.createDirectories(this.directory);
+        this.lock = FileChannel.open(this.directory.resolve("lock"), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        if (lock.tryLock() == null) {
+            lock.close();
+            throw new IllegalStateException("Image segments in " + this.directory + " are in use by another process");
+        }
+        try {
+            load();
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public StoredImage store(MultipartFile image) throws IOException {
+        if (image.getSize() > maxImageSize) {
+            return files.store(image);
+        }
+        return storeBytes(image.getBytes());
+    }
+
+    /**
+     * Small files are copied into a segment and deleted; larger ones are moved into the {@link FileImageStore}.
+     */
+    @Override
+    public StoredImage storeFile(Path file) throws IOException {
+        if (Files.size(file) > maxImageSize) {
+            return files.storeFile(file);
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        return storeBytes(bytes);
+    }
+
+    private StoredImage storeBytes(byte[] bytes) throws IOException {
+        String contentType = FileImageStore.detectContentType(new ByteArrayInputStream(bytes));
+        String hash = HexFormat.of().formatHex(FileImageStore.sha256().digest(bytes));
+        add(hash, ByteBuffer.wrap(bytes));
+        return new StoredImage(LOCATION_PREFIX + hash, contentType, bytes.length, hash);
+    }
+
+    @Override
+    public ImageResource open(String location, String contentType) throws IOException {
+        if (!isSegmentLocation(location)) {
+            return files.open(location, contentType);
+        }
+        String hash = location.substring(LOCATION_PREFIX.length());
+        Entry entry = index.get(hash);
+        if (entry == null) {
+            throw new FileNotFoundException("File not found!");
+        }
+        // Same validator as the file store, so moving an image into a segment does not invalidate client caches.
+        return entry.resource(contentType != null ? contentType : MediaType.IMAGE_JPEG_VALUE, "\"" + hash + "\"");
+    }
+
+    @Override
+    public ImageResource openDerivative(String location, ImageSize size) throws IOException {
+        if (!isSegmentLocation(location)) {
+            return files.openDerivative(location, size);
+        }
+        String key = derivativeKey(location, size);
+        Entry entry = index.get(key);
+        return entry != null ? entry.resource(MediaType.IMAGE_JPEG_VALUE, "\"" + key + "\"") : null;
+    }
+
+    @Override
+    public boolean supportsDerivatives(String location) {
+        return isSegmentLocation(location) || files.supportsDerivatives(location);
+    }
+
+    @Override
+    public boolean hasDerivative(String location, ImageSize size) {
+        if (!isSegmentLocation(location)) {
+            return files.hasDerivative(location, size);
+        }
+        return index.containsKey(derivativeKey(location, size));
+    }
+
+    @Override
+    public void storeDerivative(String location, ImageSize size, byte[] jpeg) throws IOException {
+        if (!isSegmentLocation(location)) {
+            files.storeDerivative(location, size, jpeg);
+            return;
+        }
+        add(derivativeKey(location, size), ByteBuffer.wrap(jpeg));
+    }
+
+    @Override
+    public ImageInputStream openImageInput(String location) throws IOException {
+        if (!isSegmentLocation(location)) {
+            return files.openImageInput(location);
+        }
+        Entry entry = index.get(location.substring(LOCATION_PREFIX.length()));
+        return entry != null ? new SliceImageInputStream(entry.slice()) : null;
+    }
+
+    @Override
+    public Path tempDirectory() {
+        return files.tempDirectory();
+    }
+
+    /**
+     * Copies an image of the {@link FileImageStore} and its resized copies into a segment. The files are left in
+     * place for the garbage collector, since tasks still point at them until they are given the new location.
+     *
+     * @return the location in the segments, or {@code null} when the file no longer exists or is too large
+     */
+    public String importFile(String location) throws IOException {
+        Path path = Path.of(location);
+        byte[] bytes;
+        try {
+            if (Files.size(path) > maxImageSize) {
+                return null;
+            }
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        String fileName = path.getFileName().toString();
+        String hash = FileImageStore.HASH.matcher(fileName).matches()
+                ? fileName
+                : HexFormat.of().formatHex(FileImageStore.sha256().digest(bytes));
+        add(hash, ByteBuffer.wrap(bytes));
+        String imported = LOCATION_PREFIX + hash;
+
+        for (ImageSize size : ImageSize.values()) {
+            Path derivative = files.derivativePath(location, size);
+            if (derivative != null && Files.exists(derivative)) {
+                add(derivativeKey(imported, size), ByteBuffer.wrap(Files.readAllBytes(derivative)));
+            }
+        }
+        return imported;
+    }
+
+    /**
+     * Segments no longer appended to, oldest first.
+     */
+    List<Long> sealedSegments() {
+        Segment current;
+        synchronized (this) {
+            current = active;
+        }
+        return segments.keySet().stream().filter(id -> current == null || id != current.id).toList();
+    }
+
+    /**
+     * Bytes of a segment, and bytes of its records still in the index per image they belong to. Records of keys
+     * that were written again in a later segment no longer count.
+     */
+    Usage usage(long id) {
+        Segment segment = segments.get(id);
+        if (segment == null) {
+            return new Usage(0, Map.of());
+        }
+        Map<String, Long> bytesByOwner = new HashMap<>();
+        for (Record record : records(segment)) {
+            if (isCurrent(record, segment)) {
+                bytesByOwner.merge(ownerLocation(record.key), (long) record.size, Long::sum);
+            }
+        }
+        return new Usage(segment.end, bytesByOwner);
+    }
+
+    /**
+     * Copies the records of a sealed segment to the active one and deletes it, except for the images in
+     * {@code unreferenced} and their resized copies, which are dropped. An image stored again after
+     * {@code cutoffMillis} is kept even so, since a task may be about to point at it.
+     *
+     * @return the number of bytes reclaimed
+     */
+    long compact(long id, Set<String> unreferenced, long cutoffMillis) throws IOException {
+        Segment segment = segments.get(id);
+        if (segment == null) {
+            return 0;
+        }
+        long copied = 0;
+        for (Record record : records(segment)) {
+            synchronized (this) {
+                if (segment == active) {
+                    throw new IllegalStateException("The active segment cannot be compacted");
+                }
+                if (!isCurrent(record, segment)) {
+                    continue;
+                }
+                Entry entry = index.get(record.key);
+                String owner = ownerLocation(record.key);
+                if (unreferenced.contains(owner) && !touchedSince(owner, cutoffMillis)) {
+                    index.remove(record.key);
+                    continue;
+                }
+                append(record.key, entry.slice(), entry.writtenAt, entry.touchedAt);
+                copied += record.size;
+            }
+        }
+        segments.remove(id);
+        // Slices being served keep the mapping, so the file can go at once.
+        Files.delete(segment.path);
+        log.debug("Compacted segment {}: {} of {} bytes copied", segment.path, copied, segment.end);
+        return segment.end - copied;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    long size() {
+        return segments.values().stream().mapToLong(segment -> segment.end).sum();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (active != null) {
+                seal(active);
+                active = null;
+            }
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Stores the bytes under the key, unless they are there already. Then the existing record is marked as just
+     * stored instead, so the compactor's grace period also covers uploads deduplicated against it.
+     */
+    private synchronized void add(String key, ByteBuffer data) throws IOException {
+        Entry existing = index.get(key);
+        if (existing != null) {
+            existing.touchedAt = System.currentTimeMillis();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        append(key, data, now, now);
+    }
+
+    /**
+     * Writes a record at the end of the active segment, starting a new one when it does not fit, and points the
+     * index at it. Readers only find the record through the index, so it is complete before they can see it.
+     */
+    private void append(String key, ByteBuffer data, long writtenAt, long touchedAt) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.US_ASCII);
+        int length = data.remaining();
+        int recordSize = HEADER_SIZE + keyBytes.length + length;
+        if (active == null || active.end + recordSize > segmentSize) {
+            roll();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        MappedByteBuffer buffer = active.buffer;
+        int start = active.end;
+        int position = start + HEADER_SIZE + keyBytes.length;
+        buffer.putInt(start, MAGIC);
+        buffer.putLong(start + 4, writtenAt);
+        buffer.putShort(start + 12, (short) keyBytes.length);
+        buffer.putInt(start + 14, length);
+        buffer.putInt(start + 18, (int) crc.getValue());
+        buffer.put(start + HEADER_SIZE, keyBytes);
+        buffer.put(position, data, data.position(), length);
+        active.end = start + recordSize;
+
+        index.put(key, new Entry(active, position, length, writtenAt, touchedAt));
+    }
+
+    /**
+     * Seals the active segment and starts the next one, mapped at its full size up front.
+     */
+    private void roll() throws IOException {
+        if (active != null) {
+            seal(active);
+        }
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        Path path = directory.resolve(String.format("%016d%s", id, EXTENSION));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            active = new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize), 0);
+        }
+        segments.put(id, active);
+    }
+
+    /**
+     * Flushes the segment and cuts the file to what was written. The mapping stays valid for what is before the cut.
+     */
+    private static void seal(Segment segment) throws IOException {
+        segment.buffer.force();
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+            channel.truncate(segment.end);
+        }
+    }
+
+    private void load() throws IOException {
+        List<Path> paths;
+        try (Stream<Path> list = Files.list(directory)) {
+            paths = list.filter(path -> path.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+        }
+
+        // Nothing is known about when the images were last stored; count them as just stored.
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < paths.size(); i++) {
+            Path path = paths.get(i);
+            boolean last = i == paths.size() - 1;
+            String fileName = path.getFileName().toString();
+            long id = Long.parseLong(fileName.substring(0, fileName.length() - EXTENSION.length()));
+
+            Segment segment = map(id, path, last);
+            segments.put(id, segment);
+            for (Record record : records(segment)) {
+                index.put(record.key, new Entry(segment, record.position, record.length, record.writtenAt, now));
+            }
+        }
+        log.info("Loaded {} images from {} segments", index.size(), segments.size());
+    }
+
+    /**
+     * Maps a segment found at startup, cutting it after its last complete record. Only the last segment has its
+     * data checked against the CRCs; the others were flushed when sealed.
+     */
+    private Segment map(long id, Path path, boolean verify) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size > segmentSize) {
+                throw new IllegalStateException(path + " is larger than segment-size");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = 0;
+            for (Record record = read(buffer, 0, (int) size, verify); record != null;
+                 record = read(buffer, end, (int) size, verify)) {
+                end = record.position + record.length;
+            }
+            if (end < size) {
+                log.warn("Segment {} ends with {} unreadable bytes, cutting them off", path, size - end);
+                channel.truncate(end);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            }
+            return new Segment(id, path, buffer, end);
+        }
+    }
+
+    private static List<Record> records(Segment segment) {
+        List<Record> records = new ArrayList<>();
+        int end = segment.end;
+        for (Record record = read(segment.buffer, 0, end, false); record != null;
+             record = read(segment.buffer, record.position + record.length, end, false)) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * The record at the offset, or {@code null} at {@code end} or at a record that is not complete. Nothing at or
+     * after {@code end} is read: a sealed segment stays mapped beyond the end of its file.
+     */
+    private static Record read(ByteBuffer buffer, int offset, int end, boolean verify) {
+        if (offset > end - HEADER_SIZE || buffer.getInt(offset) != MAGIC) {
+            return null;
+        }
+        long writtenAt = buffer.getLong(offset + 4);
+        int keyLength = buffer.getShort(offset + 12);
+        int length = buffer.getInt(offset + 14);
+        int position = offset + HEADER_SIZE + keyLength;
+        if (keyLength <= 0 || keyLength > MAX_KEY_SIZE || length < 0 || position > end - length) {
+            return null;
+        }
+        if (verify) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(position, length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 18)) {
+                return null;
+            }
+        }
+        byte[] key = new byte[keyLength];
+        buffer.get(offset + HEADER_SIZE, key);
+        return new Record(new String(key, StandardCharsets.US_ASCII), writtenAt, position, length,
+                HEADER_SIZE + keyLength + length);
+    }
+
+    private boolean isCurrent(Record record, Segment segment) {
+        Entry entry = index.get(record.key);
+        return entry != null && entry.segment == segment && entry.position == record.position;
+    }
+
+    private boolean touchedSince(String ownerLocation, long cutoffMillis) {
+        Entry owner = index.get(ownerLocation.substring(LOCATION_PREFIX.length()));
+        return owner != null && owner.touchedAt > cutoffMillis;
+    }
+
+    private static boolean isSegmentLocation(String location) {
+        return location != null && location.startsWith(LOCATION_PREFIX);
+    }
+
+    private static String derivativeKey(String location, ImageSize size) {
+        return location.substring(LOCATION_PREFIX.length()) + "-" + size.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The location of the original image a key belongs to: its own for an original, the image it was resized from
+     * for a derivative.
+     */
+    private static String ownerLocation(String key) {
+        int dash = key.indexOf('-');
+        return LOCATION_PREFIX + (dash < 0 ? key : key.substring(0, dash));
+    }
+
+    /**
+     * Bytes of a segment, and bytes of its records still in use per image location.
+     */
+    record Usage(long size, Map<String, Long> bytesByOwner) {
+    }
+
+    private record Record(String key, long writtenAt, int position, int length, int size) {
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private volatile int end;
+
+        Segment(long id, Path path, MappedByteBuffer buffer, int end) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+            this.end = end;
+        }
+    }
+
+    private static final class Entry {
+        private final Segment segment;
+        private final int position;
+        private final int length;
+        private final long writtenAt;
+        private volatile long touchedAt;
+
+        Entry(Segment segment, int position, int length, long writtenAt, long touchedAt) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+            this.writtenAt = writtenAt;
+            this.touchedAt = touchedAt;
+        }
+
+        ByteBuffer slice() {
+            return segment.buffer.slice(position, length).asReadOnlyBuffer();
+        }
+
+        ImageResource resource(String contentType, String eTag) {
+            return new ImageResource(null, contentType, length, writtenAt, eTag, slice());
+        }
+    }
+
+    /**
+     * Lets the image decoders seek in a slice of a segment without copying it.
+     */
+    private static final class SliceImageInputStream extends ImageInputStreamImpl {
+        private final ByteBuffer data;
+
+        SliceImageInputStream(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            return streamPos < data.limit() ? data.get((int) streamPos++) & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            bitOffset = 0;
+            int count = (int) Math.min(len, data.limit() - streamPos);
+            if (count <= 0) {
+                return len == 0 ? 0 : -1;
+            }
+            data.get((int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return data.limit();
+        }
+    }
+}
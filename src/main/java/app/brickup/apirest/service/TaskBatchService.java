@@ -0,0 +1,182 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskEvent;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk variants of the task endpoints. Each call runs in one transaction per shard and is flushed in chunks matching
+ * {@code hibernate.jdbc.batch_size}, so Hibernate sends one JDBC batch per chunk and the persistence context
+ * never holds more than one chunk of entities. New tasks all go to one shard; updates and deletes spanning several
+ * shards are not atomic, a failure on one shard leaves what the shards before it committed.
+ */
+@Service
+public class TaskBatchService {
+    static final int CHUNK_SIZE = 50;
+
+    private final TaskRepository repository;
+    private final EntityManager entityManager;
+    private final TaskMapper mapper;
+    private final TaskCache cache;
+    private final TaskMetrics metrics;
+    private final TaskChangeTracker changeTracker;
+    private final TaskEventPublisher eventPublisher;
+    private final TaskStats stats;
+    private final TaskShards shards;
+    private final TransactionTemplate transactionTemplate;
+
+    public TaskBatchService(TaskRepository repository, EntityManager entityManager, TaskMapper mapper, TaskCache cache,
+                            TaskMetrics metrics, TaskChangeTracker changeTracker, TaskEventPublisher eventPublisher,
+                            TaskStats stats, TaskShards shards, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.mapper = mapper;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.changeTracker = changeTracker;
+        this.eventPublisher = eventPublisher;
+        this.stats = stats;
+        this.shards = shards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional
+    public List<TaskDTO> saveAll(List<TaskDTO> dtos) {
+        if (dtos.isEmpty()) {
+            return List.of();
+        }
+        List<TaskDTO> saved = new ArrayList<>(dtos.size());
+
+        for (List<TaskDTO> chunk : chunks(dtos)) {
+            List<Task> tasks = chunk.stream()
+                    .map(mapper::toEntity)
+                    .peek(task -> task.setStatus(Status.PENDENTE))
+                    .toList();
+            repository.saveAll(tasks);
+            flushAndClear();
+            metrics.mapping().record(() -> tasks.forEach(task -> saved.add(mapper.toDTO(task))));
+        }
+        changeTracker.recordChange();
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, saved.size()));
+        eventPublisher.publishAfterCommit(saved.stream().map(TaskEvent::created).toList());
+
+        return saved;
+    }
+
+    public List<TaskDTO> updateAll(List<TaskDTO> dtos) {
+        if (dtos.stream().anyMatch(dto -> dto.getId() == null || !shards.exists(shards.shardOf(dto.getId())))) {
+            throw new EntityNotFoundException("Task not found!");
+        }
+
+        TaskDTO[] updated = new TaskDTO[dtos.size()];
+        List<Integer> positions = IntStream.range(0, dtos.size()).boxed().toList();
+        shards.byShard(positions, position -> dtos.get(position).getId()).forEach((shard, onShard) -> {
+            List<TaskDTO> group = onShard.stream().map(dtos::get).toList();
+            List<TaskDTO> results = shards.on(shard, () -> transactionTemplate.execute(tx -> update(group)));
+            for (int i = 0; i < onShard.size(); i++) {
+                updated[onShard.get(i)] = results.get(i);
+            }
+        });
+        return Arrays.asList(updated);
+    }
+
+    private List<TaskDTO> update(List<TaskDTO> dtos) {
+        List<TaskDTO> updated = new ArrayList<>(dtos.size());
+        TaskStats.Delta delta = new TaskStats.Delta();
+
+        for (List<TaskDTO> chunk : chunks(dtos)) {
+            List<Long> ids = chunk.stream().map(TaskDTO::getId).toList();
+            Map<Long, Task> tasks = repository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Task::getId, Function.identity()));
+
+            for (TaskDTO dto : chunk) {
+                Task task = tasks.get(dto.getId());
+                if (task == null) {
+                    throw new EntityNotFoundException("Task not found!");
+                }
+                Status previous = task.getStatus();
+                mapper.merge(dto, task);
+                delta.changed(previous, task.getStatus());
+            }
+            flushAndClear();
+            metrics.mapping().record(() -> chunk.forEach(dto -> updated.add(mapper.toDTO(tasks.get(dto.getId())))));
+            cache.invalidateAfterCommit(ids);
+        }
+        changeTracker.recordChange();
+        if (!delta.isEmpty()) {
+            stats.recordAfterCommit(delta);
+        }
+        eventPublisher.publishAfterCommit(updated.stream().map(TaskEvent::updated).toList());
+
+        return updated;
+    }
+
+    /**
+     * Deletes with one {@code DELETE ... WHERE id IN (...)} per chunk, preceded by a query locking the tasks of the
+     * chunk that exist, for the stats and the events. Ids that do not exist are ignored; when none exists nothing is
+     * recorded.
+     */
+    public void deleteAll(List<Long> ids) {
+        shards.byShard(ids, Function.identity()).forEach((shard, onShard) -> {
+            if (shards.exists(shard)) {
+                shards.on(shard, () -> transactionTemplate.execute(tx -> delete(onShard)));
+            }
+        });
+    }
+
+    private Void delete(List<Long> ids) {
+        List<Long> deleted = new ArrayList<>();
+        TaskStats.Delta delta = new TaskStats.Delta();
+        for (List<Long> chunk : chunks(ids)) {
+            List<Long> existing = new ArrayList<>(chunk.size());
+            for (Object[] row : repository.lockStatusesByIds(chunk)) {
+                existing.add((Long) row[0]);
+                delta.deleted((Status) row[1], 1);
+            }
+            if (existing.isEmpty()) {
+                continue;
+            }
+            repository.deleteAllByIdInBatch(existing);
+            cache.invalidateAfterCommit(existing);
+            deleted.addAll(existing);
+        }
+        if (deleted.isEmpty()) {
+            return null;
+        }
+        changeTracker.recordChange();
+        stats.recordAfterCommit(delta);
+        eventPublisher.publishAfterCommit(deleted.stream().map(TaskEvent::deleted).toList());
+        return null;
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private static <T> List<List<T>> chunks(List<T> items) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < items.size(); i += CHUNK_SIZE) {
+            chunks.add(items.subList(i, Math.min(i + CHUNK_SIZE, items.size())));
+        }
+        return chunks;
+    }
+}
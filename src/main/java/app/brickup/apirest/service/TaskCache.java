@@ -0,0 +1,106 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.model.Task;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache of tasks by id. Hit, miss and eviction counts are published as the
+ * {@code cache.*} metrics with {@code cache=tasks}.
+ * <p>
+ * Rows are loaded without holding any lock, so a virtual thread waiting on JDBC never pins its carrier the way a
+ * load inside {@code Cache.get} would. Every invalidation bumps a stamp for the id's stripe, and a loaded row is
+ * only cached if its stripe's stamp did not change while it was being read. Invalidating after a write has
+ * committed therefore guarantees that no read started after the write returns can observe the old row. Writes made
+ * through other instances are found by {@link TaskChangeTracker#refresh}, which empties the cache, so a row stays
+ * cached for at most one refresh interval after another instance changes it. Cached instances are shared and must
+ * not be modified.
+ */
+@Component
+public class TaskCache {
+    private static final int STRIPES = 64;
+
+    private final Cache<Long, Task> cache;
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+
+    public TaskCache(@Value("${app.cache.tasks.maximum-size}") long maximumSize,
+                     @Value("${app.cache.tasks.expire-after-write}") Duration expireAfterWrite,
+                     MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "tasks");
+    }
+
+    public Optional<Task> get(Long id, Function<Long, Optional<Task>> loader) {
+        Task cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long stamp = stamps.get(stripe(id));
+        Optional<Task> loaded = loader.apply(id);
+        // Absent rows are not cached, so a task created right after a miss is visible immediately.
+        loaded.ifPresent(task -> cache.asMap().compute(id,
+                (key, current) -> stamps.get(stripe(key)) == stamp ? task : current));
+        return loaded;
+    }
+
+    public void invalidate(Long id) {
+        stamps.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    /**
+     * Invalidates once the surrounding transaction commits, or right away when there is none. Invalidating
+     * before the commit would let a concurrent read cache the old row again.
+     */
+    public void invalidateAfterCommit(Collection<Long> ids) {
+        afterCompletion(() -> ids.forEach(this::invalidate));
+    }
+
+    public void invalidateAllAfterCommit() {
+        afterCompletion(this::invalidateAll);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            stamps.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private static void afterCompletion(Runnable invalidation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidation.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                invalidation.run();
+            }
+        });
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (STRIPES - 1);
+    }
+
+    void cleanUp() {
+        cache.cleanUp();
+    }
+}
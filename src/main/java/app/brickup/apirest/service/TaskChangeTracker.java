@@ -0,0 +1,157 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.repository.TaskShards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Change version of the task table, used to answer conditional list requests without querying the tasks.
+ * <p>
+ * Every write bumps one row of {@code task_changes} in its own transaction, so the version can never move ahead of
+ * the data and instances sharing the database agree on it. The version is the sum of the rows: writes pick a row at
+ * random, so concurrent transactions rarely wait for each other's row lock. Each instance keeps the last version it saw:
+ * its own writes update it on commit, writes from other instances are picked up by the periodic refresh. A list
+ * served by another instance can therefore stay cached for up to one refresh interval.
+ * <p>
+ * Each shard has its own {@code task_changes}, bumped by the writes to it; the version of the table is their sum.
+ * <p>
+ * Writes from other instances are not published by this instance's {@link TaskEventPublisher} nor invalidated in its
+ * {@link TaskCache}, so when the refresh finds more changes on a shard than this instance committed there, it empties
+ * the cache and publishes a reset, and the subscribers list the tasks again. Local changes are counted before they commit, so a change from elsewhere may be noticed one
+ * refresh late but a local one is never taken for it.
+ */
+@Component
+public class TaskChangeTracker {
+    // Rows of task_changes, as created by the migrations.
+    static final int STRIPES = 16;
+    private static final String BUMP = "UPDATE task_changes SET version = version + 1 WHERE id = ?";
+    private static final String SELECT = "SELECT SUM(version) FROM task_changes";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TaskShards shards;
+    private final TaskCache cache;
+    private final TaskEventPublisher eventPublisher;
+    private final TransactionTemplate readOnly;
+    private final AtomicLongArray versions;
+    private final AtomicLongArray localChanges;
+    // Guarded by this. Changes on each shard not made by this instance, as of the last refresh.
+    private final long[] otherChanges;
+
+    public TaskChangeTracker(TaskShards shards, TaskCache cache, TaskEventPublisher eventPublisher,
+                             PlatformTransactionManager transactionManager) {
+        this.shards = shards;
+        this.cache = cache;
+        this.eventPublisher = eventPublisher;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.versions = new AtomicLongArray(shards.count());
+        this.localChanges = new AtomicLongArray(shards.count());
+        this.otherChanges = new long[shards.count()];
+        for (int shard = 0; shard < shards.count(); shard++) {
+            versions.set(shard, -1);
+            otherChanges[shard] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Records a change made by the surrounding transaction, on the shard it works on. Call it after the task
+     * statements, as the row stays locked until the transaction ends.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordChange() {
+        entityManager.createNativeQuery(BUMP)
+                .setParameter(1, ThreadLocalRandom.current().nextInt(STRIPES) + 1)
+                .executeUpdate();
+        // Other rows are read without locks and may be behind, which only makes the version seen lower than the one
+        // committed; the refresh catches up.
+        long changed = ((Number) entityManager.createNativeQuery(SELECT).getSingleResult()).longValue();
+        // The statements have taken the connection, so the transaction's shard is settled.
+        Integer selected = TaskShards.current();
+        int shard = selected != null ? selected : 0;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean counted;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                localChanges.incrementAndGet(shard);
+                counted = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                versions.accumulateAndGet(shard, changed, Math::max);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (counted && status != STATUS_COMMITTED) {
+                    localChanges.decrementAndGet(shard);
+                }
+            }
+        });
+    }
+
+    public long currentVersion() {
+        long current = knownVersion();
+        return current >= 0 ? current : refresh();
+    }
+
+    /**
+     * The last version seen, without going to the database; negative before the first refresh.
+     */
+    public long knownVersion() {
+        long sum = 0;
+        for (int shard = 0; shard < versions.length(); shard++) {
+            long version = versions.get(shard);
+            if (version < 0) {
+                return -1;
+            }
+            sum += version;
+        }
+        return sum;
+    }
+
+    @Scheduled(fixedDelayString = "${app.tasks.change-version.refresh-interval}")
+    public long refresh() {
+        List<Long> latest = shards.onEach(shard -> readOnly.execute(tx ->
+                ((Number) entityManager.createNativeQuery(SELECT).getSingleResult()).longValue()));
+        boolean changedElsewhere = false;
+        for (int shard = 0; shard < latest.size(); shard++) {
+            versions.accumulateAndGet(shard, latest.get(shard), Math::max);
+            changedElsewhere |= changedElsewhere(shard, latest.get(shard));
+        }
+        if (changedElsewhere) {
+            cache.invalidateAll();
+            eventPublisher.resetAfterCommit();
+        }
+        return knownVersion();
+    }
+
+    /**
+     * Whether the shard has changes from other instances since the last refresh. The first refresh only takes note.
+     */
+    private synchronized boolean changedElsewhere(int shard, long version) {
+        long others = version - localChanges.get(shard);
+        long previous = otherChanges[shard];
+        if (others <= previous) {
+            return false;
+        }
+        otherChanges[shard] = others;
+        return previous != Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,301 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskEvent;
+import app.brickup.apirest.exceptions.TooManySubscribersException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fans task changes out to the subscribers of {@code /api/tasks/stream}.
+ * <p>
+ * Every event gets a sequence number and is kept in a ring of the last {@code history-size} events, so a client
+ * reconnecting with {@code Last-Event-ID} receives what it missed. Each subscriber has its own pending buffer,
+ * coalesced per task: while a send is in flight, later changes to the same task replace the pending one and
+ * everything pending goes out as a single {@code tasks} event. When more than {@code buffer-size} tasks are
+ * pending, or the requested id is no longer in the ring, the buffer is dropped and the client receives a
+ * {@code reset} event telling it to list the tasks again. Memory is therefore bounded by
+ * {@code max-subscribers * buffer-size + history-size} events whatever the clients do.
+ * <p>
+ * Event ids start with the instance start time, so an id issued by another instance, or before a restart, always
+ * leads to a reset. Only changes made through this instance are published task by task; for changes made through
+ * other instances {@link TaskChangeTracker} publishes a reset once its refresh finds them.
+ */
+@Slf4j
+@Component
+public class TaskEventPublisher {
+    private final TaskExecutor executor;
+    private final TaskMetrics metrics;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final Duration timeout;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Guarded by this. Publishing and subscribing hold the lock so a replay never misses or repeats an event.
+    private final Entry[] history;
+    private long sequence;
+
+    public TaskEventPublisher(@Qualifier("taskStreamExecutor") TaskExecutor executor, TaskMetrics metrics,
+                              @Value("${app.tasks.stream.buffer-size}") int bufferSize,
+                              @Value("${app.tasks.stream.history-size}") int historySize,
+                              @Value("${app.tasks.stream.max-subscribers}") int maxSubscribers,
+                              @Value("${app.tasks.stream.timeout}") Duration timeout) {
+        this.executor = executor;
+        this.metrics = metrics;
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = timeout;
+        this.history = new Entry[historySize];
+        metrics.monitorSubscribers(subscribers);
+    }
+
+    public SseEmitter subscribe(String lastEventId) {
+        Subscriber subscriber;
+        synchronized (this) {
+            if (subscribers.size() >= maxSubscribers) {
+                throw new TooManySubscribersException();
+            }
+            subscriber = new Subscriber(createEmitter());
+            replay(subscriber, lastEventId);
+            subscribers.add(subscriber);
+        }
+
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        // Without a handler the timeout is reported as a 503; the client reconnects either way.
+        emitter.onTimeout(emitter::complete);
+
+        // The first drain sends the replay, a reset or the ready event carrying the id to resume from.
+        dispatch(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Publishes once the surrounding transaction commits, or right away outside a transaction. Rolled back changes
+     * are never published.
+     */
+    public void publishAfterCommit(List<TaskEvent> events) {
+        if (!events.isEmpty()) {
+            afterCommit(() -> publish(events));
+        }
+    }
+
+    /**
+     * Tells every subscriber to list the tasks again, for changes too large to describe task by task.
+     */
+    public void resetAfterCommit() {
+        afterCommit(() -> publish(null));
+    }
+
+    @Scheduled(fixedDelayString = "${app.tasks.stream.heartbeat-interval}")
+    public void heartbeat() {
+        // Keeps idle connections open through proxies and finds clients that went away.
+        subscribers.stream()
+                .filter(Subscriber::heartbeat)
+                .forEach(this::dispatch);
+    }
+
+    SseEmitter createEmitter() {
+        return new SseEmitter(timeout.toMillis());
+    }
+
+    private synchronized void publish(List<TaskEvent> events) {
+        if (events == null) {
+            append(null);
+        } else {
+            events.forEach(this::append);
+        }
+    }
+
+    private void append(TaskEvent event) {
+        Entry entry = new Entry(++sequence, event);
+        history[(int) (entry.sequence % history.length)] = entry;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.offer(entry)) {
+                dispatch(subscriber);
+            }
+        }
+    }
+
+    private void replay(Subscriber subscriber, String lastEventId) {
+        subscriber.lastSequence = sequence;
+        if (lastEventId == null) {
+            return;
+        }
+
+        long last = parseSequence(lastEventId);
+        if (last < 0 || last > sequence || sequence - last > history.length) {
+            subscriber.offer(new Entry(sequence, null));
+            return;
+        }
+        for (long next = last + 1; next <= sequence; next++) {
+            subscriber.offer(history[(int) (next % history.length)]);
+        }
+    }
+
+    private long parseSequence(String eventId) {
+        int separator = eventId.indexOf('-');
+        if (separator < 0 || !epoch.equals(eventId.substring(0, separator))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String eventId(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private void dispatch(Subscriber subscriber) {
+        try {
+            executor.execute(() -> drain(subscriber));
+        } catch (TaskRejectedException e) {
+            log.warn("Task stream queue is full, closing a subscriber");
+            subscribers.remove(subscriber);
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.next()) != null) {
+                subscriber.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // The client went away or the emitter already completed; the container reports the error itself.
+            log.debug("Dropping task stream subscriber: {}", e.getMessage());
+            subscribers.remove(subscriber);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * A published event, or a reset when {@code event} is {@code null}.
+     */
+    private record Entry(long sequence, TaskEvent event) {
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        // Guarded by this.
+        private final Map<Long, TaskEvent> pending = new LinkedHashMap<>();
+        private long lastSequence;
+        private boolean reset;
+        private boolean ready = true;
+        private boolean heartbeat;
+        // Starts set: nothing is dispatched until subscribe() starts the first drain itself.
+        private boolean draining = true;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Adds an event to the pending buffer. Returns {@code true} when the caller has to dispatch a drain.
+         */
+        synchronized boolean offer(Entry entry) {
+            lastSequence = entry.sequence;
+            if (reset) {
+                // The client lists the tasks again after the reset, which covers this event as well.
+                return schedule();
+            }
+            if (entry.event == null) {
+                markReset();
+                return schedule();
+            }
+
+            TaskEvent event = entry.event;
+            TaskEvent previous = pending.get(event.getTaskId());
+            if (previous != null && previous.getType() == TaskEvent.Type.CREATED
+                    && event.getType() == TaskEvent.Type.UPDATED) {
+                event = TaskEvent.created(event.getTask());
+            }
+            pending.put(event.getTaskId(), event);
+
+            if (pending.size() > bufferSize) {
+                metrics.recordStreamOverflow();
+                markReset();
+            }
+            return schedule();
+        }
+
+        synchronized boolean heartbeat() {
+            heartbeat = true;
+            return schedule();
+        }
+
+        synchronized boolean schedule() {
+            if (draining) {
+                return false;
+            }
+            draining = true;
+            return true;
+        }
+
+        /**
+         * The next event to send, or {@code null} once there is nothing left, which also ends the drain.
+         */
+        synchronized SseEmitter.SseEventBuilder next() {
+            String id = eventId(lastSequence);
+            SseEmitter.SseEventBuilder event;
+            if (reset) {
+                event = SseEmitter.event().name("reset").id(id).data("");
+            } else if (!pending.isEmpty()) {
+                event = SseEmitter.event().name("tasks").id(id)
+                        .data(new ArrayList<>(pending.values()), MediaType.APPLICATION_JSON);
+            } else if (ready) {
+                event = SseEmitter.event().name("ready").id(id).data("");
+            } else if (heartbeat) {
+                event = SseEmitter.event().comment("heartbeat");
+            } else {
+                draining = false;
+                return null;
+            }
+
+            pending.clear();
+            reset = false;
+            ready = false;
+            heartbeat = false;
+            return event;
+        }
+
+        private void markReset() {
+            pending.clear();
+            reset = true;
+        }
+    }
+}
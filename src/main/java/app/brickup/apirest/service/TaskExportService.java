@@ -0,0 +1,88 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+public class TaskExportService {
+    static final int FLUSH_EVERY = 500;
+
+    private final TaskRepository repository;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
+    private final TaskMapper mapper;
+    private final TaskShards shards;
+    private final TransactionTemplate readOnly;
+
+    public TaskExportService(TaskRepository repository, EntityManager entityManager,
+                             ObjectMapper objectMapper, TaskMapper mapper, TaskShards shards,
+                             PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
+        this.mapper = mapper;
+        this.shards = shards;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Writes every task as newline-delimited JSON, one shard after the other, in id order within each. Rows are
+     * detached as soon as they are written, so the persistence context never grows beyond a single entity.
+     */
+    public long exportTo(OutputStream out) throws IOException {
+        long count = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            for (int shard = 0; shard < shards.count(); shard++) {
+                long before = count;
+                count += shards.on(shard, () -> readOnly.execute(tx -> write(generator, before)));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        return count;
+    }
+
+    /**
+     * Writes the tasks of the selected shard, continuing from {@code written} rows, and returns how many it wrote.
+     */
+    private long write(JsonGenerator generator, long written) {
+        long count = written;
+        try (Stream<Task> tasks = repository.streamAll()) {
+            Iterator<Task> iterator = tasks.iterator();
+            while (iterator.hasNext()) {
+                Task task = iterator.next();
+                generator.writeObject(mapper.toDTO(task));
+                generator.writeRaw('\n');
+                entityManager.detach(task);
+
+                // Flush the first row right away so the client sees bytes before the whole table is read.
+                if (++count == 1 || count % FLUSH_EVERY == 0) {
+                    generator.flush();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count - written;
+    }
+}
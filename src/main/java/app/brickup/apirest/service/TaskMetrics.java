@@ -0,0 +1,110 @@
+package app.brickup.apirest.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters for the work Spring Boot does not time on its own. Endpoint latency ({@code http.server.requests}),
+ * repository calls ({@code spring.data.repository.invocations}) and pool usage ({@code hikaricp.connections.*})
+ * come from the auto-configuration.
+ */
+@Component
+public class TaskMetrics {
+    private final Timer mapping;
+    private final Timer upload;
+    private final DistributionSummary uploadSize;
+    private final Timer download;
+    private final DistributionSummary downloadSize;
+    private final Counter collectedFiles;
+    private final Counter collectedBytes;
+    private final Counter compactedSegments;
+    private final Counter reclaimedSegmentBytes;
+    private final Counter streamOverflows;
+    private final MeterRegistry registry;
+
+    public TaskMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.mapping = Timer.builder("tasks.mapping")
+                .description("Time spent mapping a page or batch of tasks to DTOs")
+                .register(registry);
+        this.upload = Timer.builder("tasks.images.upload")
+                .description("Time spent writing an uploaded image to the store")
+                .register(registry);
+        this.uploadSize = DistributionSummary.builder("tasks.images.upload.size")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        this.download = Timer.builder("tasks.images.download")
+                .description("Time spent sending an image body")
+                .register(registry);
+        this.downloadSize = DistributionSummary.builder("tasks.images.download.size")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        this.collectedFiles = Counter.builder("tasks.images.collected")
+                .description("Unreferenced image files deleted by the garbage collector")
+                .baseUnit(BaseUnits.FILES)
+                .register(registry);
+        this.collectedBytes = Counter.builder("tasks.images.collected.size")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        this.compactedSegments = Counter.builder("tasks.images.segments.compacted")
+                .description("Image segments rewritten without their unreferenced images")
+                .register(registry);
+        this.reclaimedSegmentBytes = Counter.builder("tasks.images.segments.reclaimed")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+        this.streamOverflows = Counter.builder("tasks.stream.overflows")
+                .description("Stream subscribers that fell too far behind and were sent a reset")
+                .register(registry);
+    }
+
+    public Timer mapping() {
+        return mapping;
+    }
+
+    public void recordUpload(long nanos, long bytes) {
+        upload.record(nanos, TimeUnit.NANOSECONDS);
+        uploadSize.record(bytes);
+    }
+
+    public void recordDownload(long nanos, long bytes) {
+        download.record(nanos, TimeUnit.NANOSECONDS);
+        downloadSize.record(bytes);
+    }
+
+    public void recordImageCollected(long bytes) {
+        collectedFiles.increment();
+        collectedBytes.increment(bytes);
+    }
+
+    public void recordSegmentCompacted(long reclaimedBytes) {
+        compactedSegments.increment();
+        reclaimedSegmentBytes.increment(reclaimedBytes);
+    }
+
+    void monitorSegments(SegmentImageStore store) {
+        Gauge.builder("tasks.images.segments", store, SegmentImageStore::segmentCount)
+                .description("Image segment files")
+                .register(registry);
+        Gauge.builder("tasks.images.segments.size", store, SegmentImageStore::size)
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    public void recordStreamOverflow() {
+        streamOverflows.increment();
+    }
+
+    public void monitorSubscribers(Collection<?> subscribers) {
+        Gauge.builder("tasks.stream.subscribers", subscribers, Collection::size)
+                .description("Open connections on the task change stream")
+                .register(registry);
+    }
+}
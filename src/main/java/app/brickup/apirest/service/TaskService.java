@@ -1,106 +1,300 @@
 package app.brickup.apirest.service;
 
+import app.brickup.apirest.model.ImageSize;
 import app.brickup.apirest.model.Status;
 import app.brickup.apirest.model.Task;
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
 import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskEvent;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.dto.TaskStatsDTO;
+import app.brickup.apirest.exceptions.PreconditionFailedException;
+import app.brickup.apirest.mapper.TaskMapper;
 import app.brickup.apirest.repository.TaskRepository;
-import app.brickup.apirest.util.UploadImageUtil;
+import app.brickup.apirest.repository.TaskRepositoryCustom;
+import app.brickup.apirest.repository.TaskShards;
+import app.brickup.apirest.util.CursorUtil;
+import app.brickup.apirest.util.FieldsUtil;
 import jakarta.persistence.EntityNotFoundException;
-import org.modelmapper.ModelMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 import org.springframework.web.multipart.MultipartFile;
 
+@Slf4j
 @Service
 public class TaskService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+
     private final TaskRepository repository;
-    private final ModelMapper modelMapper;
+    private final TaskMapper mapper;
+    private final ImageStore imageStore;
+    private final ImageDerivativeService derivativeService;
+    private final TaskCache cache;
+    private final TaskMetrics metrics;
+    private final TaskChangeTracker changeTracker;
+    private final TaskEventPublisher eventPublisher;
+    private final TaskStats stats;
+    private final TaskShards shards;
+    private final TransactionTemplate transactionTemplate;
 
-    public TaskService(TaskRepository repository, ModelMapper modelMapper) {
+    public TaskService(TaskRepository repository, TaskMapper mapper, ImageStore imageStore,
+                       ImageDerivativeService derivativeService, TaskCache cache, TaskMetrics metrics,
+                       TaskChangeTracker changeTracker, TaskEventPublisher eventPublisher, TaskStats stats,
+                       TaskShards shards, PlatformTransactionManager transactionManager) {
         this.repository = repository;
-        this.modelMapper = modelMapper;
+        this.mapper = mapper;
+        this.imageStore = imageStore;
+        this.derivativeService = derivativeService;
+        this.cache = cache;
+        this.metrics = metrics;
+        this.changeTracker = changeTracker;
+        this.eventPublisher = eventPublisher;
+        this.stats = stats;
+        this.shards = shards;
+        // Writes that come with an image run the database part in a template, so the upload happens before a
+        // connection is taken from the pool.
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Version of the task table as a whole, changed by every write. Served from memory.
+     */
+    public long listVersion() {
+        return changeTracker.currentVersion();
+    }
+
+    /**
+     * Task counts per status and recent creations, served from memory.
+     */
+    public TaskStatsDTO stats() {
+        return stats.snapshot();
+    }
+
+    /**
+     * A page of tasks in id order. When {@code fields} leaves out the image, only the {@link TaskRepository.Summary}
+     * columns are selected.
+     */
+    public TaskPageDTO findPage(String cursor, Integer limit, Status status, String fields) {
+        long afterId = cursor == null || cursor.isBlank() ? 0L : CursorUtil.decode(cursor);
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Set<String> selected = FieldsUtil.parse(fields);
+
+        // Fetch one extra row so we know whether another page exists without a COUNT query.
+        Limit fetch = Limit.of(pageSize + 1);
+        boolean hasNext;
+        List<TaskDTO> items;
+        if (selected != null && !selected.contains(FieldsUtil.LINK_IMAGE)) {
+            Class<TaskRepository.Summary> type = TaskRepository.Summary.class;
+            List<TaskRepository.Summary> rows = status == null
+                    ? repository.findByIdGreaterThanOrderByIdAsc(afterId, fetch, type)
+                    : repository.findByStatusAndIdGreaterThanOrderByIdAsc(status, afterId, fetch, type);
+            hasNext = rows.size() > pageSize;
+            items = toItems(rows, pageSize, mapper::toDTO, selected);
+        } else {
+            List<Task> tasks = status == null
+                    ? repository.findByIdGreaterThanOrderByIdAsc(afterId, fetch)
+                    : repository.findByStatusAndIdGreaterThanOrderByIdAsc(status, afterId, fetch);
+            hasNext = tasks.size() > pageSize;
+            items = toItems(tasks, pageSize, mapper::toDTO, selected);
+        }
+        String next = hasNext ? CursorUtil.encode(items.get(items.size() - 1).getId()) : null;
+
+        return new TaskPageDTO(items, next);
     }
 
-    public List<TaskDTO> findAll() {
-        return repository
-                .findAll()
-                .stream()
-                .map(p -> modelMapper.map(p, TaskDTO.class))
-                .toList();
+    /**
+     * A page of tasks whose description matches {@code query}, most relevant first. Relevance has no stable key to
+     * seek from, so the cursor carries the offset of the next page instead of an id.
+     */
+    public TaskPageDTO search(String query, String cursor, Integer limit, Status status, String fields) {
+        int offset = cursor == null || cursor.isBlank() ? 0 : CursorUtil.decodeOffset(cursor);
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Set<String> selected = FieldsUtil.parse(fields);
+
+        List<TaskRepositoryCustom.Match> matches = repository.search(query.trim(), status, offset, pageSize + 1);
+
+        boolean hasNext = matches.size() > pageSize;
+        List<TaskDTO> items = toItems(matches, pageSize, match -> mapper.toDTO(match.task()), selected);
+        String next = hasNext ? CursorUtil.encodeOffset(offset + pageSize) : null;
+
+        return new TaskPageDTO(items, next);
     }
 
     public TaskDTO findById(Long id) {
-        Task task = repository.findById(id)
+        Task task = cache.get(id, repository::findById)
                 .orElseThrow(() -> new EntityNotFoundException("Task not found!"));
 
-        return modelMapper.map(task, TaskDTO.class);
+        return mapper.toDTO(task);
     }
 
-    public InputStream getResource(Long id) throws FileNotFoundException {
-        Task task = repository.findById(id)
+    public ImageResource getResource(Long id, ImageSize size) throws IOException {
+        Task task = cache.get(id, repository::findById)
                 .orElseThrow(() -> new EntityNotFoundException("Task not found!"));
 
-        return new FileInputStream(task.getLinkImage());
+        if (size != null) {
+            ImageResource derivative = imageStore.openDerivative(task.getLinkImage(), size);
+            if (derivative != null) {
+                return derivative;
+            }
+        }
+
+        return imageStore.open(task.getLinkImage(), task.getContentType());
     }
 
     public TaskDTO saveTask(TaskDTO dto, MultipartFile image) {
-        Task task = modelMapper.map(dto, Task.class);
+        Task task = mapper.toEntity(dto);
 
-        try {
-            if (UploadImageUtil.uploadImage(image)) {
-                System.out.println(UploadImageUtil.imagePath);
-                task.setLinkImage(UploadImageUtil.imagePath);
+        boolean imageStored = false;
+        if (image != null && !image.isEmpty()) {
+            try {
+                attachImage(task, image);
+                imageStored = true;
+            } catch (IOException e) {
+                log.warn("File not uploaded!", e);
             }
-        } catch (Exception e) {
-            System.out.println("The image is empty!");
         }
 
         task.setStatus(Status.PENDENTE);
 
-        repository.save(task);
+        Task saved = transactionTemplate.execute(tx -> {
+            Task result = repository.save(task);
+            changeTracker.recordChange();
+            stats.recordAfterCommit(new TaskStats.Delta().created(result.getStatus(), 1));
+            return result;
+        });
+
+        if (imageStored) {
+            derivativeService.generateAsync(saved.getLinkImage());
+        }
 
-        return modelMapper.map(task, TaskDTO.class);
+        TaskDTO result = mapper.toDTO(saved);
+        eventPublisher.publishAfterCommit(List.of(TaskEvent.created(result)));
+        return result;
     }
 
-    public TaskDTO updateTask(TaskDTO dto, Long id, MultipartFile image) {
-        Task oldTask = repository.findById(id).orElseThrow(() -> new EntityNotFoundException("Task not found!"));
+    /**
+     * Applies a partial update with a single {@code UPDATE} of the columns present in the request, then reads the
+     * row back for the response. With an {@code expectedVersion} the update only succeeds if nobody changed the
+     * task in between. The image is stored before any connection is taken from the pool.
+     */
+    public TaskDTO updateTask(TaskDTO dto, Long id, MultipartFile image, Long expectedVersion) {
+        StoredImage stored = null;
+        if (image != null && !image.isEmpty()) {
+            try {
+                stored = storeImage(image);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
-        Task updatedTask = modelMapper.map(dto, Task.class);
-        updatedTask.setId(id);
+        return update(dto, id, stored, expectedVersion);
+    }
 
-        if (image != null) {
-            try {
-                if (UploadImageUtil.uploadImage(image)) {
-                    System.out.println(UploadImageUtil.imagePath);
-                    updatedTask.setLinkImage(UploadImageUtil.imagePath);
+    /**
+     * Replaces the image of a task with one that is already in the {@link ImageStore}, e.g. a finished resumable
+     * upload.
+     */
+    public TaskDTO updateImage(Long id, StoredImage image, Long expectedVersion) {
+        return update(new TaskDTO(), id, image, expectedVersion);
+    }
+
+    private TaskDTO update(TaskDTO dto, Long id, StoredImage stored, Long expectedVersion) {
+        TaskRepositoryCustom.Changes changes = new TaskRepositoryCustom.Changes(dto.getDescription(), dto.getStatus(),
+                stored != null ? stored.getLocation() : null, stored != null ? stored.getContentType() : null);
+
+        Task task = transactionTemplate.execute(tx -> {
+            // Only read for the stats when the status may change.
+            Status previous = changes.status() != null ? repository.findStatusById(id).orElse(null) : null;
+            if (repository.patch(id, expectedVersion, changes) == 0) {
+                if (expectedVersion != null && repository.existsById(id)) {
+                    throw new PreconditionFailedException();
                 }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+                throw new EntityNotFoundException("Task not found!");
             }
-        } else {
-            updatedTask.setLinkImage(oldTask.getLinkImage());
-        }
+            changeTracker.recordChange();
+            cache.invalidateAfterCommit(List.of(id));
 
-        if (dto.getStatus() == null) {
-            updatedTask.setStatus(oldTask.getStatus());
+            Task updated = repository.findById(id).orElseThrow(() -> new EntityNotFoundException("Task not found!"));
+            if (previous != null && previous != updated.getStatus()) {
+                stats.recordAfterCommit(new TaskStats.Delta().changed(previous, updated.getStatus()));
+            }
+            return updated;
+        });
+
+        if (stored != null) {
+            derivativeService.generateAsync(stored.getLocation());
         }
 
-        updatedTask = repository.save(updatedTask);
-        return modelMapper.map(updatedTask, TaskDTO.class);
+        TaskDTO result = mapper.toDTO(task);
+        eventPublisher.publishAfterCommit(List.of(TaskEvent.updated(result)));
+        return result;
     }
 
+    @Transactional
     public void deleteById(Long id) {
-        repository.findById(id)
-                .map(task -> {
-                    repository.deleteById(id);
-                    return true;
-                })
+        Status status = repository.findStatusById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Task not found!"));
+        if (repository.deleteTaskById(id) == 0) {
+            throw new EntityNotFoundException("Task not found!");
+        }
+        changeTracker.recordChange();
+        stats.recordAfterCommit(new TaskStats.Delta().deleted(status, 1));
+        cache.invalidateAfterCommit(List.of(id));
+        eventPublisher.publishAfterCommit(List.of(TaskEvent.deleted(id)));
+    }
+
+    /**
+     * Deletes every task with the given status, in one statement and one transaction per shard. The images are
+     * reclaimed later by {@link ImageGarbageCollector}.
+     */
+    public int deleteByStatus(Status status) {
+        int deleted = shards.onEach(shard -> transactionTemplate.execute(tx -> {
+            int onShard = repository.deleteAllByStatusInBatch(status);
+            if (onShard > 0) {
+                changeTracker.recordChange();
+                stats.recordAfterCommit(new TaskStats.Delta().deleted(status, onShard));
+            }
+            return onShard;
+        })).stream().mapToInt(Integer::intValue).sum();
+        if (deleted > 0) {
+            cache.invalidateAll();
+            eventPublisher.resetAfterCommit();
+        }
+        return deleted;
+    }
+
+    private <T> List<TaskDTO> toItems(List<T> rows, int pageSize, Function<T, TaskDTO> toDTO, Set<String> fields) {
+        return metrics.mapping().record(() -> rows.stream()
+                .limit(pageSize)
+                .map(row -> mapper.select(toDTO.apply(row), fields))
+                .toList());
+    }
+
+    private void attachImage(Task task, MultipartFile image) throws IOException {
+        StoredImage stored = storeImage(image);
+        task.setLinkImage(stored.getLocation());
+        task.setContentType(stored.getContentType());
+    }
+
+    private StoredImage storeImage(MultipartFile image) throws IOException {
+        long start = System.nanoTime();
+        StoredImage stored = imageStore.store(image);
+        metrics.recordUpload(System.nanoTime() - start, stored.getSize());
+        log.debug("File uploaded to {} ({} bytes)", stored.getLocation(), stored.getSize());
+        return stored;
     }
 }
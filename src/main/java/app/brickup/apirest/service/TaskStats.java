@@ -0,0 +1,212 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskStatsDTO;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.repository.TaskRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Task counts per status and recent creations, kept in memory so {@code /api/tasks/stats} never scans the table.
+ * <p>
+ * Writes report what they changed with a {@link Delta}, applied to striped counters once their transaction has
+ * committed. Every {@code reconcile-interval} the counts are replaced by a {@code COUNT ... GROUP BY status}, which
+ * picks up writes made through other instances and corrects the rare drift of a status changed concurrently by two
+ * requests. Creations are counted per minute for the last hour and only cover this instance.
+ */
+@Slf4j
+@Component
+public class TaskStats {
+    private static final Status[] STATUSES = Status.values();
+    private static final int MINUTES = 60;
+
+    private final TaskRepository repository;
+    private final Clock clock;
+    private final Map<Status, LongAdder> counts = new EnumMap<>(Status.class);
+    private final Minute[] minutes = new Minute[MINUTES];
+    private volatile Instant reconciledAt;
+
+    @Autowired
+    public TaskStats(TaskRepository repository, MeterRegistry registry) {
+        this(repository, registry, Clock.systemUTC());
+    }
+
+    TaskStats(TaskRepository repository, MeterRegistry registry, Clock clock) {
+        this.repository = repository;
+        this.clock = clock;
+        for (Status status : STATUSES) {
+            LongAdder count = new LongAdder();
+            counts.put(status, count);
+            Gauge.builder("tasks.count", count, LongAdder::sum)
+                    .description("Tasks per status, as last reconciled plus the changes since")
+                    .tag("status", status.name())
+                    .register(registry);
+        }
+        for (int i = 0; i < MINUTES; i++) {
+            minutes[i] = new Minute();
+        }
+    }
+
+    /**
+     * Applies the changes once the current transaction commits, or right away outside a transaction.
+     */
+    public void recordAfterCommit(Delta delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(delta);
+            }
+        });
+    }
+
+    public TaskStatsDTO snapshot() {
+        if (reconciledAt == null) {
+            reconcile();
+        }
+        Map<Status, Long> byStatus = new EnumMap<>(Status.class);
+        long total = 0;
+        for (Status status : STATUSES) {
+            long count = Math.max(0, counts.get(status).sum());
+            byStatus.put(status, count);
+            total += count;
+        }
+        long minute = currentMinute();
+        return new TaskStatsDTO(byStatus, total, createdSince(minute, 1), createdSince(minute, 5),
+                createdSince(minute, MINUTES), reconciledAt);
+    }
+
+    /**
+     * Sets the counts to those in the database. Changes committed while the query runs are counted as if they
+     * came after it, so they can be off until the next run.
+     */
+    @Scheduled(fixedDelayString = "${app.tasks.stats.reconcile-interval}")
+    public synchronized void reconcile() {
+        Map<Status, Long> before = new EnumMap<>(Status.class);
+        counts.forEach((status, count) -> before.put(status, count.sum()));
+
+        Map<Status, Long> actual = new EnumMap<>(Status.class);
+        for (Object[] row : repository.countByStatus()) {
+            actual.put((Status) row[0], ((Number) row[1]).longValue());
+        }
+
+        for (Status status : STATUSES) {
+            long drift = actual.getOrDefault(status, 0L) - before.get(status);
+            if (drift != 0) {
+                counts.get(status).add(drift);
+                if (reconciledAt != null) {
+                    log.debug("{} tasks off by {}, reconciled", status, drift);
+                }
+            }
+        }
+        reconciledAt = clock.instant();
+    }
+
+    private void apply(Delta delta) {
+        for (Status status : STATUSES) {
+            long change = delta.counts[status.ordinal()];
+            if (change != 0) {
+                counts.get(status).add(change);
+            }
+        }
+        if (delta.created > 0) {
+            long minute = currentMinute();
+            minutes[(int) (minute % MINUTES)].add(minute, delta.created);
+        }
+    }
+
+    private long createdSince(long minute, int window) {
+        long created = 0;
+        for (int i = 0; i < window; i++) {
+            created += minutes[(int) ((minute - i) % MINUTES)].count(minute - i);
+        }
+        return created;
+    }
+
+    private long currentMinute() {
+        return TimeUnit.MILLISECONDS.toMinutes(clock.millis());
+    }
+
+    /**
+     * What a write changed: tasks created, moved between statuses or deleted.
+     */
+    public static final class Delta {
+        private final long[] counts = new long[STATUSES.length];
+        private long created;
+
+        public Delta created(Status status, long count) {
+            counts[status.ordinal()] += count;
+            created += count;
+            return this;
+        }
+
+        public Delta changed(Status from, Status to) {
+            if (from != null && to != null && from != to) {
+                counts[from.ordinal()]--;
+                counts[to.ordinal()]++;
+            }
+            return this;
+        }
+
+        public Delta deleted(Status status, long count) {
+            counts[status.ordinal()] -= count;
+            return this;
+        }
+
+        long change(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        public boolean isEmpty() {
+            if (created != 0) {
+                return false;
+            }
+            for (long count : counts) {
+                if (count != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Creations in one minute of the ring, reset when the ring comes back to it an hour later.
+     */
+    private static final class Minute {
+        private final LongAdder count = new LongAdder();
+        private volatile long minute = -1;
+
+        void add(long current, long created) {
+            if (minute != current) {
+                synchronized (this) {
+                    if (minute != current) {
+                        count.reset();
+                        minute = current;
+                    }
+                }
+            }
+            count.add(created);
+        }
+
+        long count(long expected) {
+            return minute == expected ? count.sum() : 0;
+        }
+    }
+}
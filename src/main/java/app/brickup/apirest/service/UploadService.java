@@ -0,0 +1,324 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.UploadDTO;
+import app.brickup.apirest.exceptions.InvalidUploadException;
+import app.brickup.apirest.exceptions.TooManyUploadsException;
+import app.brickup.apirest.exceptions.UploadNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resumable image uploads. A session reserves a file of the announced size in the image store's temporary
+ * directory; chunks are written straight from the request body to their offset with positional writes, so they
+ * may arrive in any order and in parallel, and nothing is assembled in memory. The received ranges are tracked
+ * per session, letting a client resend only what is missing after a failure. Completing the upload hashes the
+ * file, moves it into the {@link ImageStore} and attaches it to a task.
+ * <p>
+ * Sessions live in memory: they are lost on restart and only known to the instance that created them. At most
+ * {@code max-sessions} are open at once, reserving at most {@code max-reserved} bytes together; beyond that new
+ * sessions are rejected until others end. Sessions idle for longer than {@code expire-after} are dropped; files left behind by a crash are {@code .part} files
+ * that {@link ImageGarbageCollector} removes.
+ */
+@Slf4j
+@Service
+public class UploadService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d{1,18})-(\\d{1,18})/(\\d{1,18})");
+
+    private final ImageStore imageStore;
+    private final TaskService taskService;
+    private final TaskMetrics metrics;
+    private final long maxSize;
+    private final int maxSessions;
+    private final long maxReserved;
+    private final Duration expireAfter;
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    // Both guarded by this. Counted from before the file is reserved until the session leaves the map.
+    private int sessions;
+    private long reserved;
+
+    public UploadService(ImageStore imageStore, TaskService taskService, TaskMetrics metrics,
+                         @Value("${app.uploads.max-size}") DataSize maxSize,
+                         @Value("${app.uploads.max-sessions}") int maxSessions,
+                         @Value("${app.uploads.max-reserved}") DataSize maxReserved,
+                         @Value("${app.uploads.expire-after}") Duration expireAfter) {
+        this.imageStore = imageStore;
+        this.taskService = taskService;
+        this.metrics = metrics;
+        this.maxSize = maxSize.toBytes();
+        this.maxSessions = maxSessions;
+        this.maxReserved = maxReserved.toBytes();
+        this.expireAfter = expireAfter;
+    }
+
+    public UploadDTO create(long size) throws IOException {
+        if (size <= 0 || size > maxSize) {
+            throw new InvalidUploadException("Invalid upload size!");
+        }
+
+        reserve(size);
+        Upload upload;
+        try {
+            String id = UUID.randomUUID().toString();
+            Path file = Files.createDirectories(imageStore.tempDirectory()).resolve("upload-" + id + ".part");
+            Files.createFile(file);
+            // Sets the final length up front, sparse on most file systems, so chunks never have to extend the file.
+            try (RandomAccessFile reserved = new RandomAccessFile(file.toFile(), "rw")) {
+                reserved.setLength(size);
+            }
+            upload = new Upload(id, size, file);
+        } catch (IOException | RuntimeException e) {
+            release(size);
+            throw e;
+        }
+
+        uploads.put(upload.id, upload);
+        return toDTO(upload);
+    }
+
+    public UploadDTO status(String id) {
+        return toDTO(get(id));
+    }
+
+    /**
+     * Writes one chunk described by a {@code Content-Range: bytes start-end/size} header. When the body ends
+     * early the bytes that did arrive are kept and reported as received.
+     */
+    public UploadDTO write(String id, String contentRange, InputStream body) throws IOException {
+        Upload upload = get(id);
+        Matcher range = CONTENT_RANGE.matcher(contentRange == null ? "" : contentRange.trim());
+        if (!range.matches()) {
+            throw new InvalidUploadException("Invalid Content-Range!");
+        }
+        long start = Long.parseLong(range.group(1));
+        long end = Long.parseLong(range.group(2)) + 1;
+        if (Long.parseLong(range.group(3)) != upload.size || start >= end || end > upload.size) {
+            throw new InvalidUploadException("Invalid Content-Range!");
+        }
+
+        // Chunks share the read lock; completing takes the write lock, so it waits for the writes in flight.
+        Lock lock = upload.lock.readLock();
+        lock.lock();
+        try {
+            if (upload.discarded) {
+                throw new UploadNotFoundException();
+            }
+            if (upload.stored != null) {
+                throw new InvalidUploadException("Upload is already complete!");
+            }
+
+            long position = start;
+            try (FileChannel channel = FileChannel.open(upload.file, StandardOpenOption.WRITE)) {
+                byte[] bytes = new byte[BUFFER_SIZE];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (position < end) {
+                    int read = body.read(bytes, 0, (int) Math.min(BUFFER_SIZE, end - position));
+                    if (read < 0) {
+                        break;
+                    }
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                }
+            } finally {
+                upload.received(start, position);
+                upload.lastAccess = System.nanoTime();
+            }
+
+            if (position < end) {
+                throw new InvalidUploadException("Chunk is shorter than its Content-Range!");
+            }
+        } finally {
+            lock.unlock();
+        }
+        return toDTO(upload);
+    }
+
+    /**
+     * Moves the finished upload into the image store and makes it the image of the task. If attaching fails, e.g.
+     * on a stale {@code If-Match}, the stored image is kept with the session so the call can simply be repeated.
+     */
+    public TaskDTO complete(String id, Long taskId, Long expectedVersion) throws IOException {
+        Upload upload = get(id);
+
+        StoredImage stored;
+        Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            if (upload.discarded) {
+                throw new UploadNotFoundException();
+            }
+            if (upload.stored == null) {
+                if (upload.receivedBytes() < upload.size) {
+                    throw new InvalidUploadException("Upload is incomplete!");
+                }
+                long start = System.nanoTime();
+                try {
+                    upload.stored = imageStore.storeFile(upload.file);
+                } catch (IOException | RuntimeException e) {
+                    // The file is gone either way, so is the session.
+                    upload.discarded = true;
+                    remove(upload);
+                    throw e;
+                }
+                metrics.recordUpload(System.nanoTime() - start, upload.size);
+            }
+            stored = upload.stored;
+        } finally {
+            lock.unlock();
+        }
+
+        TaskDTO task = taskService.updateImage(taskId, stored, expectedVersion);
+        remove(upload);
+        return task;
+    }
+
+    public void cancel(String id) throws IOException {
+        Upload upload = get(id);
+        // Waits for the chunks still being written.
+        Lock lock = upload.lock.writeLock();
+        lock.lock();
+        try {
+            discard(upload);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.uploads.cleanup-interval}")
+    public void expire() {
+        long now = System.nanoTime();
+        for (Upload upload : uploads.values()) {
+            // A session that is being written to is not idle; never wait for it on the scheduler thread.
+            Lock lock = upload.lock.writeLock();
+            if (now - upload.lastAccess > expireAfter.toNanos() && lock.tryLock()) {
+                try {
+                    discard(upload);
+                } catch (IOException e) {
+                    log.warn("Could not delete expired upload {}", upload.file, e);
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a session. Must hold the write lock. A stored image is left to the garbage collector.
+     */
+    private void discard(Upload upload) throws IOException {
+        upload.discarded = true;
+        remove(upload);
+        if (upload.stored == null) {
+            Files.deleteIfExists(upload.file);
+        }
+    }
+
+    private synchronized void reserve(long size) {
+        if (sessions >= maxSessions || reserved + size > maxReserved) {
+            throw new TooManyUploadsException();
+        }
+        sessions++;
+        reserved += size;
+    }
+
+    private synchronized void release(long size) {
+        sessions--;
+        reserved -= size;
+    }
+
+    private void remove(Upload upload) {
+        if (uploads.remove(upload.id, upload)) {
+            release(upload.size);
+        }
+    }
+
+    private Upload get(String id) {
+        Upload upload = uploads.get(id);
+        if (upload == null) {
+            throw new UploadNotFoundException();
+        }
+        upload.lastAccess = System.nanoTime();
+        return upload;
+    }
+
+    private static UploadDTO toDTO(Upload upload) {
+        synchronized (upload.ranges) {
+            List<UploadDTO.Range> ranges = new ArrayList<>(upload.ranges.size());
+            upload.ranges.forEach((start, end) -> ranges.add(new UploadDTO.Range(start, end)));
+            return new UploadDTO(upload.id, upload.size, upload.receivedBytes(), ranges);
+        }
+    }
+
+    private static final class Upload {
+        private final String id;
+        private final long size;
+        private final Path file;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // Received ranges, start to end exclusive, merged so they never overlap or touch. Guarded by itself.
+        private final NavigableMap<Long, Long> ranges = new TreeMap<>();
+        private volatile long lastAccess = System.nanoTime();
+        // Set once the bytes are in the image store. Both guarded by the write lock.
+        private StoredImage stored;
+        private boolean discarded;
+
+        private Upload(String id, long size, Path file) {
+            this.id = id;
+            this.size = size;
+            this.file = file;
+        }
+
+        void received(long start, long end) {
+            if (end <= start) {
+                return;
+            }
+            synchronized (ranges) {
+                Map.Entry<Long, Long> previous = ranges.floorEntry(start);
+                if (previous != null && previous.getValue() >= start) {
+                    start = previous.getKey();
+                    end = Math.max(end, previous.getValue());
+                }
+                Map.Entry<Long, Long> next;
+                while ((next = ranges.ceilingEntry(start)) != null && next.getKey() <= end) {
+                    end = Math.max(end, next.getValue());
+                    ranges.remove(next.getKey());
+                }
+                ranges.put(start, end);
+            }
+        }
+
+        long receivedBytes() {
+            synchronized (ranges) {
+                return ranges.entrySet().stream().mapToLong(range -> range.getValue() - range.getKey()).sum();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package app.brickup.apirest.util;
+
+import app.brickup.apirest.exceptions.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes and decodes the opaque cursors handed out by the paginated task list.
+ * Clients must treat the value as a token and send it back unchanged.
+ */
+public class CursorUtil {
+    private static final String PREFIX = "id:";
+    private static final String OFFSET_PREFIX = "offset:";
+
+    private CursorUtil() {
+    }
+
+    public static String encode(Long lastId) {
+        return encode(PREFIX, lastId);
+    }
+
+    public static long decode(String cursor) {
+        return decode(cursor, PREFIX);
+    }
+
+    /**
+     * Cursor for search results, which are ordered by relevance and therefore paginated by position.
+     */
+    public static String encodeOffset(int offset) {
+        return encode(OFFSET_PREFIX, offset);
+    }
+
+    public static int decodeOffset(String cursor) {
+        long offset = decode(cursor, OFFSET_PREFIX);
+        if (offset < 0 || offset > Integer.MAX_VALUE) {
+            throw new InvalidCursorException();
+        }
+        return (int) offset;
+    }
+
+    private static String encode(String prefix, long value) {
+        byte[] raw = (prefix + value).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+    }
+
+    private static long decode(String cursor, String prefix) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(prefix)) {
+                throw new InvalidCursorException();
+            }
+            return Long.parseLong(raw.substring(prefix.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package app.brickup.apirest.util;
+
+import app.brickup.apirest.exceptions.PreconditionFailedException;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Converts between a task version and the strong ETag exposed for it, and builds the ETag of list responses.
+ */
+public class ETagUtil {
+    private ETagUtil() {
+    }
+
+    public static String fromVersion(Long version) {
+        return "\"" + (version == null ? 0 : version) + "\"";
+    }
+
+    /**
+     * ETag of a list or search response: the change version of the task table plus a hash of the request
+     * parameters, so different pages and filters never share a validator. It is weak because the body is only
+     * equivalent across content encodings, and Tomcat does not compress responses carrying a strong ETag.
+     * <p>
+     * The hash is taken over the parameters' text, with enums by name, as identity hash codes would give every
+     * instance and every restart its own ETag for the same list.
+     */
+    public static String forList(long changeVersion, Object... parameters) {
+        String key = Arrays.stream(parameters)
+                .map(parameter -> parameter == null ? ""
+                        : parameter instanceof Enum<?> constant ? constant.name() : parameter.toString())
+                .collect(Collectors.joining("\u0000"));
+        return "W/\"list-" + changeVersion + "-" + Integer.toHexString(key.hashCode()) + "\"";
+    }
+
+    /**
+     * Reads the version out of an {@code If-Match} header. Returns {@code null} when there is no precondition
+     * ({@code null} or {@code *}). Weak or unknown validators can never match, so they fail the precondition.
+     */
+    public static Long toVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String value = ifMatch.trim();
+        if (value.length() < 3 || !value.startsWith("\"") || !value.endsWith("\"")) {
+            throw new PreconditionFailedException();
+        }
+        try {
+            return Long.parseLong(value.substring(1, value.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package app.brickup.apirest.util;
+
+import app.brickup.apirest.exceptions.InvalidFieldsException;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Parses the {@code fields} parameter of the task list into the set of {@code TaskDTO} properties to return.
+ */
+public class FieldsUtil {
+    public static final String ID = "id";
+    public static final String DESCRIPTION = "description";
+    public static final String STATUS = "status";
+    public static final String LINK_IMAGE = "linkImage";
+    public static final String VERSION = "version";
+
+    private static final Set<String> ALL = Set.of(ID, DESCRIPTION, STATUS, LINK_IMAGE, VERSION);
+
+    private FieldsUtil() {
+    }
+
+    /**
+     * Returns {@code null} when every field is wanted. The id is always included, as the cursor is built from it.
+     */
+    public static Set<String> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+
+        Set<String> selected = new LinkedHashSet<>();
+        selected.add(ID);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!ALL.contains(name)) {
+                throw new InvalidFieldsException();
+            }
+            selected.add(name);
+        }
+        return Collections.unmodifiableSet(selected);
+    }
+}
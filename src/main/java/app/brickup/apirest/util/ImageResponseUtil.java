@@ -0,0 +1,145 @@
+package app.brickup.apirest.util;
+
+import app.brickup.apirest.dto.ImageResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes an image (or a single byte range of it) to the response without copying it through the heap.
+ * On Tomcat the transfer is handed to the connector's sendfile support; elsewhere it falls back to
+ * {@link FileChannel#transferTo}. Images kept in segments are written straight from their mapped slice.
+ * <p>
+ * Only raster image types are ever sent as such, with {@code nosniff}, so no upload is rendered as a document of
+ * the API's origin; any other stored type, as tasks saved before types were detected may have, is sent as
+ * {@code application/octet-stream}.
+ */
+public class ImageResponseUtil {
+    public static final String IMAGE_WEBP_VALUE = "image/webp";
+    public static final Set<String> RASTER_TYPES = Set.of(MediaType.IMAGE_PNG_VALUE, MediaType.IMAGE_JPEG_VALUE,
+            MediaType.IMAGE_GIF_VALUE, IMAGE_WEBP_VALUE);
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Same threshold Tomcat's DefaultServlet uses; below it sendfile costs more than it saves.
+    static final long SENDFILE_THRESHOLD = 48 * 1024;
+
+    /**
+     * Request attribute that keeps the body off sendfile. Tomcat only sends the file once the filter chain has
+     * returned, so whatever a filter holds or measures around the request would not cover the transfer.
+     */
+    public static final String NO_SENDFILE = ImageResponseUtil.class.getName() + ".noSendfile";
+
+    private ImageResponseUtil() {
+    }
+
+    /**
+     * @return the number of body bytes written, or handed to sendfile
+     */
+    public static long write(HttpServletRequest request, HttpServletResponse response, ImageResource image) throws IOException {
+        long length = image.getLength();
+        long start = 0;
+        long end = length - 1;
+
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentType(RASTER_TYPES.contains(image.getContentType())
+                ? image.getContentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader("X-Content-Type-Options", "nosniff");
+
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && ifRangeMatches(request, image)) {
+            List<HttpRange> ranges = parseRanges(rangeHeader);
+
+            // Multipart byte ranges are not worth the complexity for images; serve the full body instead.
+            if (ranges.size() == 1) {
+                start = ranges.get(0).getRangeStart(length);
+                end = ranges.get(0).getRangeEnd(length);
+                if (start >= length || start > end) {
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return 0;
+                }
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+
+        if ("HEAD".equals(request.getMethod()) || count <= 0) {
+            return 0;
+        }
+
+        if (image.getData() != null) {
+            // No file of its own to hand to sendfile or to open; the mapped pages are read in place.
+            ByteBuffer data = image.getData().slice((int) start, (int) count);
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            return count;
+        }
+
+        if (count >= SENDFILE_THRESHOLD && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && request.getAttribute(NO_SENDFILE) == null) {
+            request.setAttribute(SENDFILE_FILENAME, image.getPath().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return count;
+        }
+
+        try (FileChannel channel = FileChannel.open(image.getPath(), StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long written = channel.transferTo(position, remaining, out);
+                if (written <= 0) {
+                    break;
+                }
+                position += written;
+                remaining -= written;
+            }
+            return count - remaining;
+        }
+    }
+
+    private static List<HttpRange> parseRanges(String rangeHeader) {
+        try {
+            return HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored, as RFC 9110 allows.
+            return List.of();
+        }
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, ImageResource image) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(image.getETag());
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == image.getLastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
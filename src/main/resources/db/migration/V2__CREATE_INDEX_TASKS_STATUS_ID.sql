@@ -0,0 +1 @@
+CREATE INDEX idx_tasks_status_id ON tasks (status, id);
@@ -0,0 +1 @@
+ALTER TABLE tasks ADD COLUMN content_type VARCHAR(100) NULL;
@@ -0,0 +1,8 @@
+CREATE TABLE tasks_seq
+(
+    next_val BIGINT NOT NULL
+);
+
+INSERT INTO tasks_seq (next_val)
+SELECT COALESCE(MAX(id), 0) + 1
+FROM tasks;
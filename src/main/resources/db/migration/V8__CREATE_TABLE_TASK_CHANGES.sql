@@ -0,0 +1,8 @@
+CREATE TABLE task_changes
+(
+    id      INT    NOT NULL,
+    version BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+INSERT INTO task_changes (id, version) VALUES (1, 0);
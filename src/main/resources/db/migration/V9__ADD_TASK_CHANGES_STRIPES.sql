@@ -0,0 +1,3 @@
+INSERT INTO task_changes (id, version)
+VALUES (2, 0), (3, 0), (4, 0), (5, 0), (6, 0), (7, 0), (8, 0), (9, 0),
+       (10, 0), (11, 0), (12, 0), (13, 0), (14, 0), (15, 0), (16, 0);
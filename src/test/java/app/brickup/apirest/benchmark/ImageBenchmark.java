@@ -0,0 +1,126 @@
+package app.brickup.apirest.benchmark;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import app.brickup.apirest.service.FileImageStore;
+import app.brickup.apirest.service.ImageDerivativeService;
+import app.brickup.apirest.service.TaskCache;
+import app.brickup.apirest.service.TaskChangeTracker;
+import app.brickup.apirest.service.TaskEventPublisher;
+import app.brickup.apirest.service.TaskMetrics;
+import app.brickup.apirest.service.TaskService;
+import app.brickup.apirest.service.TaskStats;
+import app.brickup.apirest.util.ImageResponseUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upload through {@link FileImageStore#store} and download through {@link TaskService#getResource} plus
+ * {@link ImageResponseUtil}. Every upload is the same file, so after the first one the store hashes and writes the
+ * temporary copy and then discards it as a duplicate, the same path a re-upload takes in production.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageBenchmark {
+    @Param({"16384", "1048576"})
+    public int imageSize;
+
+    private Path directory;
+    private FileImageStore imageStore;
+    private TaskService service;
+    private MockMultipartFile upload;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("benchmark-images");
+        imageStore = new FileImageStore(directory.toString());
+
+        byte[] bytes = new byte[imageSize];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        upload = new MockMultipartFile("image", "image.png", "image/png", bytes);
+        StoredImage stored = imageStore.store(upload);
+
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, stored.getLocation(), stored.getContentType(), 0L);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TaskRepository repository = InMemoryTaskRepository.of(List.of(task));
+        TaskShards shards = new TaskShards(1, Runnable::run);
+        TaskCache cache = new TaskCache(100, Duration.ofMinutes(5), registry);
+        TaskEventPublisher eventPublisher =
+                new TaskEventPublisher(Runnable::run, new TaskMetrics(registry), 1, 1, 0, Duration.ZERO);
+        service = new TaskService(repository, new TaskMapper(), imageStore,
+                new ImageDerivativeService(imageStore, runnable -> { }),
+                cache, new TaskMetrics(registry),
+                new TaskChangeTracker(shards, cache, eventPublisher, InMemoryTaskRepository.transactionManager()),
+                eventPublisher,
+                new TaskStats(repository, registry), shards, InMemoryTaskRepository.transactionManager());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public StoredImage upload() throws IOException {
+        return imageStore.store(upload);
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        ImageResource image = service.getResource(1L, null);
+        return ImageResponseUtil.write(new MockHttpServletRequest("GET", "/api/tasks/1/image"),
+                new DiscardingResponse(), image);
+    }
+
+    /**
+     * The mock response writes its body one byte at a time and would dominate the measurement.
+     */
+    private static class DiscardingResponse extends MockHttpServletResponse {
+        private final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return out;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package app.brickup.apirest.benchmark;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.LongStream;
+
+/**
+ * {@link TaskRepository} backed by a sorted map, so service benchmarks measure the application code rather than the
+ * database. Only the methods the benchmarks call are implemented.
+ */
+final class InMemoryTaskRepository {
+    private InMemoryTaskRepository() {
+    }
+
+    static TaskRepository of(List<Task> tasks) {
+        NavigableMap<Long, Task> rows = new ConcurrentSkipListMap<>();
+        tasks.forEach(task -> rows.put(task.getId(), task));
+
+        return (TaskRepository) Proxy.newProxyInstance(TaskRepository.class.getClassLoader(),
+                new Class<?>[]{TaskRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.ofNullable(rows.get((Long) args[0]));
+                    case "findByIdGreaterThanOrderByIdAsc" -> rows.tailMap((Long) args[0], false).values().stream()
+                            .limit(((Limit) args[1]).max())
+                            .toList();
+                    case "findByStatusAndIdGreaterThanOrderByIdAsc" -> rows.tailMap((Long) args[1], false).values().stream()
+                            .filter(task -> task.getStatus() == args[0])
+                            .limit(((Limit) args[2]).max())
+                            .toList();
+                    case "save" -> {
+                        Task task = (Task) args[0];
+                        rows.put(task.getId(), task);
+                        yield task;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryTaskRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Transaction manager for services built on top of the in-memory repository: transactions begin and end
+     * without touching any resource.
+     */
+    static PlatformTransactionManager transactionManager() {
+        return new AbstractPlatformTransactionManager() {
+            @Override
+            protected Object doGetTransaction() {
+                return new Object();
+            }
+
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+            }
+
+            @Override
+            protected void doCommit(DefaultTransactionStatus status) {
+            }
+
+            @Override
+            protected void doRollback(DefaultTransactionStatus status) {
+            }
+        };
+    }
+
+    static List<Task> tasks(int count) {
+        return LongStream.rangeClosed(1, count)
+                .mapToObj(id -> new Task(id, "Task " + id, id % 2 == 0 ? Status.FINALIZADA : Status.PENDENTE, null))
+                .toList();
+    }
+}
@@ -0,0 +1,43 @@
+package app.brickup.apirest.benchmark;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.mapper.TaskMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of a page of {@link TaskDTO}s with an {@link ObjectMapper} configured the way Spring Boot configures
+ * the one used by the controllers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+    @Param({"50", "500"})
+    public int pageSize;
+
+    private ObjectWriter writer;
+    private TaskPageDTO page;
+
+    @Setup
+    public void setup() {
+        writer = Jackson2ObjectMapperBuilder.json().build().writerFor(TaskPageDTO.class);
+        TaskMapper mapper = new TaskMapper();
+        List<TaskDTO> items = InMemoryTaskRepository.tasks(pageSize).stream().map(mapper::toDTO).toList();
+        page = new TaskPageDTO(items, "aWQ6NTA");
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws Exception {
+        return writer.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,65 @@
+package app.brickup.apirest.benchmark;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective ModelMapper previously used by TaskService with the hand-written TaskMapper.
+ * Run with {@code -prof gc} to get the allocation rate per operation ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskMapperBenchmark {
+    private ModelMapper modelMapper;
+    private TaskMapper taskMapper;
+    private Task task;
+    private TaskDTO dto;
+
+    @Setup
+    public void setup() {
+        modelMapper = new ModelMapper();
+        taskMapper = new TaskMapper();
+        task = new Task(42L, "Benchmark task", Status.PENDENTE, "/var/img-uploads/benchmark.jpg");
+        dto = taskMapper.toDTO(task);
+        // Let ModelMapper build and cache its type maps outside of the measured region.
+        modelMapper.map(task, TaskDTO.class);
+        modelMapper.map(dto, Task.class);
+    }
+
+    @Benchmark
+    public TaskDTO modelMapperToDTO() {
+        return modelMapper.map(task, TaskDTO.class);
+    }
+
+    @Benchmark
+    public TaskDTO taskMapperToDTO() {
+        return taskMapper.toDTO(task);
+    }
+
+    @Benchmark
+    public Task modelMapperToEntity() {
+        return modelMapper.map(dto, Task.class);
+    }
+
+    @Benchmark
+    public Task taskMapperToEntity() {
+        return taskMapper.toEntity(dto);
+    }
+
+    @Benchmark
+    public Task taskMapperMerge() {
+        Task target = new Task(42L, "Old description", Status.PENDENTE, null);
+        taskMapper.merge(dto, target);
+        return target;
+    }
+}
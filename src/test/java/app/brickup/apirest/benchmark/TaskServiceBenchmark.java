@@ -0,0 +1,88 @@
+package app.brickup.apirest.benchmark;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import app.brickup.apirest.service.FileImageStore;
+import app.brickup.apirest.service.ImageDerivativeService;
+import app.brickup.apirest.service.TaskCache;
+import app.brickup.apirest.service.TaskChangeTracker;
+import app.brickup.apirest.service.TaskEventPublisher;
+import app.brickup.apirest.service.TaskMetrics;
+import app.brickup.apirest.service.TaskService;
+import app.brickup.apirest.service.TaskStats;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * List and get through {@link TaskService} over {@link InMemoryTaskRepository}. {@code getCached} hits the task
+ * cache; {@code getUncached} uses a cache that cannot hold any entry, so every call goes to the repository.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskServiceBenchmark {
+    private static final int TASKS = 10_000;
+
+    private TaskService cachedService;
+    private TaskService uncachedService;
+
+    @Setup
+    public void setup() throws Exception {
+        cachedService = service(TASKS);
+        uncachedService = service(0);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Page {
+        @Param({"50", "500"})
+        public int size;
+    }
+
+    @Benchmark
+    public TaskPageDTO listFirstPage(Page page) {
+        return cachedService.findPage(null, page.size, null, null);
+    }
+
+    @Benchmark
+    public TaskPageDTO listByStatus(Page page) {
+        return cachedService.findPage(null, page.size, Status.PENDENTE, null);
+    }
+
+    @Benchmark
+    public TaskDTO getCached() {
+        return cachedService.findById(ThreadLocalRandom.current().nextLong(1, TASKS + 1));
+    }
+
+    @Benchmark
+    public TaskDTO getUncached() {
+        return uncachedService.findById(ThreadLocalRandom.current().nextLong(1, TASKS + 1));
+    }
+
+    private static TaskService service(long cacheSize) throws Exception {
+        FileImageStore imageStore = new FileImageStore(Files.createTempDirectory("benchmark-images").toString());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TaskRepository repository = InMemoryTaskRepository.of(InMemoryTaskRepository.tasks(TASKS));
+        TaskShards shards = new TaskShards(1, Runnable::run);
+        TaskCache cache = new TaskCache(cacheSize, Duration.ofMinutes(5), registry);
+        TaskEventPublisher eventPublisher =
+                new TaskEventPublisher(Runnable::run, new TaskMetrics(registry), 1, 1, 0, Duration.ZERO);
+        return new TaskService(repository, new TaskMapper(),
+                imageStore, new ImageDerivativeService(imageStore, task -> { }),
+                cache, new TaskMetrics(registry),
+                new TaskChangeTracker(shards, cache, eventPublisher, InMemoryTaskRepository.transactionManager()),
+                eventPublisher,
+                new TaskStats(repository, registry), shards, InMemoryTaskRepository.transactionManager());
+    }
+}
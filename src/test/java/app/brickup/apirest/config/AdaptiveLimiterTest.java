@@ -0,0 +1,122 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.config.AdaptiveLimiter.Admission;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long clock = System.nanoTime();
+
+    @Test
+    @DisplayName("Requests over the limit must wait in the queue, and be rejected once it is full or their time is up")
+    void queues() throws Exception {
+        AdaptiveLimiter limiter = limiter(2, 4, 1, Duration.ofMillis(50));
+
+        assertEquals(Admission.ADMITTED, limiter.acquire(System.nanoTime()));
+        assertEquals(Admission.ADMITTED, limiter.acquire(System.nanoTime()));
+
+        CompletableFuture<Admission> waiting = CompletableFuture.supplyAsync(() -> acquire(limiter));
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+        assertEquals(Admission.QUEUE_FULL, limiter.acquire(System.nanoTime()));
+        assertEquals(Admission.TIMED_OUT, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(0, limiter.getQueued());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("A waiting request must be admitted as soon as a slot is released")
+    void handsOver() throws Exception {
+        AdaptiveLimiter limiter = limiter(1, 1, 1, Duration.ofSeconds(5));
+        long admittedAt = System.nanoTime();
+        assertEquals(Admission.ADMITTED, limiter.acquire(admittedAt));
+
+        CompletableFuture<Admission> waiting = CompletableFuture.supplyAsync(() -> acquire(limiter));
+        while (limiter.getQueued() == 0) {
+            Thread.onSpinWait();
+        }
+        limiter.release(admittedAt, admittedAt + MS);
+
+        assertEquals(Admission.ADMITTED, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("The limit must grow while fast requests keep it in use, and shrink once per round of slow ones")
+    void adapts() throws Exception {
+        AdaptiveLimiter limiter = limiter(4, 8, 10, Duration.ofSeconds(1));
+
+        for (int round = 0; round < 5; round++) {
+            round(limiter, MS);
+        }
+        assertEquals(6, (int) limiter.getLimit(), "Only releases with the limit at least half used count");
+
+        double before = limiter.getLimit();
+        round(limiter, 200 * MS);
+        assertEquals(before * 0.9, limiter.getLimit(), 1e-9, "One cut for the whole round");
+
+        for (int round = 0; round < 10; round++) {
+            round(limiter, 200 * MS);
+        }
+        assertEquals(4, limiter.getLimit(), "Never below min-limit");
+
+        for (int round = 0; round < 40; round++) {
+            round(limiter, MS);
+        }
+        assertEquals(8, limiter.getLimit(), "Never above max-limit");
+    }
+
+    @Test
+    @DisplayName("Retry-After must follow the time the queue takes to drain, between 1 and 60 seconds")
+    void retryAfter() throws Exception {
+        AdaptiveLimiter limiter = limiter(1, 1, 10, Duration.ofSeconds(1));
+        assertEquals(1, limiter.retryAfterSeconds());
+
+        long admittedAt = System.nanoTime();
+        limiter.acquire(admittedAt);
+        limiter.release(admittedAt, admittedAt + TimeUnit.SECONDS.toNanos(5));
+        assertEquals(5, limiter.retryAfterSeconds());
+
+        admittedAt = System.nanoTime();
+        limiter.acquire(admittedAt);
+        limiter.release(admittedAt, admittedAt + TimeUnit.MINUTES.toNanos(30));
+        assertEquals(60, limiter.retryAfterSeconds());
+    }
+
+    /**
+     * Admits as many requests as the limit allows and completes them with the given latency. Rounds are a second
+     * apart on a clock of their own, so each starts after the previous one has completed.
+     */
+    private void round(AdaptiveLimiter limiter, long latency) throws InterruptedException {
+        clock += TimeUnit.SECONDS.toNanos(1);
+        int count = (int) limiter.getLimit();
+        for (int i = 0; i < count; i++) {
+            assertEquals(Admission.ADMITTED, limiter.acquire(clock));
+        }
+        for (int i = 0; i < count; i++) {
+            limiter.release(clock, clock + latency);
+        }
+    }
+
+    private static Admission acquire(AdaptiveLimiter limiter) {
+        try {
+            return limiter.acquire(System.nanoTime());
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static AdaptiveLimiter limiter(int minLimit, int maxLimit, int queueCapacity, Duration queueTimeout) {
+        return new AdaptiveLimiter(new AdaptiveLimiter.Settings(minLimit, maxLimit, Duration.ofMillis(100),
+                queueCapacity, queueTimeout, Duration.ofSeconds(10)));
+    }
+}
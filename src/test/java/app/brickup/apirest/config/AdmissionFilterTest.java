@@ -0,0 +1,107 @@
+package app.brickup.apirest.config;
+
+import app.brickup.apirest.util.ImageResponseUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AdaptiveLimiter images = limiter(Duration.ofSeconds(10));
+    private final AdaptiveLimiter uploads = limiter(Duration.ofMinutes(2));
+    private final AdmissionFilter filter = new AdmissionFilter(true, images, uploads, Duration.ofSeconds(3), registry);
+
+    @Test
+    @DisplayName("Image downloads over the limit must be rejected with Retry-After, admitted ones kept off sendfile")
+    void limitsImages() throws Exception {
+        assertEquals(AdaptiveLimiter.Admission.ADMITTED, images.acquire(System.nanoTime()));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks/1/image"), rejected, (req, res) ->
+                fail("Over the limit"));
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, registry.get("tasks.admission.rejected").tag("class", "images").counter().count());
+
+        MockHttpServletResponse served = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks/1"), served, (req, res) ->
+                assertNull(req.getAttribute(ImageResponseUtil.NO_SENDFILE)));
+        assertEquals(200, served.getStatus());
+
+        images.release(System.nanoTime(), System.nanoTime());
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks/1/image"), new MockHttpServletResponse(),
+                (req, res) -> assertEquals(Boolean.TRUE, req.getAttribute(ImageResponseUtil.NO_SENDFILE)));
+    }
+
+    @Test
+    @DisplayName("Large multipart bodies and upload chunks must count as uploads, small forms must not")
+    void classifiesUploads() throws Exception {
+        assertEquals(AdaptiveLimiter.Admission.ADMITTED, uploads.acquire(System.nanoTime()));
+
+        MockHttpServletRequest create = new MockHttpServletRequest("POST", "/api/tasks");
+        create.setContentType("multipart/form-data; boundary=x");
+        create.setContent(new byte[100 * 1024]);
+        assertEquals(429, status(create));
+        assertEquals(429, status(new MockHttpServletRequest("PUT", "/api/uploads/abc")));
+        assertEquals(429, status(new MockHttpServletRequest("POST", "/api/uploads/abc/complete")));
+
+        MockHttpServletRequest patch = new MockHttpServletRequest("PATCH", "/api/tasks/1");
+        patch.setContentType("multipart/form-data; boundary=x");
+        patch.setContent(new byte[512]);
+        assertEquals(200, status(patch));
+        assertEquals(200, status(new MockHttpServletRequest("POST", "/api/uploads")));
+    }
+
+    @Test
+    @DisplayName("Transactions must time out with what is left of the request deadline, and not start once it passed")
+    void propagatesDeadline() throws Exception {
+        DeadlineTransactionManager transactionManager = new DeadlineTransactionManager();
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+        List<Integer> timeouts = new ArrayList<>();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks"), new MockHttpServletResponse(),
+                (req, res) -> timeouts.add(transactionManager.determineTimeout(definition)));
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks/1/image"), new MockHttpServletResponse(),
+                (req, res) -> timeouts.add(transactionManager.determineTimeout(definition)));
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks/export"), new MockHttpServletResponse(),
+                (req, res) -> timeouts.add(transactionManager.determineTimeout(definition)));
+        definition.setTimeout(1);
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/tasks"), new MockHttpServletResponse(),
+                (req, res) -> timeouts.add(transactionManager.determineTimeout(definition)));
+        timeouts.add(transactionManager.determineTimeout(definition));
+
+        assertEquals(List.of(3, 10, TransactionDefinition.TIMEOUT_DEFAULT, 1, 1), timeouts);
+        assertNull(RequestDeadline.remainingNanos());
+
+        RequestDeadline.set(System.nanoTime() - 1);
+        try {
+            assertThrows(TransactionTimedOutException.class,
+                    () -> transactionManager.determineTimeout(new DefaultTransactionDefinition()));
+        } finally {
+            RequestDeadline.set(null);
+        }
+    }
+
+    private int status(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+        });
+        return response.getStatus();
+    }
+
+    private static AdaptiveLimiter limiter(Duration deadline) {
+        return new AdaptiveLimiter(new AdaptiveLimiter.Settings(1, 1, Duration.ofMillis(100), 0,
+                Duration.ofMillis(10), deadline));
+    }
+}
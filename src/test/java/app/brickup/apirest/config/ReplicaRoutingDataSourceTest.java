@@ -0,0 +1,165 @@
+package app.brickup.apirest.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import jakarta.servlet.http.Cookie;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two in-memory H2 databases stand in for the primary and a replica; each knows its own name.
+ */
+class ReplicaRoutingDataSourceTest {
+    private final DriverManagerDataSource primary = database("primary");
+    private final DriverManagerDataSource replica = database("replica");
+    private final AtomicLong requiredVersion = new AtomicLong();
+
+    private ReplicaRoutingDataSource routing;
+    private TransactionTemplate reads;
+    private TransactionTemplate writes;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        routing = routing(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(primary).execute("SHUTDOWN");
+        new JdbcTemplate(replica).execute("SHUTDOWN");
+    }
+
+    @Test
+    @DisplayName("Read-only transactions must go to a probed replica and everything else to the primary")
+    void routesByReadOnly() {
+        assertEquals("primary", read(), "Replicas are unavailable until the first probe");
+
+        routing.checkReplicas();
+
+        assertEquals("replica", read());
+        assertEquals("primary", writes.execute(tx -> name()));
+        assertEquals("primary", name());
+        assertEquals(1, routing.availableReplicas());
+    }
+
+    @Test
+    @DisplayName("A replica must not serve reads before it has the version this instance already saw")
+    void requiresVersion() {
+        routing.checkReplicas();
+        setVersion(primary, 1);
+        requiredVersion.set(1);
+
+        assertEquals("primary", read());
+
+        setVersion(replica, 1);
+        assertEquals("replica", read(), "The replica is read again instead of waiting for the next probe");
+    }
+
+    @Test
+    @DisplayName("A failing replica must be skipped until a probe finds it healthy again")
+    void failsOver() {
+        routing.checkReplicas();
+        String url = replica.getUrl();
+        replica.setUrl("jdbc:h2:mem:gone-" + UUID.randomUUID() + ";IFEXISTS=TRUE");
+
+        assertEquals("primary", read());
+        assertEquals(0, routing.availableReplicas());
+
+        routing.checkReplicas();
+        assertEquals(0, routing.availableReplicas());
+
+        replica.setUrl(url);
+        assertEquals("primary", read(), "A connection attempt alone does not bring the replica back");
+        routing.checkReplicas();
+        assertEquals("replica", read());
+    }
+
+    @Test
+    @DisplayName("A replica further behind the primary than the allowed lag must be skipped")
+    void skipsLaggingReplica() {
+        routing = routing(Duration.ZERO);
+        setVersion(primary, 1);
+
+        routing.checkReplicas();
+        assertEquals("primary", read());
+
+        setVersion(replica, 1);
+        routing.checkReplicas();
+        assertEquals("replica", read());
+    }
+
+    @Test
+    @DisplayName("A client that just wrote must read from the primary until its window ends")
+    void readYourWrites() throws Exception {
+        routing.checkReplicas();
+        ReadYourWritesFilter filter = new ReadYourWritesFilter(routing, Duration.ofSeconds(5));
+
+        MockHttpServletResponse written = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("PATCH", "/api/tasks/1"), written, (req, res) -> {
+        });
+        Cookie cookie = written.getCookie(ReadYourWritesFilter.COOKIE);
+        assertNotNull(cookie);
+
+        List<String> names = new ArrayList<>();
+        MockHttpServletRequest sticky = new MockHttpServletRequest("GET", "/api/tasks/1");
+        sticky.setCookies(cookie);
+        filter.doFilter(sticky, new MockHttpServletResponse(), (req, res) -> names.add(read()));
+        MockHttpServletRequest forged = new MockHttpServletRequest("GET", "/api/tasks/1");
+        forged.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(Long.MAX_VALUE)));
+        filter.doFilter(forged, new MockHttpServletResponse(), (req, res) -> names.add(read()));
+        names.add(read());
+
+        assertEquals(List.of("primary", "replica", "replica"), names);
+    }
+
+    private ReplicaRoutingDataSource routing(Duration maxLag) {
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, List.of(replica), maxLag);
+        routing.setRequiredVersion(requiredVersion::get);
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        reads = new TransactionTemplate(transactionManager);
+        reads.setReadOnly(true);
+        writes = new TransactionTemplate(transactionManager);
+        jdbc = new JdbcTemplate(dataSource);
+        return routing;
+    }
+
+    private String read() {
+        return reads.execute(tx -> name());
+    }
+
+    private String name() {
+        return jdbc.queryForObject("SELECT name FROM source", String.class);
+    }
+
+    private static void setVersion(DriverManagerDataSource database, long version) {
+        new JdbcTemplate(database).update("UPDATE task_changes SET version = ? WHERE id = 1", version);
+    }
+
+    private static DriverManagerDataSource database(String name) {
+        DriverManagerDataSource database = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(database);
+        jdbc.execute("CREATE TABLE task_changes (id INT PRIMARY KEY, version BIGINT)");
+        jdbc.update("INSERT INTO task_changes VALUES (1, 0)");
+        jdbc.execute("CREATE TABLE source (name VARCHAR(10))");
+        jdbc.update("INSERT INTO source VALUES (?)", name);
+        return database;
+    }
+}
@@ -1,34 +1,60 @@
 package app.brickup.apirest.controller;
 
+import app.brickup.apirest.dto.ImageResource;
 import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.dto.TaskStatsDTO;
+import app.brickup.apirest.exceptions.InvalidCursorException;
+import app.brickup.apirest.exceptions.InvalidFieldsException;
+import app.brickup.apirest.exceptions.PreconditionFailedException;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.ImageSize;
 import app.brickup.apirest.model.Status;
 import app.brickup.apirest.model.Task;
+import app.brickup.apirest.service.TaskBatchService;
+import app.brickup.apirest.service.TaskEventPublisher;
+import app.brickup.apirest.service.TaskExportService;
+import app.brickup.apirest.service.TaskMetrics;
 import app.brickup.apirest.service.TaskService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.mockito.Spy;
-import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.Matchers.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
+import static org.springframework.http.MediaType.IMAGE_PNG;
+import static org.springframework.http.MediaType.IMAGE_PNG_VALUE;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @ExtendWith(SpringExtension.class)
-@WebMvcTest
+@WebMvcTest(TasksController.class)
 class TasksControllerTest {
     @Autowired
     private MockMvc mockMvc;
@@ -37,18 +63,102 @@ class TasksControllerTest {
     private ObjectMapper objectMapper;
 
     @Spy
-    private ModelMapper mapper = new ModelMapper();
+    private TaskMapper mapper = new TaskMapper();
 
     @MockBean
     private TaskService service;
 
+    @MockBean
+    private TaskExportService exportService;
+
+    @MockBean
+    private TaskBatchService batchService;
+
+    @MockBean
+    private TaskMetrics metrics;
+
+    @MockBean
+    private TaskEventPublisher eventPublisher;
+
+    @TempDir
+    private Path tempDir;
+
+    private static final byte[] IMAGE_BYTES = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+    private ImageResource image() throws IOException {
+        Path file = Files.write(tempDir.resolve("image.png"), IMAGE_BYTES);
+        return new ImageResource(file, IMAGE_PNG_VALUE, IMAGE_BYTES.length, 1_700_000_000_000L, "\"abc\"");
+    }
+
     @Test
     @DisplayName("When there are no tasks registered, an empty list must be returned")
     void findAllTasks_Empty() throws Exception {
+        Mockito.when(service.findPage(null, null, null, null)).thenReturn(new TaskPageDTO(List.of(), null));
+
         mockMvc.perform(get("/api/tasks")
                         .contentType(APPLICATION_JSON))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", is(empty())));
+                .andExpect(jsonPath("$.items", is(empty())));
+    }
+
+    @Test
+    @DisplayName("The list must carry an ETag and answer a matching If-None-Match with 304 without loading tasks.")
+    void findAllTasks_NotModified() throws Exception {
+        Mockito.when(service.listVersion()).thenReturn(7L);
+        Mockito.when(service.findPage(null, 2, null, null)).thenReturn(new TaskPageDTO(List.of(), null));
+
+        String eTag = mockMvc.perform(get("/api/tasks").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/tasks").param("limit", "2").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/tasks").param("limit", "3").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+
+        Mockito.when(service.listVersion()).thenReturn(8L);
+        mockMvc.perform(get("/api/tasks").param("limit", "2").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)));
+
+        Mockito.verify(service, Mockito.times(2)).findPage(null, 2, null, null);
+    }
+
+    @Test
+    @DisplayName("The list ETag must only depend on the version and the parameters, so every instance gives the same one.")
+    void findAllTasks_StableETag() throws Exception {
+        Mockito.when(service.listVersion()).thenReturn(7L);
+        Mockito.when(service.findPage(null, 2, Status.PENDENTE, null)).thenReturn(new TaskPageDTO(List.of(), null));
+
+        mockMvc.perform(get("/api/tasks").param("limit", "2").param("status", "PENDENTE"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"list-7-fc0bb913\""));
+    }
+
+    @Test
+    @DisplayName("The stats must be served with counts per status and recent creations.")
+    void stats() throws Exception {
+        Mockito.when(service.stats()).thenReturn(new TaskStatsDTO(Map.of(Status.PENDENTE, 3L, Status.FINALIZADA, 1L),
+                4, 1, 2, 4, Instant.parse("2026-01-01T10:00:00Z")));
+
+        mockMvc.perform(get("/api/tasks/stats"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(jsonPath("$.counts.PENDENTE", is(3)))
+                .andExpect(jsonPath("$.total", is(4)))
+                .andExpect(jsonPath("$.createdLast5Minutes", is(2)));
+    }
+
+    @Test
+    @DisplayName("The stream must open an event stream resuming from the Last-Event-ID header.")
+    void streamTasks() throws Exception {
+        Mockito.when(eventPublisher.subscribe("abc-7")).thenReturn(new SseEmitter());
+
+        mockMvc.perform(get("/api/tasks/stream").header("Last-Event-ID", "abc-7"))
+                .andExpect(request().asyncStarted());
+
+        Mockito.verify(eventPublisher).subscribe("abc-7");
     }
 
     @Test
@@ -59,16 +169,104 @@ class TasksControllerTest {
                 new Task(2L, "Task 2", Status.PENDENTE, "www.google.com")
         );
 
-        var tasksDTO = tasks.stream().map(p -> mapper.map(p, TaskDTO.class)).toList();
+        var tasksDTO = tasks.stream().map(p -> mapper.toDTO(p)).toList();
+
+        Mockito.when(service.findPage(null, null, null, null)).thenReturn(new TaskPageDTO(tasksDTO, "next-page"));
+
+        mockMvc.perform(get("/api/tasks")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", hasSize(2)))
+                .andExpect(jsonPath("$.items[0].id", is(1)))
+                .andExpect(jsonPath("$.items[1].id", is(2)))
+                .andExpect(jsonPath("$.next", is("next-page")));
+    }
+
+    @Test
+    @DisplayName("The cursor, limit and status parameters must be passed to the service")
+    void findAllTasks_Filtered() throws Exception {
+        Mockito.when(service.findPage("abc", 10, Status.FINALIZADA, null)).thenReturn(new TaskPageDTO(List.of(), null));
+
+        mockMvc.perform(get("/api/tasks")
+                        .param("cursor", "abc")
+                        .param("limit", "10")
+                        .param("status", "FINALIZADA")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", is(empty())));
+    }
+
+    @Test
+    @DisplayName("Only the requested fields must be serialized")
+    void findAllTasks_Fields() throws Exception {
+        TaskDTO task = new TaskDTO();
+        task.setId(1L);
+        task.setStatus(Status.PENDENTE);
+        Mockito.when(service.findPage(null, null, null, "status")).thenReturn(new TaskPageDTO(List.of(task), null));
+
+        mockMvc.perform(get("/api/tasks").param("fields", "status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id", is(1)))
+                .andExpect(jsonPath("$.items[0].status", is("PENDENTE")))
+                .andExpect(jsonPath("$.items[0].description").doesNotExist())
+                .andExpect(jsonPath("$.items[0].linkImage").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("An unknown field must be rejected")
+    void findAllTasks_InvalidFields() throws Exception {
+        Mockito.when(service.findPage(null, null, null, "secret")).thenThrow(InvalidFieldsException.class);
+
+        mockMvc.perform(get("/api/tasks").param("fields", "secret"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("A search term must be sent to the description search")
+    void searchTasks() throws Exception {
+        Mockito.when(service.search("milk", null, 10, Status.PENDENTE, null)).thenReturn(new TaskPageDTO(List.of(), null));
+
+        mockMvc.perform(get("/api/tasks")
+                        .param("q", "milk")
+                        .param("limit", "10")
+                        .param("status", "PENDENTE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items", is(empty())));
+
+        Mockito.verify(service, Mockito.never()).findPage(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("A search term longer than a description must be rejected")
+    void searchTasks_TooLong() throws Exception {
+        mockMvc.perform(get("/api/tasks").param("q", "x".repeat(101)))
+                .andExpect(status().isBadRequest());
+    }
 
-        Mockito.when(service.findAll()).thenReturn(tasksDTO);
+    @Test
+    @DisplayName("When the cursor is invalid, a bad request must be returned")
+    void findAllTasks_InvalidCursor() throws Exception {
+        Mockito.when(service.findPage("abc", null, null, null)).thenThrow(InvalidCursorException.class);
 
         mockMvc.perform(get("/api/tasks")
+                        .param("cursor", "abc")
                         .contentType(APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("The export must be streamed as newline-delimited JSON")
+    void exportTasks() throws Exception {
+        Mockito.doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("{\"id\":1}\n{\"id\":2}\n".getBytes());
+            return 2L;
+        }).when(exportService).exportTo(Mockito.any());
+
+        mockMvc.perform(get("/api/tasks/export"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(2)))
-                .andExpect(jsonPath("$[0].id", is(1)))
-                .andExpect(jsonPath("$[1].id", is(2)));
+                .andExpect(content().contentType(APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":1}\n{\"id\":2}\n"));
     }
 
     @Test
@@ -85,7 +283,7 @@ class TasksControllerTest {
     void findTask_IdFound() throws Exception {
         Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
 
-        var tasksDTO = mapper.map(task, TaskDTO.class);
+        var tasksDTO = mapper.toDTO(task);
 
         Mockito.when(service.findById(Mockito.anyLong())).thenReturn(tasksDTO);
         mockMvc.perform(get("/api/tasks/{id}", 1)
@@ -95,6 +293,139 @@ class TasksControllerTest {
                 .andExpect(jsonPath("$.description", is(task.getDescription())));
     }
 
+    @Test
+    @DisplayName("The image must be served with its content type, validators and cache policy")
+    void getImage() throws Exception {
+        Mockito.when(service.getResource(1L, null)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(IMAGE_PNG))
+                .andExpect(content().bytes(IMAGE_BYTES))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+    }
+
+    @Test
+    @DisplayName("The requested derivative size must be passed to the service")
+    void getImage_Thumbnail() throws Exception {
+        Mockito.when(service.getResource(1L, ImageSize.THUMB)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .param("size", "thumb"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE_BYTES));
+    }
+
+    @Test
+    @DisplayName("An unknown derivative size must be rejected")
+    void getImage_InvalidSize() throws Exception {
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .param("size", "huge"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("When the client already has the current image, 304 must be returned without a body")
+    void getImage_NotModified() throws Exception {
+        Mockito.when(service.getResource(1L, null)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @DisplayName("A single byte range must be answered with 206 and the requested slice")
+    void getImage_Range() throws Exception {
+        Mockito.when(service.getResource(1L, null)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(content().bytes(new byte[]{2, 3, 4, 5}));
+    }
+
+    @Test
+    @DisplayName("A range outside of the image must be answered with 416")
+    void getImage_RangeNotSatisfiable() throws Exception {
+        Mockito.when(service.getResource(1L, null)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    @DisplayName("When If-Range does not match the current image, the full image must be returned")
+    void getImage_IfRangeMismatch() throws Exception {
+        Mockito.when(service.getResource(1L, null)).thenReturn(image());
+
+        mockMvc.perform(get("/api/tasks/{id}/image", 1)
+                        .header(HttpHeaders.RANGE, "bytes=2-5")
+                        .header(HttpHeaders.IF_RANGE, "\"old\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE_BYTES));
+    }
+
+    @Test
+    @DisplayName("A task must be returned with its version as ETag, and 304 once the client has it")
+    void findTask_ETag() throws Exception {
+        TaskDTO task = mapper.toDTO(new Task(1L, "Task 1", Status.PENDENTE, null, null, 3L));
+        Mockito.when(service.findById(1L)).thenReturn(task);
+
+        mockMvc.perform(get("/api/tasks/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""));
+
+        mockMvc.perform(get("/api/tasks/{id}", 1)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @DisplayName("The If-Match version must be enforced on update and the new version returned as ETag")
+    void updateTask_IfMatch() throws Exception {
+        TaskDTO task = mapper.toDTO(new Task(1L, "Changed", Status.PENDENTE, null, null, 4L));
+        Mockito.when(service.updateTask(Mockito.any(), Mockito.eq(1L), Mockito.any(), Mockito.eq(3L)))
+                .thenReturn(task);
+
+        mockMvc.perform(patch("/api/tasks/{id}", 1)
+                        .param("description", "Changed")
+                        .header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.version", is(4)));
+    }
+
+    @Test
+    @DisplayName("When the task changed since the If-Match version, 412 must be returned")
+    void updateTask_PreconditionFailed() throws Exception {
+        Mockito.when(service.updateTask(Mockito.any(), Mockito.eq(1L), Mockito.any(), Mockito.eq(3L)))
+                .thenThrow(new PreconditionFailedException());
+
+        mockMvc.perform(patch("/api/tasks/{id}", 1)
+                        .param("description", "Changed")
+                        .header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @DisplayName("A weak If-Match validator can never match")
+    void updateTask_WeakIfMatch() throws Exception {
+        mockMvc.perform(patch("/api/tasks/{id}", 1)
+                        .param("description", "Changed")
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        Mockito.verifyNoInteractions(service);
+    }
+
     @Test
     @DisplayName("When registering a task with invalid data, it must return errors")
     void invalidRegistration() throws Exception {
@@ -123,6 +454,15 @@ class TasksControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    @DisplayName("Tasks must be deleted in bulk by status")
+    void removeByStatus() throws Exception {
+        mockMvc.perform(delete("/api/tasks").param("status", "FINALIZADA"))
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(service).deleteByStatus(Status.FINALIZADA);
+    }
+
     @Test
     @DisplayName("When trying to update a task with invalid data, it should return errors")
     void invalidTaskUpdate() throws Exception {
@@ -133,4 +473,53 @@ class TasksControllerTest {
                         .contentType(APPLICATION_JSON))
                 .andExpect(status().isBadRequest());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("A JSON array of tasks must be created in bulk")
+    void saveTasks() throws Exception {
+        TaskDTO created = mapper.toDTO(new Task(1L, "Task 1", Status.PENDENTE, null));
+        Mockito.when(batchService.saveAll(Mockito.anyList())).thenReturn(List.of(created));
+
+        mockMvc.perform(post("/api/tasks/batch")
+                        .content("[{\"description\": \"Task 1\"}]")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(1)));
+    }
+
+    @Test
+    @DisplayName("When one of the tasks in a bulk request is invalid, nothing must be created")
+    void saveTasks_Invalid() throws Exception {
+        mockMvc.perform(post("/api/tasks/batch")
+                        .content("[{\"description\": \"Task 1\"}, {\"description\": \"\"}]")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verifyNoInteractions(batchService);
+    }
+
+    @Test
+    @DisplayName("A JSON array of partial tasks must be updated in bulk")
+    void updateTasks() throws Exception {
+        TaskDTO updated = mapper.toDTO(new Task(1L, "Task 1", Status.FINALIZADA, null));
+        Mockito.when(batchService.updateAll(Mockito.anyList())).thenReturn(List.of(updated));
+
+        mockMvc.perform(patch("/api/tasks/batch")
+                        .content("[{\"id\": 1, \"description\": \"Task 1\", \"status\": \"FINALIZADA\"}]")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("FINALIZADA")));
+    }
+
+    @Test
+    @DisplayName("A JSON array of ids must be deleted in bulk")
+    void removeTasks() throws Exception {
+        mockMvc.perform(delete("/api/tasks/batch")
+                        .content("[1, 2, 3]")
+                        .contentType(APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+
+        Mockito.verify(batchService).deleteAll(List.of(1L, 2L, 3L));
+    }
+}
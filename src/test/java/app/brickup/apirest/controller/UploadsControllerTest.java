@@ -0,0 +1,113 @@
+package app.brickup.apirest.controller;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.UploadDTO;
+import app.brickup.apirest.exceptions.InvalidUploadException;
+import app.brickup.apirest.exceptions.TooManyUploadsException;
+import app.brickup.apirest.exceptions.UploadNotFoundException;
+import app.brickup.apirest.service.UploadService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_OCTET_STREAM;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(UploadsController.class)
+class UploadsControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private UploadService service;
+
+    @Test
+    @DisplayName("Creating an upload must return its location and the ranges received so far")
+    void create() throws Exception {
+        Mockito.when(service.create(1000)).thenReturn(new UploadDTO("abc", 1000, 0, List.of()));
+
+        mockMvc.perform(post("/api/uploads").param("size", "1000"))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(HttpHeaders.LOCATION, "/api/uploads/abc"))
+                .andExpect(jsonPath("$.size", is(1000)))
+                .andExpect(jsonPath("$.ranges", is(empty())));
+    }
+
+    @Test
+    @DisplayName("Creating an upload beyond the session limits must answer 503 with Retry-After")
+    void create_TooManyUploads() throws Exception {
+        Mockito.when(service.create(1000)).thenThrow(new TooManyUploadsException());
+
+        mockMvc.perform(post("/api/uploads").param("size", "1000"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER))
+                .andExpect(content().string("Too many uploads in progress!"));
+    }
+
+    @Test
+    @DisplayName("A chunk must be passed to the service with its Content-Range")
+    void writeChunk() throws Exception {
+        Mockito.when(service.write(Mockito.eq("abc"), Mockito.eq("bytes 0-3/1000"), Mockito.any()))
+                .thenReturn(new UploadDTO("abc", 1000, 4, List.of(new UploadDTO.Range(0, 4))));
+
+        mockMvc.perform(put("/api/uploads/abc")
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes 0-3/1000")
+                        .contentType(APPLICATION_OCTET_STREAM)
+                        .content(new byte[]{1, 2, 3, 4}))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received", is(4)))
+                .andExpect(jsonPath("$.ranges[0].end", is(4)));
+    }
+
+    @Test
+    @DisplayName("Invalid chunks must be rejected and unknown uploads reported as not found")
+    void writeChunk_Errors() throws Exception {
+        Mockito.when(service.write(Mockito.eq("abc"), Mockito.any(), Mockito.any()))
+                .thenThrow(new InvalidUploadException("Invalid Content-Range!"));
+        Mockito.when(service.status("missing")).thenThrow(UploadNotFoundException.class);
+
+        mockMvc.perform(put("/api/uploads/abc")
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes 9-0/1000")
+                        .contentType(APPLICATION_OCTET_STREAM)
+                        .content(new byte[1]))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid Content-Range!"));
+        mockMvc.perform(put("/api/uploads/abc")
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes 0-3/1000")
+                        .contentType(APPLICATION_FORM_URLENCODED)
+                        .content("a=b&c"))
+                .andExpect(status().isUnsupportedMediaType());
+        mockMvc.perform(get("/api/uploads/missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("Completing an upload must attach it under the If-Match version and return the new ETag")
+    void complete() throws Exception {
+        TaskDTO task = new TaskDTO();
+        task.setId(7L);
+        task.setVersion(4L);
+        Mockito.when(service.complete("abc", 7L, 3L)).thenReturn(task);
+
+        mockMvc.perform(post("/api/uploads/abc/complete").param("taskId", "7").header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(jsonPath("$.id", is(7)));
+    }
+}
@@ -0,0 +1,52 @@
+package app.brickup.apirest.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of latencies in nanoseconds. Each client thread records into its own instance; they are merged
+ * once the run is over, so recording never contends.
+ */
+class Latencies {
+    private long[] values = new long[1024];
+    private int count;
+    private long errors;
+
+    void record(long nanos, boolean error) {
+        if (count == values.length) {
+            values = Arrays.copyOf(values, count * 2);
+        }
+        values[count++] = nanos;
+        if (error) {
+            errors++;
+        }
+    }
+
+    void addAll(Latencies other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.values[i], false);
+        }
+        errors += other.errors;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long errors() {
+        return errors;
+    }
+
+    long[] sorted() {
+        long[] sorted = Arrays.copyOf(values, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    static double percentileMillis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
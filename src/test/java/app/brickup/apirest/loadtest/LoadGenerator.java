@@ -0,0 +1,127 @@
+package app.brickup.apirest.loadtest;
+
+import app.brickup.apirest.loadtest.Scenario.Operation;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load generator: each client sends its next request as soon as the previous one completes, picking
+ * the operation from a weighted mix. Before the run it creates {@code seed} tasks with images; results from the
+ * warm-up period are discarded. Prints throughput and latency percentiles per operation.
+ * <p>
+ * Usage: {@code LoadGenerator [--url=http://localhost:8080] [--clients=64] [--duration=60] [--warmup=10]
+ * [--seed=200] [--mix=list=30,get=30,image=20,create=8,patch=8,delete=4]}
+ */
+public class LoadGenerator {
+    static final String DEFAULT_MIX = "list=30,get=30,image=20,create=8,patch=8,delete=4";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int clients = Integer.parseInt(options.getOrDefault("clients", "64"));
+        Duration duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "60")));
+        Duration warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "10")));
+        int seed = Integer.parseInt(options.getOrDefault("seed", "200"));
+        Scenario scenario = new Scenario(url, Scenario.parseMix(options.getOrDefault("mix", DEFAULT_MIX)));
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        for (int i = 0; i < seed; i++) {
+            send(http, scenario, Operation.CREATE, scenario.request(Operation.CREATE));
+        }
+        System.out.printf("Seeded %d tasks, running %d clients for %ds after a %ds warm-up%n",
+                scenario.taskCount(), clients, duration.toSeconds(), warmup.toSeconds());
+
+        long measureFrom = System.nanoTime() + warmup.toNanos();
+        long deadline = measureFrom + duration.toNanos();
+
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<Map<Operation, Latencies>>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            futures.add(pool.submit(() -> run(http, scenario, measureFrom, deadline)));
+        }
+        Map<Operation, Latencies> results = new EnumMap<>(Operation.class);
+        for (Future<Map<Operation, Latencies>> future : futures) {
+            future.get().forEach((operation, latencies) ->
+                    results.computeIfAbsent(operation, o -> new Latencies()).addAll(latencies));
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        report(results, duration);
+    }
+
+    private static Map<Operation, Latencies> run(HttpClient http, Scenario scenario, long measureFrom, long deadline) {
+        Map<Operation, Latencies> results = new EnumMap<>(Operation.class);
+        long now;
+        while ((now = System.nanoTime()) < deadline) {
+            Operation operation = scenario.next();
+            HttpRequest request = scenario.request(operation);
+            if (request == null) {
+                operation = Operation.CREATE;
+                request = scenario.request(operation);
+            }
+
+            boolean ok = send(http, scenario, operation, request);
+            if (now >= measureFrom) {
+                results.computeIfAbsent(operation, o -> new Latencies()).record(System.nanoTime() - now, !ok);
+            }
+        }
+        return results;
+    }
+
+    private static boolean send(HttpClient http, Scenario scenario, Operation operation, HttpRequest request) {
+        try {
+            if (operation == Operation.CREATE) {
+                HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                scenario.completed(operation, response.statusCode(), response.body());
+                return response.statusCode() == 201;
+            }
+            HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() < 400;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void report(Map<Operation, Latencies> results, Duration duration) {
+        Latencies total = new Latencies();
+        System.out.printf("%-8s %9s %7s %9s %9s %9s %9s %9s%n",
+                "op", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        results.forEach((operation, latencies) -> {
+            print(operation.name(), latencies, duration);
+            total.addAll(latencies);
+        });
+        print("TOTAL", total, duration);
+    }
+
+    private static void print(String name, Latencies latencies, Duration duration) {
+        long[] sorted = latencies.sorted();
+        System.out.printf("%-8s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, latencies.count(), latencies.errors(),
+                latencies.count() / (double) duration.toSeconds(),
+                Latencies.percentileMillis(sorted, 0.50), Latencies.percentileMillis(sorted, 0.99),
+                Latencies.percentileMillis(sorted, 0.999), Latencies.percentileMillis(sorted, 1.0));
+    }
+}
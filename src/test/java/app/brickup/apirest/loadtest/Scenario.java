@@ -0,0 +1,180 @@
+package app.brickup.apirest.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The calls the load generator replays, with the same request shapes the API documents: multipart create and
+ * patch, keyset-paginated list, get by id, delete and image download. Ids come from a shared pool seeded before the
+ * run and kept up to date by create and delete.
+ */
+class Scenario {
+    enum Operation {
+        LIST, GET, IMAGE, CREATE, PATCH, DELETE;
+
+        boolean needsTask() {
+            return this != LIST && this != CREATE;
+        }
+    }
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+    private static final String BOUNDARY = "----loadtest-boundary";
+    private static final int IMAGE_VARIANTS = 8;
+
+    private final String baseUrl;
+    private final Map<Operation, Integer> weights;
+    private final int totalWeight;
+    private final List<byte[]> images = new ArrayList<>();
+    private final List<Long> ids = new ArrayList<>();
+
+    Scenario(String baseUrl, Map<Operation, Integer> weights) throws IOException {
+        this.baseUrl = baseUrl;
+        this.weights = weights;
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        Random random = new Random(42);
+        for (int i = 0; i < IMAGE_VARIANTS; i++) {
+            images.add(png(random, 320, 240));
+        }
+    }
+
+    /**
+     * Parses a mix such as {@code list=30,get=30,image=20,create=8,patch=8,delete=4}.
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    Operation next() {
+        int roll = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> weight : weights.entrySet()) {
+            roll -= weight.getValue();
+            if (roll < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    /**
+     * Builds the request for an operation, or returns null when it needs a task and none is left.
+     */
+    HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Long id = null;
+        if (operation.needsTask()) {
+            id = operation == Operation.DELETE ? takeId() : randomId();
+            if (id == null) {
+                return null;
+            }
+        }
+
+        return switch (operation) {
+            case LIST -> get(random.nextBoolean() ? "/api/tasks?limit=50" : "/api/tasks?limit=50&status=PENDENTE");
+            case GET -> get("/api/tasks/" + id);
+            case IMAGE -> get("/api/tasks/" + id + "/image");
+            case CREATE -> multipart("POST", "/api/tasks", "Load test task " + random.nextInt(1_000_000), null,
+                    images.get(random.nextInt(images.size())));
+            case PATCH -> multipart("PATCH", "/api/tasks/" + id, "Updated " + random.nextInt(1_000_000),
+                    random.nextBoolean() ? "FINALIZADA" : "PENDENTE", null);
+            case DELETE -> HttpRequest.newBuilder(URI.create(baseUrl + "/api/tasks/" + id)).DELETE().build();
+        };
+    }
+
+    /**
+     * Keeps the id pool in step with what the server has: ids of created tasks are added for later calls.
+     */
+    void completed(Operation operation, int status, String body) {
+        if (operation == Operation.CREATE && status == 201) {
+            Matcher matcher = ID.matcher(body);
+            if (matcher.find()) {
+                addId(Long.parseLong(matcher.group(1)));
+            }
+        }
+    }
+
+    synchronized void addId(Long id) {
+        ids.add(id);
+    }
+
+    synchronized int taskCount() {
+        return ids.size();
+    }
+
+    private synchronized Long randomId() {
+        return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+
+    private synchronized Long takeId() {
+        if (ids.isEmpty()) {
+            return null;
+        }
+        // Swap with the last element so removal does not shift the list.
+        int index = ThreadLocalRandom.current().nextInt(ids.size());
+        Long id = ids.get(index);
+        ids.set(index, ids.get(ids.size() - 1));
+        ids.remove(ids.size() - 1);
+        return id;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest multipart(String method, String path, String description, String status, byte[] image) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        field(body, "description", description);
+        if (status != null) {
+            field(body, "status", status);
+        }
+        if (image != null) {
+            write(body, "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"image\"; filename=\"image.png\"\r\n"
+                    + "Content-Type: image/png\r\n\r\n");
+            body.writeBytes(image);
+            write(body, "\r\n");
+        }
+        write(body, "--" + BOUNDARY + "--\r\n");
+
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private static void field(ByteArrayOutputStream body, String name, String value) {
+        write(body, "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n");
+    }
+
+    private static void write(ByteArrayOutputStream body, String text) {
+        body.writeBytes(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] png(Random random, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
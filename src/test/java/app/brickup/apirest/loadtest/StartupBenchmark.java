@@ -0,0 +1,160 @@
+package app.brickup.apirest.loadtest;
+
+import app.brickup.apirest.loadtest.Scenario.Operation;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts the command after {@code --} several times and measures how long each instance takes to serve its first
+ * request. After launching, it polls {@code /actuator/health/readiness} like a load balancer would, then sends one
+ * page request and {@code requests} more to show how fast the instance is while still cold. Prints each run and
+ * the median of all runs.
+ * <p>
+ * With {@code --seed}, the command is started once beforehand to create that many tasks with images, which only
+ * makes sense with a database that outlives the process.
+ * <p>
+ * Usage: {@code StartupBenchmark [--url=http://localhost:8080] [--runs=5] [--requests=200] [--seed=0]
+ * [--name=jar] [--log=target/startup.log] -- java -jar ...}
+ */
+public class StartupBenchmark {
+    private static final Duration START_TIMEOUT = Duration.ofMinutes(3);
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator < 0 || separator == args.length - 1) {
+            throw new IllegalArgumentException("Expected the command to start after --");
+        }
+        Map<String, String> options = new HashMap<>();
+        for (String arg : Arrays.copyOf(args, separator)) {
+            String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(parts[0], parts.length > 1 ? parts[1] : "");
+        }
+        List<String> command = List.of(Arrays.copyOfRange(args, separator + 1, args.length));
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+        int requests = Integer.parseInt(options.getOrDefault("requests", "200"));
+        int seed = Integer.parseInt(options.getOrDefault("seed", "0"));
+        String name = options.getOrDefault("name", "startup");
+        File log = new File(options.getOrDefault("log", "target/startup-" + name + ".log"));
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+
+        if (seed > 0) {
+            Process process = start(command, log);
+            try {
+                awaitReady(http, url, process);
+                Scenario scenario = new Scenario(url, Scenario.parseMix(LoadGenerator.DEFAULT_MIX));
+                for (int i = 0; i < seed; i++) {
+                    HttpResponse<String> response = http.send(scenario.request(Operation.CREATE),
+                            HttpResponse.BodyHandlers.ofString());
+                    scenario.completed(Operation.CREATE, response.statusCode(), response.body());
+                }
+                System.out.printf("Seeded %d tasks%n", scenario.taskCount());
+            } finally {
+                stop(process);
+            }
+        }
+
+        HttpRequest page = HttpRequest.newBuilder(URI.create(url + "/api/tasks?limit=50")).build();
+        List<Run> results = new ArrayList<>();
+        System.out.printf("%-16s %3s %10s %10s %10s %10s%n", "command", "run", "ready ms", "first ms", "p50 ms",
+                "p99 ms");
+        for (int run = 1; run <= runs; run++) {
+            long launched = System.nanoTime();
+            Process process = start(command, log);
+            try {
+                awaitReady(http, url, process);
+                long ready = System.nanoTime();
+                http.send(page, HttpResponse.BodyHandlers.discarding());
+                long first = System.nanoTime();
+
+                Latencies latencies = new Latencies();
+                for (int i = 0; i < requests; i++) {
+                    long start = System.nanoTime();
+                    int status = http.send(page, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    latencies.record(System.nanoTime() - start, status >= 400);
+                }
+                long[] sorted = latencies.sorted();
+                Run result = new Run((ready - launched) / 1_000_000.0, (first - ready) / 1_000_000.0,
+                        Latencies.percentileMillis(sorted, 0.50), Latencies.percentileMillis(sorted, 0.99));
+                results.add(result);
+                print(name, Integer.toString(run), result);
+            } finally {
+                stop(process);
+            }
+        }
+        print(name, "med", Run.median(results));
+    }
+
+    private static Process start(List<String> command, File log) throws Exception {
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+                .start();
+    }
+
+    private static void awaitReady(HttpClient http, String url, Process process) throws Exception {
+        HttpRequest readiness = HttpRequest.newBuilder(URI.create(url + "/actuator/health/readiness"))
+                .timeout(Duration.ofSeconds(1))
+                .build();
+        long deadline = System.nanoTime() + START_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("The command exited with " + process.exitValue());
+            }
+            try {
+                if (http.send(readiness, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet.
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Not ready after " + START_TIMEOUT);
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private static void print(String name, String run, Run result) {
+        System.out.printf("%-16s %3s %10.0f %10.1f %10.1f %10.1f%n", name, run, result.readyMillis,
+                result.firstMillis, result.p50Millis, result.p99Millis);
+    }
+
+    /**
+     * Time from launch to readiness, latency of the first request, then percentiles of the following ones.
+     */
+    private record Run(double readyMillis, double firstMillis, double p50Millis, double p99Millis) {
+        static Run median(List<Run> runs) {
+            return new Run(median(runs.stream().mapToDouble(Run::readyMillis).toArray()),
+                    median(runs.stream().mapToDouble(Run::firstMillis).toArray()),
+                    median(runs.stream().mapToDouble(Run::p50Millis).toArray()),
+                    median(runs.stream().mapToDouble(Run::p99Millis).toArray()));
+        }
+
+        private static double median(double[] values) {
+            Arrays.sort(values);
+            return values[values.length / 2];
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package app.brickup.apirest.mapper;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskMapperTest {
+    private final TaskMapper mapper = new TaskMapper();
+
+    @Test
+    @DisplayName("Every entity field must be copied to the DTO")
+    void toDTO() {
+        Task task = new Task(1L, "Task 1", Status.FINALIZADA, "www.google.com");
+
+        TaskDTO dto = mapper.toDTO(task);
+
+        assertEquals(1L, dto.getId());
+        assertEquals("Task 1", dto.getDescription());
+        assertEquals(Status.FINALIZADA, dto.getStatus());
+        assertEquals("www.google.com", dto.getLinkImage());
+    }
+
+    @Test
+    @DisplayName("The id and image link sent by the client must not reach a new entity")
+    void toEntity() {
+        TaskDTO dto = mapper.toDTO(new Task(1L, "Task 1", Status.PENDENTE, "/etc/passwd"));
+
+        Task task = mapper.toEntity(dto);
+
+        assertNull(task.getId());
+        assertNull(task.getLinkImage());
+        assertEquals("Task 1", task.getDescription());
+        assertEquals(Status.PENDENTE, task.getStatus());
+    }
+
+    @Test
+    @DisplayName("Only the fields present in the request must be merged")
+    void merge() {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Changed");
+
+        mapper.merge(dto, task);
+
+        assertEquals(1L, task.getId());
+        assertEquals("Changed", task.getDescription());
+        assertEquals(Status.PENDENTE, task.getStatus());
+        assertEquals("www.google.com", task.getLinkImage());
+    }
+}
@@ -0,0 +1,192 @@
+package app.brickup.apirest.repository;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A mock repository stands in for all three shards and answers with the shard selected when it is called.
+ */
+@ExtendWith(MockitoExtension.class)
+class ShardRoutingInterceptorTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final TaskIdGenerator ids = new TaskIdGenerator(0);
+    private final TaskShards shards = new TaskShards(3, executor);
+
+    @Mock
+    private TaskRepository target;
+
+    private TaskRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.addInterface(TaskRepository.class);
+        factory.addAdvice(new ShardRoutingInterceptor(shards, ids));
+        repository = (TaskRepository) factory.getProxy();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("New tasks must get ids on the shards in turn and be saved on the shard their id names")
+    void save() {
+        List<Integer> savedOn = Collections.synchronizedList(new ArrayList<>());
+        Mockito.when(target.save(Mockito.any(Task.class))).thenAnswer(invocation -> {
+            savedOn.add(TaskShards.current());
+            return invocation.getArgument(0);
+        });
+
+        List<Task> tasks = List.of(task(), task(), task(), task());
+        tasks.forEach(repository::save);
+
+        assertEquals(List.of(0, 1, 2, 0), savedOn);
+        assertEquals(savedOn, tasks.stream().map(task -> TaskIdGenerator.shardOf(task.getId())).toList());
+        assertEquals(2, shards.on(2, () -> TaskIdGenerator.shardOf(repository.save(task()).getId())));
+    }
+
+    @Test
+    @DisplayName("A saveAll must put all its new tasks on one shard")
+    void saveAll() {
+        Mockito.when(target.saveAll(Mockito.anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<Task> tasks = List.of(task(), task(), task());
+        repository.saveAll(tasks);
+
+        assertEquals(1, tasks.stream().map(task -> TaskIdGenerator.shardOf(task.getId())).distinct().count());
+        Mockito.verify(target).saveAll(tasks);
+    }
+
+    @Test
+    @DisplayName("Calls by id must go to the shard of the id, and ids of shards that are not configured find no task")
+    void findById() {
+        Mockito.when(target.findById(Mockito.anyLong())).thenAnswer(invocation ->
+                Optional.of(new Task(invocation.getArgument(0), "On " + TaskShards.current(), Status.PENDENTE, null)));
+
+        assertEquals("On 2", repository.findById(ids.next(2)).orElseThrow().getDescription());
+        assertEquals("On 0", repository.findById(42L).orElseThrow().getDescription());
+        assertTrue(repository.findById(ids.next(7)).isEmpty());
+        assertFalse(repository.existsById(ids.next(7)));
+        assertThrows(EntityNotFoundException.class, () -> repository.getReferenceById(ids.next(7)));
+        assertThrows(EntityNotFoundException.class,
+                () -> repository.save(new Task(ids.next(7), "Elsewhere", Status.PENDENTE, null)));
+        assertThrows(IllegalStateException.class, () -> shards.on(1, () -> repository.findById(ids.next(2))));
+    }
+
+    @Test
+    @DisplayName("Pages must be read from every shard and merged in id order up to the limit")
+    void findPage() {
+        Mockito.when(target.findByIdGreaterThanOrderByIdAsc(Mockito.eq(0L), Mockito.eq(Limit.of(3))))
+                .thenAnswer(invocation -> {
+                    int shard = TaskShards.current();
+                    return List.of(new Task(10L + shard, null, Status.PENDENTE, null),
+                            new Task(20L + shard, null, Status.PENDENTE, null));
+                });
+
+        List<Task> page = repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(3));
+
+        assertEquals(List.of(10L, 11L, 12L), page.stream().map(Task::getId).toList());
+    }
+
+    @Test
+    @DisplayName("Searches must be merged by relevance and then id, with the offset applied after merging")
+    void search() {
+        Mockito.when(target.search("milk", null, 0, 3)).thenAnswer(invocation -> {
+            int shard = TaskShards.current();
+            return List.of(new TaskRepositoryCustom.Match(new Task(100L + shard, null, null, null), shard),
+                    new TaskRepositoryCustom.Match(new Task(200L + shard, null, null, null), 0.5));
+        });
+
+        List<TaskRepositoryCustom.Match> matches = repository.search("milk", null, 1, 2);
+
+        assertEquals(List.of(101L, 200L), matches.stream().map(match -> match.task().getId()).toList());
+    }
+
+    @Test
+    @DisplayName("Counts must be summed over every shard")
+    void countByStatus() {
+        Mockito.when(target.countByStatus()).thenAnswer(invocation -> List.<Object[]>of(
+                new Object[]{Status.PENDENTE, 1L + TaskShards.current()},
+                new Object[]{Status.FINALIZADA, 1L}));
+
+        List<Object[]> counts = repository.countByStatus();
+
+        assertArrayEquals(new Object[]{Status.PENDENTE, 6L}, counts.get(0));
+        assertArrayEquals(new Object[]{Status.FINALIZADA, 3L}, counts.get(1));
+    }
+
+    @Test
+    @DisplayName("Calls over every shard must be refused inside a transaction, and run on the selected shard alone")
+    void everyShard_InTransaction() {
+        Mockito.when(target.countByStatus()).thenReturn(List.of());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertThrows(IllegalStateException.class, repository::countByStatus);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        shards.on(1, repository::countByStatus);
+
+        Mockito.verify(target).countByStatus();
+    }
+
+    @Test
+    @DisplayName("With a single shard, new tasks must get their ids and every call go straight through")
+    void singleShard() {
+        ProxyFactory factory = new ProxyFactory(target);
+        factory.addInterface(TaskRepository.class);
+        factory.addAdvice(new ShardRoutingInterceptor(new TaskShards(1, executor), shard -> 42L));
+        TaskRepository single = (TaskRepository) factory.getProxy();
+        Mockito.when(target.save(Mockito.any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertEquals(42L, single.save(task()).getId());
+        single.countByStatus();
+
+        Mockito.verify(target).countByStatus();
+    }
+
+    @Test
+    @DisplayName("Repository methods without a routing rule must be refused up front, and streams off a selected shard")
+    void routingRules() {
+        assertDoesNotThrow(() -> ShardRoutingInterceptor.requireRoutes(TaskRepository.class));
+        IllegalStateException unrouted = assertThrows(IllegalStateException.class,
+                () -> ShardRoutingInterceptor.requireRoutes(Unrouted.class));
+        assertTrue(unrouted.getMessage().contains("[findByDescription]"));
+
+        assertThrows(UnsupportedOperationException.class, repository::streamAll);
+        shards.on(1, repository::streamAll);
+        Mockito.verify(target).streamAll();
+    }
+
+    private interface Unrouted extends TaskRepository {
+        List<Task> findByDescription(String description);
+    }
+
+    private static Task task() {
+        return new Task(null, "Task", Status.PENDENTE, null);
+    }
+}
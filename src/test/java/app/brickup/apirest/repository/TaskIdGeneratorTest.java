@@ -0,0 +1,80 @@
+package app.brickup.apirest.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskIdGeneratorTest {
+    // 2025-01-01T00:00:00Z
+    private static final long NOW = 1_735_689_600_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+
+    @Test
+    @DisplayName("Ids must be unique, increasing on each shard, exact in JavaScript and name their shard")
+    void next() {
+        TaskIdGenerator generator = new TaskIdGenerator(3, clock::get);
+        Set<Long> ids = new HashSet<>();
+        long[] previous = new long[5];
+
+        for (int i = 0; i < 3000; i++) {
+            if (i % 200 == 0) {
+                clock.addAndGet(TaskIdGenerator.TICK_MILLIS);
+            }
+            int shard = i % 5;
+            long id = generator.next(shard);
+            assertTrue(id > previous[shard]);
+            assertTrue(id > TaskIdGenerator.maxLegacyId() && id < 1L << 53);
+            assertEquals(shard, TaskIdGenerator.shardOf(id));
+            assertTrue(ids.add(id));
+            previous[shard] = id;
+        }
+    }
+
+    @Test
+    @DisplayName("Two nodes must never hand out the same id within the same millisecond")
+    void next_Nodes() {
+        TaskIdGenerator first = new TaskIdGenerator(1, clock::get);
+        TaskIdGenerator second = new TaskIdGenerator(2, clock::get);
+
+        assertNotEquals(first.next(0), second.next(0));
+        assertThrows(IllegalArgumentException.class, () -> new TaskIdGenerator(TaskIdGenerator.MAX_NODES));
+        assertThrows(IllegalArgumentException.class, () -> first.next(TaskIdGenerator.MAX_SHARDS));
+    }
+
+    @Test
+    @DisplayName("Once a tick's ids run out, or the clock goes back, ids must keep increasing")
+    void next_ClockStalls() {
+        TaskIdGenerator generator = new TaskIdGenerator(0, () -> clock.getAndIncrement() / 2000);
+        clock.set(NOW * 2000);
+        long previous = 0;
+
+        for (int i = 0; i < 1500; i++) {
+            long id = generator.next(0);
+            assertTrue(id > previous);
+            previous = id;
+        }
+
+        TaskIdGenerator back = new TaskIdGenerator(0, clock::get);
+        clock.set(NOW + 5_000);
+        long before = back.next(0);
+        clock.set(NOW + 4_000);
+        assertTrue(back.next(0) > before);
+
+        clock.set(TaskIdGenerator.EPOCH + 1_000);
+        assertThrows(IllegalStateException.class, () -> new TaskIdGenerator(0, clock::get).next(0));
+    }
+
+    @Test
+    @DisplayName("Ids handed out by tasks_seq must stay on the first shard")
+    void shardOf_Legacy() {
+        assertEquals(0, TaskIdGenerator.shardOf(1));
+        assertEquals(0, TaskIdGenerator.shardOf(TaskIdGenerator.maxLegacyId()));
+        assertEquals(0, TaskIdGenerator.shardOf((5L << 24) | (1 << 12)));
+    }
+}
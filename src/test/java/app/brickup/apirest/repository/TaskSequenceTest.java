@@ -0,0 +1,71 @@
+package app.brickup.apirest.repository;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class TaskSequenceTest {
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("Ids must be handed out from blocks of tasks_seq, the next block taken once half of one is used")
+    void next() {
+        Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class))).thenReturn(7L, 300L);
+        TaskSequence sequence = new TaskSequence(jdbcTemplate, transactionManager);
+
+        LongStream.range(0, TaskSequence.BLOCK_SIZE / 2 - 1).forEach(i -> sequence.next(0));
+        Mockito.verify(jdbcTemplate, Mockito.times(1)).queryForObject(Mockito.anyString(), Mockito.eq(Long.class));
+        sequence.next(0);
+        Mockito.verify(jdbcTemplate, Mockito.times(2)).queryForObject(Mockito.anyString(), Mockito.eq(Long.class));
+
+        long[] ids = LongStream.range(0, TaskSequence.BLOCK_SIZE / 2 + 1).map(i -> sequence.next(0)).toArray();
+
+        assertEquals(7L + TaskSequence.BLOCK_SIZE / 2, ids[0]);
+        assertEquals(7L + TaskSequence.BLOCK_SIZE - 1, ids[TaskSequence.BLOCK_SIZE / 2 - 1]);
+        assertEquals(300L, ids[TaskSequence.BLOCK_SIZE / 2]);
+        Mockito.verify(jdbcTemplate).update("UPDATE tasks_seq SET next_val = ?", 7L + TaskSequence.BLOCK_SIZE);
+        Mockito.verify(jdbcTemplate).update("UPDATE tasks_seq SET next_val = ?", 300L + TaskSequence.BLOCK_SIZE);
+    }
+
+    @Test
+    @DisplayName("Callers running at once must all get different ids")
+    void next_Concurrent() throws Exception {
+        AtomicLong table = new AtomicLong(1);
+        Mockito.when(jdbcTemplate.queryForObject(Mockito.anyString(), Mockito.eq(Long.class)))
+                .thenAnswer(invocation -> table.getAndAdd(TaskSequence.BLOCK_SIZE));
+        TaskSequence sequence = new TaskSequence(jdbcTemplate, transactionManager);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> ids = executor.invokeAll(Collections.nCopies(2000, () -> sequence.next(0)));
+            Set<Long> unique = new HashSet<>();
+            for (Future<Long> id : ids) {
+                assertTrue(unique.add(id.get()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
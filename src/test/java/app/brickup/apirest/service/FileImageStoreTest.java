@@ -0,0 +1,181 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileImageStoreTest {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0};
+
+    @TempDir
+    private Path root;
+
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(root.toString());
+    }
+
+    @Test
+    @DisplayName("An image must be stored under its content hash with the detected content type")
+    void store() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", "photo.jpg", "image/jpeg", PNG_HEADER));
+
+        Path path = Path.of(stored.getLocation());
+        assertEquals(stored.getHash(), path.getFileName().toString());
+        assertEquals(PNG_HEADER.length, stored.getSize());
+        assertEquals("image/png", stored.getContentType());
+        assertArrayEquals(PNG_HEADER, Files.readAllBytes(path));
+    }
+
+    @Test
+    @DisplayName("Anything but a recognised raster image must be stored as octet-stream, whatever type was declared")
+    void store_NotAnImage() throws IOException {
+        byte[] html = "<html><script>alert(1)</script></html>".getBytes();
+        byte[] svg = "<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes();
+        byte[] webp = {'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P'};
+
+        assertEquals("application/octet-stream",
+                store.store(new MockMultipartFile("image", "a.html", "text/html", html)).getContentType());
+        assertEquals("application/octet-stream",
+                store.store(new MockMultipartFile("image", "a.svg", "image/svg+xml", svg)).getContentType());
+        assertEquals("image/webp",
+                store.store(new MockMultipartFile("image", "a.webp", "text/plain", webp)).getContentType());
+    }
+
+    @Test
+    @DisplayName("Identical images must be kept on disk only once, even with different file names")
+    void store_Deduplicated() throws IOException {
+        StoredImage first = store.store(new MockMultipartFile("image", "a.png", "image/png", PNG_HEADER));
+        StoredImage second = store.store(new MockMultipartFile("image", "b.png", "image/png", PNG_HEADER));
+
+        assertEquals(first.getLocation(), second.getLocation());
+        assertEquals(1, countFiles());
+    }
+
+    @Test
+    @DisplayName("Different images with the same file name must not overwrite each other")
+    void store_SameFileName() throws IOException {
+        StoredImage first = store.store(new MockMultipartFile("image", "photo.png", "image/png", "first".getBytes()));
+        StoredImage second = store.store(new MockMultipartFile("image", "photo.png", "image/png", "second".getBytes()));
+
+        assertNotEquals(first.getLocation(), second.getLocation());
+        assertEquals("first", Files.readString(Path.of(first.getLocation())));
+        assertEquals("second", Files.readString(Path.of(second.getLocation())));
+    }
+
+    @Test
+    @DisplayName("Concurrent uploads must each get the location of their own image")
+    void store_Concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<StoredImage>> uploads = IntStream.range(0, 64)
+                    .mapToObj(i -> (Callable<StoredImage>) () ->
+                            store.store(new MockMultipartFile("image", "same.png", "image/png", ("image " + (i % 16)).getBytes())))
+                    .toList();
+            List<Future<StoredImage>> results = executor.invokeAll(uploads);
+
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("image " + (i % 16), Files.readString(Path.of(results.get(i).get().getLocation())));
+            }
+            assertEquals(16, countFiles());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("A stored image must be opened with its hash as a strong ETag")
+    void open() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", PNG_HEADER));
+
+        ImageResource image = store.open(stored.getLocation(), stored.getContentType());
+
+        assertEquals("\"" + stored.getHash() + "\"", image.getETag());
+        assertEquals(PNG_HEADER.length, image.getLength());
+        assertEquals("image/png", image.getContentType());
+    }
+
+    @Test
+    @DisplayName("Images uploaded before content addressing must get a size and mtime ETag")
+    void open_LegacyFile() throws IOException {
+        Path legacy = Files.write(root.resolve("photo.jpg"), "12345".getBytes());
+
+        ImageResource image = store.open(legacy.toString(), null);
+
+        assertTrue(image.getETag().startsWith("\"5-"));
+        assertEquals("image/jpeg", image.getContentType());
+    }
+
+    @Test
+    @DisplayName("When there is no image, a file not found exception must be thrown")
+    void open_Missing() {
+        assertThrows(FileNotFoundException.class, () -> store.open(null, null));
+        assertThrows(FileNotFoundException.class, () -> store.open(root.resolve("gone").toString(), null));
+    }
+
+    @Test
+    @DisplayName("Storing an image that already exists must refresh its modification time")
+    void store_DeduplicatedTouchesFile() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", PNG_HEADER));
+        Path path = Path.of(stored.getLocation());
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+
+        store.store(new MockMultipartFile("image", PNG_HEADER));
+
+        assertTrue(Files.getLastModifiedTime(path).toInstant().isAfter(Instant.now().minus(Duration.ofMinutes(1))));
+    }
+
+    @Test
+    @DisplayName("A file modified after the cutoff must be kept, an older one deleted")
+    void deleteIfUnchangedSince() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", PNG_HEADER));
+        Path path = Path.of(stored.getLocation());
+        FileTime cutoff = FileTime.from(Instant.now().minus(Duration.ofHours(1)));
+
+        assertEquals(-1, store.deleteIfUnchangedSince(path, cutoff));
+        assertTrue(Files.exists(path));
+
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        assertEquals(PNG_HEADER.length, store.deleteIfUnchangedSince(path, cutoff));
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    @DisplayName("Derivatives must belong to the image they were resized from")
+    void ownerLocation() {
+        Path original = root.resolve("ab").resolve("ab".repeat(32));
+
+        assertEquals(original.toString(), store.ownerLocation(original));
+        assertEquals(original.toString(), store.ownerLocation(original.resolveSibling("ab".repeat(32) + "-thumb.jpg")));
+        assertNull(store.ownerLocation(root.resolve("photo.jpg")));
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+}
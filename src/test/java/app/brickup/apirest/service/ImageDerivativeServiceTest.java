@@ -0,0 +1,91 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.model.ImageSize;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageDerivativeServiceTest {
+    @TempDir
+    private Path root;
+
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(root.toString());
+    }
+
+    @Test
+    @DisplayName("Thumbnail and medium copies must be generated within their size bounds")
+    void generate() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", png(2000, 1000)));
+        ImageDerivativeService service = new ImageDerivativeService(store, new SyncTaskExecutor());
+
+        service.generateAsync(stored.getLocation());
+
+        BufferedImage thumb = ImageIO.read(store.derivativePath(stored.getLocation(), ImageSize.THUMB).toFile());
+        BufferedImage medium = ImageIO.read(store.derivativePath(stored.getLocation(), ImageSize.MEDIUM).toFile());
+        assertEquals(160, thumb.getWidth());
+        assertEquals(80, thumb.getHeight());
+        assertEquals(640, medium.getWidth());
+        assertEquals(320, medium.getHeight());
+
+        ImageResource resource = store.openDerivative(stored.getLocation(), ImageSize.THUMB);
+        assertEquals("image/jpeg", resource.getContentType());
+        assertEquals("\"" + stored.getHash() + "-thumb\"", resource.getETag());
+    }
+
+    @Test
+    @DisplayName("Images already smaller than a derivative size must not be upscaled")
+    void generate_SmallImage() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", png(300, 200)));
+        ImageDerivativeService service = new ImageDerivativeService(store, new SyncTaskExecutor());
+
+        service.generateAsync(stored.getLocation());
+
+        assertTrue(Files.exists(store.derivativePath(stored.getLocation(), ImageSize.THUMB)));
+        assertNull(store.openDerivative(stored.getLocation(), ImageSize.MEDIUM));
+    }
+
+    @Test
+    @DisplayName("Files that are not images must be ignored")
+    void generate_NotAnImage() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", "not an image".getBytes()));
+        ImageDerivativeService service = new ImageDerivativeService(store, new SyncTaskExecutor());
+
+        assertDoesNotThrow(() -> service.generateAsync(stored.getLocation()));
+        assertNull(store.openDerivative(stored.getLocation(), ImageSize.THUMB));
+    }
+
+    @Test
+    @DisplayName("When the executor is saturated, the upload must not fail")
+    void generate_Rejected() {
+        ImageDerivativeService service = new ImageDerivativeService(store, task -> {
+            throw new TaskRejectedException("full");
+        });
+
+        assertDoesNotThrow(() -> service.generateAsync(root.resolve("ab").resolve("a".repeat(64)).toString()));
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", out);
+        return out.toByteArray();
+    }
+}
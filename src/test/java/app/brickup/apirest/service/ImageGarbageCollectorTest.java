@@ -0,0 +1,108 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageGarbageCollectorTest {
+    @TempDir
+    private Path root;
+
+    @Mock
+    private TaskRepository repository;
+
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(root.toString());
+    }
+
+    @Test
+    @DisplayName("Unreferenced images and their derivatives must be deleted, referenced ones kept")
+    void collect() throws IOException {
+        Path orphan = old(stored("orphan"));
+        Path thumb = old(Files.writeString(orphan.resolveSibling(orphan.getFileName() + "-thumb.jpg"), "thumb"));
+        Path linked = old(stored("linked"));
+        Mockito.when(repository.findLinkedImages(Mockito.anyCollection())).thenReturn(List.of(linked.toString()));
+
+        assertEquals(2, collector(100).collectBatch());
+
+        assertFalse(Files.exists(orphan));
+        assertFalse(Files.exists(thumb));
+        assertTrue(Files.exists(linked));
+    }
+
+    @Test
+    @DisplayName("Files within the grace period must not be deleted or even looked up")
+    void collect_GracePeriod() throws IOException {
+        Path recent = stored("recent");
+
+        assertEquals(0, collector(100).collectBatch());
+
+        assertTrue(Files.exists(recent));
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    @Test
+    @DisplayName("Temporary files left by interrupted writes must be deleted once stale")
+    void collect_StaleTemporaryFiles() throws IOException {
+        Path part = old(Files.writeString(Files.createDirectories(store.tempDirectory()).resolve("upload-1.part"), "x"));
+
+        assertEquals(1, collector(100).collectBatch());
+
+        assertFalse(Files.exists(part));
+    }
+
+    @Test
+    @DisplayName("Each run must examine at most one batch and resume where the previous one stopped")
+    void collect_Incremental() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            old(stored("image " + i));
+        }
+        Mockito.when(repository.findLinkedImages(Mockito.anyCollection())).thenReturn(List.of());
+        ImageGarbageCollector collector = collector(2);
+
+        assertEquals(2, collector.collectBatch());
+        assertEquals(2, collector.collectBatch());
+        assertEquals(1, collector.collectBatch());
+        Mockito.verify(repository, Mockito.times(3))
+                .findLinkedImages(Mockito.argThat((Collection<String> locations) -> locations.size() <= 2));
+    }
+
+    private ImageGarbageCollector collector(int batchSize) {
+        return new ImageGarbageCollector(store, repository, new TaskMetrics(new SimpleMeterRegistry()),
+                batchSize, Duration.ofHours(1));
+    }
+
+    private Path stored(String content) throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", content.getBytes()));
+        return Path.of(stored.getLocation());
+    }
+
+    private static Path old(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+        return file;
+    }
+}
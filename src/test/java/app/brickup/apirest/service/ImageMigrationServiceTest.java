@@ -0,0 +1,89 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class ImageMigrationServiceTest {
+    @TempDir
+    private Path root;
+
+    @Mock
+    private TaskRepository repository;
+    @Mock
+    private TaskCache cache;
+    @Mock
+    private TaskChangeTracker changeTracker;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private FileImageStore files;
+    private SegmentImageStore segments;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        files = new FileImageStore(root.toString());
+        segments = new SegmentImageStore(files, root.resolve("segments"), 4096, 1024);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        segments.close();
+    }
+
+    @Test
+    @DisplayName("Small images must be moved to segments and relinked, large and missing ones left alone")
+    void migrate() throws IOException {
+        StoredImage small = files.store(new MockMultipartFile("image", new byte[]{1, 2, 3}));
+        StoredImage large = files.store(new MockMultipartFile("image", new byte[2048]));
+        Path legacy = Files.write(root.resolve("photo.jpg"), new byte[]{4, 5, 6});
+        String missing = root.resolve("gone.jpg").toString();
+        List<String> batch = List.of(small.getLocation(), large.getLocation(), legacy.toString(), missing);
+        Mockito.when(repository.findFileImagesAfter("", Limit.of(100))).thenReturn(batch);
+        Mockito.when(repository.findFileImagesAfter(missing, Limit.of(100))).thenReturn(List.of());
+        Mockito.when(repository.relinkImage(Mockito.anyString(), Mockito.anyString())).thenReturn(2);
+
+        ImageMigrationService.Result result = service(segments).migrate();
+
+        assertEquals(2, result.getImages());
+        assertEquals(4, result.getTasks());
+        assertEquals(2, result.getSkipped());
+        Mockito.verify(repository).relinkImage(small.getLocation(), "segment:" + small.getHash());
+        Mockito.verify(repository, Mockito.never()).relinkImage(Mockito.eq(large.getLocation()), Mockito.anyString());
+        Mockito.verify(cache).invalidateAllAfterCommit();
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(Path.of(small.getLocation())), "Hashed files are left to the garbage collector");
+    }
+
+    @Test
+    @DisplayName("Migrating without segments must be refused")
+    void migrate_Files() {
+        assertThrows(IllegalStateException.class, () -> service(files).migrate());
+        Mockito.verifyNoInteractions(repository);
+    }
+
+    private ImageMigrationService service(ImageStore store) {
+        return new ImageMigrationService(store, repository, cache, changeTracker, new TaskShards(1, Runnable::run),
+                transactionManager);
+    }
+}
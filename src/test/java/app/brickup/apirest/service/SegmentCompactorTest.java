@@ -0,0 +1,81 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class SegmentCompactorTest {
+    @TempDir
+    private Path root;
+
+    @Mock
+    private TaskRepository repository;
+
+    private SegmentImageStore store;
+    private final List<StoredImage> first = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new SegmentImageStore(new FileImageStore(root.toString()), root.resolve("segments"), 4096, 1024);
+        for (int seed = 0; store.sealedSegments().isEmpty(); seed++) {
+            first.add(store.store(new MockMultipartFile("image", new byte[]{(byte) seed, (byte) (seed >> 8), 1})));
+        }
+        first.remove(first.size() - 1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    @DisplayName("A sealed segment mostly unreferenced must be compacted, keeping the referenced images")
+    void compactNext() throws IOException {
+        String kept = first.get(0).getLocation();
+        Mockito.when(repository.findLinkedImages(Mockito.anyCollection())).thenReturn(List.of(kept));
+        long sealed = store.sealedSegments().get(0);
+
+        assertTrue(compactor(0.5).compactNext(store) > 0);
+
+        assertFalse(store.sealedSegments().contains(sealed));
+        assertEquals(3, store.open(kept, null).getLength());
+        assertThrows(FileNotFoundException.class, () -> store.open(first.get(1).getLocation(), null));
+    }
+
+    @Test
+    @DisplayName("A sealed segment mostly referenced must be left alone")
+    void compactNext_BelowThreshold() throws IOException {
+        Mockito.when(repository.findLinkedImages(Mockito.anyCollection()))
+                .thenReturn(first.stream().skip(1).map(StoredImage::getLocation).toList());
+        long sealed = store.sealedSegments().get(0);
+
+        assertEquals(0, compactor(0.5).compactNext(store));
+
+        assertTrue(store.sealedSegments().contains(sealed));
+    }
+
+    private SegmentCompactor compactor(double threshold) {
+        return new SegmentCompactor(store, repository, new TaskMetrics(new SimpleMeterRegistry()), threshold,
+                Duration.ZERO);
+    }
+}
@@ -0,0 +1,215 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.model.ImageSize;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentImageStoreTest {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 0};
+    private static final int SEGMENT_SIZE = 4096;
+    private static final int MAX_IMAGE_SIZE = 1024;
+
+    @TempDir
+    private Path root;
+
+    private FileImageStore files;
+    private SegmentImageStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        files = new FileImageStore(root.toString());
+        store = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    @DisplayName("Small images must be appended to a segment once and served from a slice of it")
+    void store() throws IOException {
+        StoredImage first = store.store(new MockMultipartFile("image", "a.jpg", "image/jpeg", image(1)));
+        StoredImage second = store.store(new MockMultipartFile("image", "b.png", "image/png", image(1)));
+
+        assertEquals("segment:" + first.getHash(), first.getLocation());
+        assertEquals(first.getLocation(), second.getLocation());
+        assertEquals("image/png", first.getContentType());
+        assertEquals(1, store.segmentCount());
+
+        ImageResource resource = store.open(first.getLocation(), first.getContentType());
+        assertNull(resource.getPath());
+        assertEquals("\"" + first.getHash() + "\"", resource.getETag());
+        assertArrayEquals(image(1), bytes(resource.getData()));
+        assertThrows(FileNotFoundException.class, () -> store.open("segment:" + "0".repeat(64), null));
+    }
+
+    @Test
+    @DisplayName("Images over max-image-size must be kept in files, and files must still be served")
+    void store_Large() throws IOException {
+        StoredImage large = store.store(new MockMultipartFile("image", new byte[MAX_IMAGE_SIZE + 1]));
+
+        assertEquals(files.pathFor(large.getHash()).toString(), large.getLocation());
+        assertEquals(MAX_IMAGE_SIZE + 1, store.open(large.getLocation(), null).getLength());
+        assertEquals(0, store.segmentCount());
+    }
+
+    @Test
+    @DisplayName("Derivatives must be stored next to their image and be readable by the decoders")
+    void derivatives() throws IOException {
+        StoredImage stored = store.store(new MockMultipartFile("image", image(1)));
+        assertTrue(store.supportsDerivatives(stored.getLocation()));
+        assertFalse(store.hasDerivative(stored.getLocation(), ImageSize.THUMB));
+
+        store.storeDerivative(stored.getLocation(), ImageSize.THUMB, new byte[]{1, 2, 3});
+
+        ImageResource thumb = store.openDerivative(stored.getLocation(), ImageSize.THUMB);
+        assertEquals("\"" + stored.getHash() + "-thumb\"", thumb.getETag());
+        assertEquals("image/jpeg", thumb.getContentType());
+        assertNull(store.openDerivative(stored.getLocation(), ImageSize.MEDIUM));
+
+        try (ImageInputStream input = store.openImageInput(stored.getLocation())) {
+            byte[] read = new byte[PNG_HEADER.length + 1];
+            input.readFully(read);
+            assertArrayEquals(image(1), read);
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    @DisplayName("After a restart the index must be rebuilt from the segments, and a torn last record cut off")
+    void reopen() throws IOException {
+        List<StoredImage> stored = Stream.of(1, 2, 3).map(this::storeImage).toList();
+        store.close();
+        Path last = segmentFiles().get(segmentFiles().size() - 1);
+        try (var channel = Files.newByteChannel(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x53, 0x45, 0x47, 0x31, 0, 0}));
+        }
+        long sizeBefore = Files.size(last);
+
+        store = open();
+
+        for (int i = 0; i < stored.size(); i++) {
+            assertArrayEquals(image(i + 1), bytes(store.open(stored.get(i).getLocation(), null).getData()));
+        }
+        assertEquals(sizeBefore - 6, Files.size(last));
+        StoredImage next = storeImage(4);
+        assertArrayEquals(image(4), bytes(store.open(next.getLocation(), null).getData()));
+    }
+
+    @Test
+    @DisplayName("The segment directory must not be opened by two stores at once")
+    void lock() {
+        assertThrows(RuntimeException.class, this::open);
+    }
+
+    @Test
+    @DisplayName("Compaction must copy what is in use to the active segment, drop the rest and delete the file")
+    void compact() throws IOException {
+        StoredImage kept = storeImage(1);
+        StoredImage dropped = storeImage(2);
+        store.storeDerivative(dropped.getLocation(), ImageSize.THUMB, new byte[]{1});
+        fillSegment();
+        long first = store.sealedSegments().get(0);
+
+        SegmentImageStore.Usage usage = store.usage(first);
+        assertTrue(usage.bytesByOwner().keySet().containsAll(Set.of(kept.getLocation(), dropped.getLocation())));
+
+        long reclaimed = store.compact(first, Set.of(dropped.getLocation()), System.currentTimeMillis() + 1);
+
+        assertTrue(reclaimed > 0);
+        assertFalse(store.sealedSegments().contains(first));
+        assertArrayEquals(image(1), bytes(store.open(kept.getLocation(), null).getData()));
+        assertThrows(FileNotFoundException.class, () -> store.open(dropped.getLocation(), null));
+        assertFalse(store.hasDerivative(dropped.getLocation(), ImageSize.THUMB));
+    }
+
+    @Test
+    @DisplayName("An unreferenced image stored again within the grace period must survive compaction")
+    void compact_RecentlyStored() throws IOException {
+        StoredImage image = storeImage(1);
+        fillSegment();
+        long first = store.sealedSegments().get(0);
+        long cutoff = System.currentTimeMillis() - 60_000;
+
+        store.compact(first, Set.of(image.getLocation()), cutoff);
+
+        assertArrayEquals(image(1), bytes(store.open(image.getLocation(), null).getData()));
+    }
+
+    @Test
+    @DisplayName("Importing a file must copy it and its derivatives into a segment under the same hash")
+    void importFile() throws IOException {
+        StoredImage file = files.store(new MockMultipartFile("image", image(1)));
+        files.storeDerivative(file.getLocation(), ImageSize.THUMB, new byte[]{7});
+        Path legacy = Files.write(root.resolve("photo.jpg"), image(2));
+
+        assertEquals("segment:" + file.getHash(), store.importFile(file.getLocation()));
+        assertTrue(store.hasDerivative("segment:" + file.getHash(), ImageSize.THUMB));
+        assertTrue(store.importFile(legacy.toString()).startsWith("segment:"));
+        assertNull(store.importFile(root.resolve("gone").toString()));
+        assertTrue(Files.exists(Path.of(file.getLocation())), "Files are left to the garbage collector");
+    }
+
+    private SegmentImageStore open() throws IOException {
+        return new SegmentImageStore(files, root.resolve("segments"), SEGMENT_SIZE, MAX_IMAGE_SIZE);
+    }
+
+    private StoredImage storeImage(int seed) {
+        try {
+            return store.store(new MockMultipartFile("image", image(seed)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stores images until the first segment is sealed.
+     */
+    private void fillSegment() throws IOException {
+        for (int seed = 100; store.sealedSegments().isEmpty(); seed++) {
+            byte[] filler = new byte[MAX_IMAGE_SIZE];
+            filler[0] = (byte) seed;
+            filler[1] = (byte) (seed >> 8);
+            store.store(new MockMultipartFile("image", filler));
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> list = Files.list(root.resolve("segments"))) {
+            return list.filter(path -> path.toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    private static byte[] image(int seed) {
+        byte[] bytes = new byte[PNG_HEADER.length + 1];
+        System.arraycopy(PNG_HEADER, 0, bytes, 0, PNG_HEADER.length);
+        bytes[PNG_HEADER.length] = (byte) seed;
+        return bytes;
+    }
+
+    private static byte[] bytes(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+}
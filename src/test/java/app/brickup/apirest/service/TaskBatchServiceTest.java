@@ -0,0 +1,154 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskEvent;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class TaskBatchServiceTest {
+    @Mock
+    private TaskRepository repository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private TaskMapper mapper = new TaskMapper();
+
+    @Spy
+    private TaskCache cache = new TaskCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+    @Spy
+    private TaskMetrics metrics = new TaskMetrics(new SimpleMeterRegistry());
+
+    @Mock
+    private TaskChangeTracker changeTracker;
+
+    @Mock
+    private TaskEventPublisher eventPublisher;
+
+    @Mock
+    private TaskStats stats;
+
+    @Spy
+    private TaskShards shards = new TaskShards(1, Runnable::run);
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private TaskBatchService service;
+
+    @Test
+    @DisplayName("New tasks must be saved in chunks as pending tasks")
+    void saveAll() {
+        List<TaskDTO> dtos = LongStream.range(0, 120).mapToObj(i -> dto(null, "Task " + i, null)).toList();
+
+        List<TaskDTO> saved = service.saveAll(dtos);
+
+        assertEquals(120, saved.size());
+        assertTrue(saved.stream().allMatch(dto -> dto.getStatus() == Status.PENDENTE));
+        Mockito.verify(repository, Mockito.times(3)).saveAll(Mockito.anyList());
+        Mockito.verify(entityManager, Mockito.times(3)).flush();
+        Mockito.verify(entityManager, Mockito.times(3)).clear();
+    }
+
+    @Test
+    @DisplayName("An empty batch must not record a change nor publish anything")
+    void saveAll_Empty() {
+        assertTrue(service.saveAll(List.of()).isEmpty());
+
+        Mockito.verifyNoInteractions(repository, changeTracker, stats, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Existing tasks must be loaded with one query per chunk and merged in request order")
+    void updateAll() {
+        Mockito.when(repository.findAllById(List.of(2L, 1L))).thenReturn(List.of(
+                new Task(1L, "Task 1", Status.PENDENTE, null),
+                new Task(2L, "Task 2", Status.PENDENTE, null)));
+
+        List<TaskDTO> updated = service.updateAll(List.of(dto(2L, "Changed", Status.FINALIZADA), dto(1L, "Task 1", null)));
+
+        assertEquals(2L, updated.get(0).getId());
+        assertEquals("Changed", updated.get(0).getDescription());
+        assertEquals(Status.FINALIZADA, updated.get(0).getStatus());
+        assertEquals(Status.PENDENTE, updated.get(1).getStatus());
+        Mockito.verify(cache).invalidateAfterCommit(List.of(2L, 1L));
+        Mockito.verify(stats).recordAfterCommit(Mockito.argThat(delta -> delta.change(Status.PENDENTE) == -1
+                && delta.change(Status.FINALIZADA) == 1));
+    }
+
+    @Test
+    @DisplayName("When one of the tasks to update does not exist, an exception must be thrown")
+    void updateAll_IdNotFound() {
+        Mockito.when(repository.findAllById(List.of(1L, 2L)))
+                .thenReturn(List.of(new Task(1L, "Task 1", Status.PENDENTE, null)));
+
+        List<TaskDTO> dtos = List.of(dto(1L, "Task 1", null), dto(2L, "Task 2", null));
+
+        assertThrows(EntityNotFoundException.class, () -> service.updateAll(dtos));
+    }
+
+    @Test
+    @DisplayName("Tasks must be deleted with one statement per chunk")
+    void deleteAll() {
+        List<Long> ids = LongStream.rangeClosed(1, 60).boxed().toList();
+        Mockito.when(repository.lockStatusesByIds(Mockito.anyList())).thenAnswer(invocation ->
+                invocation.<List<Long>>getArgument(0).stream().map(id -> new Object[]{id, Status.PENDENTE}).toList());
+
+        service.deleteAll(ids);
+
+        Mockito.verify(repository).deleteAllByIdInBatch(ids.subList(0, 50));
+        Mockito.verify(repository).deleteAllByIdInBatch(ids.subList(50, 60));
+        Mockito.verify(changeTracker).recordChange();
+        Mockito.verify(eventPublisher).publishAfterCommit(Mockito.argThat(events -> events.size() == 60
+                && events.stream().allMatch(event -> event.getType() == TaskEvent.Type.DELETED)));
+    }
+
+    @Test
+    @DisplayName("Only the tasks that exist must be deleted and announced, and nothing recorded when none exists")
+    void deleteAll_Missing() {
+        Mockito.when(repository.lockStatusesByIds(List.of(1L, 2L, 3L)))
+                .thenReturn(List.<Object[]>of(new Object[]{2L, Status.FINALIZADA}));
+
+        service.deleteAll(List.of(1L, 2L, 3L));
+        service.deleteAll(List.of(4L));
+
+        Mockito.verify(repository).deleteAllByIdInBatch(List.of(2L));
+        Mockito.verify(repository, Mockito.never()).deleteAllByIdInBatch(List.of(4L));
+        Mockito.verify(changeTracker).recordChange();
+        Mockito.verify(eventPublisher).publishAfterCommit(Mockito.argThat(events -> events.size() == 1
+                && events.get(0).getTaskId() == 2L));
+    }
+
+    private static TaskDTO dto(Long id, String description, Status status) {
+        TaskDTO dto = new TaskDTO();
+        dto.setId(id);
+        dto.setDescription(description);
+        dto.setStatus(status);
+        return dto;
+    }
+}
@@ -0,0 +1,100 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskCacheTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    @DisplayName("Hits, misses and evictions must be published as metrics")
+    void metrics() {
+        TaskCache cache = new TaskCache(1, Duration.ofMinutes(5), registry);
+
+        cache.get(1L, id -> Optional.of(task(id, "Task 1")));
+        cache.get(1L, id -> Optional.of(task(id, "Task 1")));
+        cache.get(2L, id -> Optional.of(task(id, "Task 2")));
+        cache.cleanUp();
+
+        assertEquals(1, registry.get("cache.gets").tag("cache", "tasks").tag("result", "hit").functionCounter().count());
+        assertEquals(2, registry.get("cache.gets").tag("cache", "tasks").tag("result", "miss").functionCounter().count());
+        assertEquals(1, registry.get("cache.evictions").tag("cache", "tasks").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("Missing tasks must not be cached")
+    void missingNotCached() {
+        TaskCache cache = new TaskCache(10, Duration.ofMinutes(5), registry);
+
+        assertTrue(cache.get(1L, id -> Optional.empty()).isEmpty());
+        assertEquals("Task 1", cache.get(1L, id -> Optional.of(task(id, "Task 1"))).orElseThrow().getDescription());
+    }
+
+    @Test
+    @DisplayName("A load that read the old row before a write must not survive the write's invalidation")
+    void loadRacingInvalidationNotCached() throws Exception {
+        TaskCache cache = new TaskCache(10, Duration.ofMinutes(5), registry);
+        AtomicReference<String> database = new AtomicReference<>("old");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+
+        CompletableFuture<Optional<Task>> reader = CompletableFuture.supplyAsync(() -> cache.get(1L, id -> {
+            Task stale = task(id, database.get());
+            loading.countDown();
+            await(written);
+            return Optional.of(stale);
+        }));
+
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        database.set("new");
+        written.countDown();
+        cache.invalidate(1L);
+
+        assertEquals("old", reader.get(5, TimeUnit.SECONDS).orElseThrow().getDescription());
+        assertEquals("new", cache.get(1L, id -> Optional.of(task(id, database.get()))).orElseThrow().getDescription());
+    }
+
+    @Test
+    @DisplayName("An invalidation must not wait for a load of the same id to finish")
+    void invalidateDoesNotBlockOnLoad() throws Exception {
+        TaskCache cache = new TaskCache(10, Duration.ofMinutes(5), registry);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<Optional<Task>> reader = CompletableFuture.supplyAsync(() -> cache.get(1L, id -> {
+            loading.countDown();
+            await(release);
+            return Optional.of(task(id, "Task 1"));
+        }));
+
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        CompletableFuture.runAsync(() -> cache.invalidate(1L)).get(1, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertTrue(reader.get(5, TimeUnit.SECONDS).isPresent());
+    }
+
+    private static Task task(Long id, String description) {
+        return new Task(id, description, Status.PENDENTE, null);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
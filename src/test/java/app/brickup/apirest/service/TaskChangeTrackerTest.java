@@ -0,0 +1,84 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.repository.TaskShards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class TaskChangeTrackerTest {
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query select;
+
+    @Mock
+    private TaskCache cache;
+
+    @Mock
+    private TaskEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private TaskChangeTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new TaskChangeTracker(new TaskShards(1, Runnable::run), cache, eventPublisher,
+                transactionManager);
+        ReflectionTestUtils.setField(tracker, "entityManager", entityManager);
+        Mockito.when(entityManager.createNativeQuery("SELECT SUM(version) FROM task_changes")).thenReturn(select);
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("Changes found by the refresh that this instance did not commit must empty the cache and reset the stream")
+    void refresh_ChangedElsewhere() {
+        Query bump = Mockito.mock(Query.class, Mockito.RETURNS_SELF);
+        Mockito.when(entityManager.createNativeQuery("UPDATE task_changes SET version = version + 1 WHERE id = ?"))
+                .thenReturn(bump);
+        Mockito.when(select.getSingleResult()).thenReturn(5L, 6L, 6L, 8L, 8L);
+
+        assertEquals(5L, tracker.refresh());
+        commitChange();
+        assertEquals(6L, tracker.refresh());
+        Mockito.verifyNoInteractions(cache, eventPublisher);
+
+        assertEquals(8L, tracker.refresh());
+        tracker.refresh();
+        Mockito.verify(cache).invalidateAll();
+        Mockito.verify(eventPublisher).resetAfterCommit();
+    }
+
+    private void commitChange() {
+        TransactionSynchronizationManager.initSynchronization();
+        tracker.recordChange();
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCommit(false);
+            synchronization.afterCommit();
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
@@ -0,0 +1,216 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskEvent;
+import app.brickup.apirest.exceptions.TooManySubscribersException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskEventPublisherTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Runnable> queued = new ArrayList<>();
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("A new subscriber must receive a ready event and then the changes published after it")
+    void deliversEvents() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(10, 10, emitter);
+
+        publisher.subscribe(null);
+        runQueued();
+        publisher.publishAfterCommit(List.of(TaskEvent.created(task(1L, "Task 1"))));
+        runQueued();
+
+        assertEquals(List.of("ready", "tasks"), emitter.names());
+        assertEquals(1, emitter.events(1).size());
+        assertEquals(TaskEvent.Type.CREATED, emitter.events(1).get(0).getType());
+    }
+
+    @Test
+    @DisplayName("Changes to the same task must be coalesced into one event while the subscriber is behind")
+    void coalescesPendingEvents() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(10, 10, emitter);
+        publisher.subscribe(null);
+
+        publisher.publishAfterCommit(List.of(TaskEvent.created(task(1L, "Task 1"))));
+        publisher.publishAfterCommit(List.of(TaskEvent.updated(task(1L, "Task 1 v2")), TaskEvent.deleted(2L)));
+        runQueued();
+
+        assertEquals(List.of("tasks"), emitter.names());
+        List<TaskEvent> events = emitter.events(0);
+        assertEquals(2, events.size());
+        assertEquals(TaskEvent.Type.CREATED, events.get(0).getType());
+        assertEquals("Task 1 v2", events.get(0).getTask().getDescription());
+        assertEquals(TaskEvent.Type.DELETED, events.get(1).getType());
+    }
+
+    @Test
+    @DisplayName("A subscriber with more pending tasks than its buffer must get a reset instead")
+    void overflowResets() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(2, 10, emitter);
+        publisher.subscribe(null);
+
+        publisher.publishAfterCommit(List.of(TaskEvent.deleted(1L), TaskEvent.deleted(2L), TaskEvent.deleted(3L)));
+        runQueued();
+
+        assertEquals(List.of("reset"), emitter.names());
+        assertEquals(1, registry.get("tasks.stream.overflows").counter().count());
+    }
+
+    @Test
+    @DisplayName("A reconnect must replay the events after Last-Event-ID, or reset when they are gone")
+    void replaysFromLastEventId() {
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        RecordingEmitter third = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(10, 2, first, second, third);
+
+        publisher.subscribe(null);
+        runQueued();
+        String lastEventId = first.ids().get(0);
+        publisher.publishAfterCommit(List.of(TaskEvent.deleted(1L), TaskEvent.deleted(2L)));
+        publisher.subscribe(lastEventId);
+        publisher.publishAfterCommit(List.of(TaskEvent.deleted(3L)));
+        publisher.subscribe(lastEventId);
+        runQueued();
+
+        assertEquals(List.of("tasks"), second.names());
+        assertEquals(List.of(1L, 2L, 3L), second.events(0).stream().map(TaskEvent::getTaskId).toList());
+        assertEquals(List.of("reset"), third.names());
+        assertEquals(second.ids().get(0), third.ids().get(0));
+    }
+
+    @Test
+    @DisplayName("An id issued by another instance must lead to a reset")
+    void foreignIdResets() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(10, 10, emitter);
+
+        publisher.subscribe("other-0");
+        runQueued();
+
+        assertEquals(List.of("reset"), emitter.names());
+    }
+
+    @Test
+    @DisplayName("Events must only be published once the transaction commits")
+    void publishesAfterCommit() {
+        RecordingEmitter emitter = new RecordingEmitter();
+        TaskEventPublisher publisher = publisher(10, 10, emitter);
+        publisher.subscribe(null);
+        runQueued();
+
+        TransactionSynchronizationManager.initSynchronization();
+        publisher.publishAfterCommit(List.of(TaskEvent.deleted(1L)));
+        runQueued();
+        assertEquals(List.of("ready"), emitter.names());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        runQueued();
+        assertEquals(List.of("ready", "tasks"), emitter.names());
+    }
+
+    @Test
+    @DisplayName("Subscribing past the subscriber limit must be rejected")
+    void subscriberLimit() {
+        TaskEventPublisher publisher = publisher(10, 10, new RecordingEmitter());
+
+        publisher.subscribe(null);
+
+        assertThrows(TooManySubscribersException.class, () -> publisher.subscribe(null));
+        assertEquals(1, registry.get("tasks.stream.subscribers").gauge().value());
+    }
+
+    private TaskEventPublisher publisher(int bufferSize, int historySize, RecordingEmitter... emitters) {
+        List<RecordingEmitter> remaining = new ArrayList<>(List.of(emitters));
+        return new TaskEventPublisher(queued::add, new TaskMetrics(registry), bufferSize, historySize,
+                emitters.length, Duration.ofMinutes(1)) {
+            @Override
+            SseEmitter createEmitter() {
+                return remaining.remove(0);
+            }
+        };
+    }
+
+    private void runQueued() {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    private static TaskDTO task(Long id, String description) {
+        TaskDTO task = new TaskDTO();
+        task.setId(id);
+        task.setDescription(description);
+        return task;
+    }
+
+    /**
+     * Keeps what would have been written instead of needing a response.
+     */
+    private static final class RecordingEmitter extends SseEmitter {
+        private static final Pattern NAME = Pattern.compile("event:(\\w+)");
+        private static final Pattern ID = Pattern.compile("id:(\\S+)");
+
+        private final List<String> text = new ArrayList<>();
+        private final List<Object> data = new ArrayList<>();
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder sent = new StringBuilder();
+            Object payload = null;
+            for (DataWithMediaType part : builder.build()) {
+                if (part.getData() instanceof String value) {
+                    sent.append(value);
+                } else {
+                    payload = part.getData();
+                }
+            }
+            if (sent.toString().startsWith(":")) {
+                return;
+            }
+            text.add(sent.toString());
+            data.add(payload);
+        }
+
+        List<String> names() {
+            return text.stream().map(sent -> find(NAME, sent)).toList();
+        }
+
+        List<String> ids() {
+            return text.stream().map(sent -> find(ID, sent)).toList();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<TaskEvent> events(int index) {
+            return (List<TaskEvent>) data.get(index);
+        }
+
+        private static String find(Pattern pattern, String sent) {
+            Matcher matcher = pattern.matcher(sent);
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+}
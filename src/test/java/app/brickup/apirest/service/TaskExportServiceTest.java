@@ -0,0 +1,77 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.model.Task;
+import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskShards;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@ExtendWith(MockitoExtension.class)
+class TaskExportServiceTest {
+    @Mock
+    private TaskRepository repository;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private TaskMapper mapper = new TaskMapper();
+
+    @Spy
+    private TaskShards shards = new TaskShards(1, Runnable::run);
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private TaskExportService service;
+
+    @Test
+    @DisplayName("Each task must be written as one JSON line and detached afterwards")
+    void exportTasks() throws Exception {
+        Task first = new Task(1L, "Task 1", Status.PENDENTE, null);
+        Task second = new Task(2L, "Task 2", Status.FINALIZADA, null);
+        Mockito.when(repository.streamAll()).thenReturn(Stream.of(first, second));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = service.exportTo(out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(2, count);
+        assertEquals(2, lines.length);
+        assertEquals(1L, objectMapper.readTree(lines[0]).get("id").asLong());
+        assertEquals("FINALIZADA", objectMapper.readTree(lines[1]).get("status").asText());
+        Mockito.verify(entityManager).detach(first);
+        Mockito.verify(entityManager).detach(second);
+    }
+
+    @Test
+    @DisplayName("When there are no tasks, nothing must be written")
+    void exportTasks_Empty() throws Exception {
+        Mockito.when(repository.streamAll()).thenReturn(Stream.empty());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, service.exportTo(out));
+        assertEquals(0, out.size());
+    }
+}
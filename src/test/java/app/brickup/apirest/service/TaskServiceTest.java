@@ -1,22 +1,39 @@
 package app.brickup.apirest.service;
 
+import app.brickup.apirest.dto.ImageResource;
+import app.brickup.apirest.dto.StoredImage;
 import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.TaskPageDTO;
+import app.brickup.apirest.exceptions.InvalidCursorException;
+import app.brickup.apirest.exceptions.InvalidFieldsException;
+import app.brickup.apirest.exceptions.PreconditionFailedException;
+import app.brickup.apirest.mapper.TaskMapper;
+import app.brickup.apirest.model.ImageSize;
 import app.brickup.apirest.model.Status;
 import app.brickup.apirest.model.Task;
 import app.brickup.apirest.repository.TaskRepository;
+import app.brickup.apirest.repository.TaskRepositoryCustom;
+import app.brickup.apirest.repository.TaskShards;
+import app.brickup.apirest.util.CursorUtil;
 import jakarta.persistence.EntityNotFoundException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.domain.Limit;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,34 +45,161 @@ class TaskServiceTest {
     @Mock
     private TaskRepository repository;
 
+    @Mock
+    private ImageStore imageStore;
+
+    @Mock
+    private ImageDerivativeService derivativeService;
+
+    @Spy
+    private TaskMapper mapper = new TaskMapper();
+
+    @Spy
+    private TaskCache cache = new TaskCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
+    @Spy
+    private TaskMetrics metrics = new TaskMetrics(new SimpleMeterRegistry());
+
+    @Mock
+    private TaskChangeTracker changeTracker;
+
+    @Mock
+    private TaskEventPublisher eventPublisher;
+
+    @Mock
+    private TaskStats stats;
+
     @Spy
-    private ModelMapper mapper = new ModelMapper();
+    private TaskShards shards = new TaskShards(1, Runnable::run);
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private TaskService service;
 
     @Test
-    @DisplayName("When there are task records, a list of values must be returned")
+    @DisplayName("When there are task records, a page of values must be returned")
     void findAllTasks() {
         List<Task> tasks = List.of(
                 new Task(1L, "Task 1", Status.PENDENTE, "www.google.com"),
                 new Task(2L, "Task 2", Status.PENDENTE, "www.google.com")
         );
-        Mockito.when(repository.findAll()).thenReturn(tasks);
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(tasks);
 
-        List<TaskDTO> list = service.findAll();
+        TaskPageDTO page = service.findPage(null, null, null, null);
 
-        assertNotNull(list);
-        assertFalse(list.isEmpty());
-        assertEquals(tasks.size(), list.stream().toList().size());
+        assertNotNull(page);
+        assertEquals(tasks.size(), page.getItems().size());
+        assertNull(page.getNext());
     }
 
     @Test
-    @DisplayName("When there are no task records, it should return an empty list")
+    @DisplayName("When there are no task records, it should return an empty page")
     void findAllTasks_Empty() {
-        List<TaskDTO> list = service.findAll();
-        assertNotNull(list);
-        assertTrue(list.isEmpty());
+        TaskPageDTO page = service.findPage(null, null, null, null);
+        assertNotNull(page);
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    @DisplayName("When more rows exist than the limit, a cursor to the next page must be returned")
+    void findAllTasks_NextCursor() {
+        List<Task> tasks = List.of(
+                new Task(1L, "Task 1", Status.PENDENTE, "www.google.com"),
+                new Task(2L, "Task 2", Status.PENDENTE, "www.google.com"),
+                new Task(3L, "Task 3", Status.PENDENTE, "www.google.com")
+        );
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(3))).thenReturn(tasks);
+
+        TaskPageDTO page = service.findPage(null, 2, null, null);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals(CursorUtil.encode(2L), page.getNext());
+    }
+
+    @Test
+    @DisplayName("The cursor and status filter must be forwarded to the keyset query")
+    void findAllTasks_CursorAndStatus() {
+        List<Task> tasks = List.of(new Task(7L, "Task 7", Status.FINALIZADA, "www.google.com"));
+        Mockito.when(repository.findByStatusAndIdGreaterThanOrderByIdAsc(Status.FINALIZADA, 5L, Limit.of(11)))
+                .thenReturn(tasks);
+
+        TaskPageDTO page = service.findPage(CursorUtil.encode(5L), 10, Status.FINALIZADA, null);
+
+        assertEquals(7L, page.getItems().get(0).getId());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    @DisplayName("Fields without the image must be read through the summary projection")
+    void findAllTasks_SummaryProjection() {
+        List<TaskRepository.Summary> rows = List.of(
+                new TaskRepository.Summary(1L, "Task 1", Status.PENDENTE, 0L),
+                new TaskRepository.Summary(2L, "Task 2", Status.FINALIZADA, 3L)
+        );
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(2), TaskRepository.Summary.class))
+                .thenReturn(rows);
+
+        TaskPageDTO page = service.findPage(null, 1, null, "description, status");
+
+        assertEquals(1, page.getItems().size());
+        TaskDTO item = page.getItems().get(0);
+        assertEquals(1L, item.getId());
+        assertEquals("Task 1", item.getDescription());
+        assertEquals(Status.PENDENTE, item.getStatus());
+        assertNull(item.getVersion());
+        assertEquals(CursorUtil.encode(1L), page.getNext());
+        Mockito.verify(repository, Mockito.never()).findByIdGreaterThanOrderByIdAsc(Mockito.anyLong(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Asking for the image must read the full row and still drop the other fields")
+    void findAllTasks_FieldsWithImage() {
+        List<Task> tasks = List.of(new Task(1L, "Task 1", Status.PENDENTE, "www.google.com"));
+        Mockito.when(repository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(51))).thenReturn(tasks);
+
+        TaskDTO item = service.findPage(null, null, null, "linkImage").getItems().get(0);
+
+        assertEquals(1L, item.getId());
+        assertEquals("www.google.com", item.getLinkImage());
+        assertNull(item.getDescription());
+        assertNull(item.getStatus());
+    }
+
+    @Test
+    @DisplayName("An unknown field must be rejected")
+    void findAllTasks_InvalidFields() {
+        assertThrows(InvalidFieldsException.class, () -> service.findPage(null, null, null, "id,contentType"));
+    }
+
+    @Test
+    @DisplayName("A malformed cursor must be rejected")
+    void findAllTasks_InvalidCursor() {
+        assertThrows(InvalidCursorException.class, () -> service.findPage("not-a-cursor", null, null, null));
+    }
+
+    @Test
+    @DisplayName("Search results must be paginated with an offset cursor")
+    void searchTasks() {
+        List<TaskRepositoryCustom.Match> matches = List.of(
+                new TaskRepositoryCustom.Match(new Task(9L, "Buy milk", Status.PENDENTE, null), 0.9),
+                new TaskRepositoryCustom.Match(new Task(3L, "Buy bread and milk", Status.PENDENTE, null), 0.5),
+                new TaskRepositoryCustom.Match(new Task(4L, "Milk the cow", Status.PENDENTE, null), 0.5)
+        );
+        Mockito.when(repository.search("milk", Status.PENDENTE, 4, 3)).thenReturn(matches);
+
+        TaskPageDTO page = service.search(" milk ", CursorUtil.encodeOffset(4), 2, Status.PENDENTE, null);
+
+        assertEquals(List.of(9L, 3L), page.getItems().stream().map(TaskDTO::getId).toList());
+        assertEquals(CursorUtil.encodeOffset(6), page.getNext());
+    }
+
+    @Test
+    @DisplayName("A list cursor must not be accepted by the search")
+    void searchTasks_ListCursor() {
+        assertThrows(InvalidCursorException.class, () -> service.search("milk", CursorUtil.encode(5L), null, null, null));
     }
 
     @Test
@@ -72,6 +216,39 @@ class TaskServiceTest {
         assertEquals(task.getId(), result.getId());
     }
 
+    @Test
+    @DisplayName("Repeated lookups of the same task must be served from the cache")
+    void findTask_Cached() {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
+
+        Mockito.when(repository.findById(1L))
+                .thenReturn(Optional.of(task));
+
+        service.findById(1L);
+        service.findById(1L);
+
+        Mockito.verify(repository, Mockito.times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("After an update, the next lookup must return the new values")
+    void findTask_AfterUpdate() {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
+        Task updated = new Task(1L, "Changed", Status.FINALIZADA, "www.google.com");
+
+        Mockito.when(repository.findById(1L))
+                .thenReturn(Optional.of(task), Optional.of(updated));
+        Mockito.when(repository.patch(Mockito.eq(1L), Mockito.isNull(), Mockito.any()))
+                .thenReturn(1);
+
+        service.findById(1L);
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Changed");
+        service.updateTask(dto, 1L, null, null);
+
+        assertEquals("Changed", service.findById(1L).getDescription());
+    }
+
     @Test
     @DisplayName("When there is no task with the specified id, an exception must be thrown")
     void findTask_IdNotFound() {
@@ -81,6 +258,60 @@ class TaskServiceTest {
         assertEquals("Task not found!", errorMessage.getMessage());
     }
 
+    @Test
+    @DisplayName("The image of a task must be resolved through the image store")
+    void getResource() throws IOException {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "/images/ab/abc", "image/png", 0L);
+        ImageResource image = new ImageResource(Path.of("/images/ab/abc"), "image/png", 5, 0, "\"abc\"");
+
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(task));
+        Mockito.when(imageStore.open("/images/ab/abc", "image/png")).thenReturn(image);
+
+        assertSame(image, service.getResource(1L, null));
+    }
+
+    @Test
+    @DisplayName("A requested derivative must be served once it has been generated")
+    void getResource_Derivative() throws IOException {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "/images/ab/abc", "image/png", 0L);
+        ImageResource thumb = new ImageResource(Path.of("/images/ab/abc-thumb.jpg"), "image/jpeg", 2, 0, "\"abc-thumb\"");
+
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(task));
+        Mockito.when(imageStore.openDerivative("/images/ab/abc", ImageSize.THUMB)).thenReturn(thumb);
+
+        assertSame(thumb, service.getResource(1L, ImageSize.THUMB));
+    }
+
+    @Test
+    @DisplayName("While the derivative is not ready, the original image must be served")
+    void getResource_DerivativePending() throws IOException {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "/images/ab/abc", "image/png", 0L);
+        ImageResource image = new ImageResource(Path.of("/images/ab/abc"), "image/png", 5, 0, "\"abc\"");
+
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(task));
+        Mockito.when(imageStore.open("/images/ab/abc", "image/png")).thenReturn(image);
+
+        assertSame(image, service.getResource(1L, ImageSize.MEDIUM));
+    }
+
+    @Test
+    @DisplayName("An uploaded image must be stored and linked to the new task")
+    void saveTask_WithImage() throws IOException {
+        MultipartFile multipartFile = new MockMultipartFile("image", "12345".getBytes());
+        Mockito.when(imageStore.store(multipartFile))
+                .thenReturn(new StoredImage("/images/ab/abc", "image/png", 5, "abc"));
+        Mockito.when(repository.save(Mockito.any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Task 1");
+        TaskDTO result = service.saveTask(dto, multipartFile);
+
+        assertEquals("/images/ab/abc", result.getLinkImage());
+        assertEquals(Status.PENDENTE, result.getStatus());
+        Mockito.verify(derivativeService).generateAsync("/images/ab/abc");
+        Mockito.verify(metrics).recordUpload(Mockito.anyLong(), Mockito.eq(5L));
+    }
+
     @Test
     @DisplayName("Must return the saved task")
     void saveTask() {
@@ -90,7 +321,7 @@ class TaskServiceTest {
         Mockito.when(repository.save(Mockito.any(Task.class)))
                 .thenReturn(task);
 
-        var map = mapper.map(task, TaskDTO.class);
+        var map = mapper.toDTO(task);
 
         TaskDTO result = service.saveTask(map, multipartFile);
 
@@ -100,44 +331,144 @@ class TaskServiceTest {
 
     @Test
     @DisplayName("Must return the updated task")
-    void updateTask() {
-        Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
+    void updateTask() throws IOException {
+        Task task = new Task(1L, "Task 1", Status.PENDENTE, "/images/ab/abc", "image/png", 1L);
         MultipartFile multipartFile = new MockMultipartFile("Mock", "12345".getBytes());
 
+        Mockito.when(repository.patch(1L, null,
+                        new TaskRepositoryCustom.Changes("Task 1", Status.PENDENTE, "/images/ab/abc", "image/png")))
+                .thenReturn(1);
+
         Mockito.when(repository.findById(1L))
                 .thenReturn(Optional.of(task));
 
-        Mockito.when(repository.save(Mockito.any(Task.class)))
-                .thenReturn(task);
+        Mockito.when(imageStore.store(multipartFile))
+                .thenReturn(new StoredImage("/images/ab/abc", "image/png", 5, "abc"));
 
-        var map = mapper.map(task, TaskDTO.class);
+        var map = mapper.toDTO(task);
 
-        TaskDTO result = service.updateTask(map, 1L, multipartFile);
+        TaskDTO result = service.updateTask(map, 1L, multipartFile, null);
 
-        assertDoesNotThrow(() -> service.updateTask(map, 1L, multipartFile));
+        assertDoesNotThrow(() -> service.updateTask(map, 1L, multipartFile, null));
         assertNotNull(result);
         assertEquals(task.getId(), result.getId());
+        assertEquals(1L, result.getVersion());
+        Mockito.verify(repository, Mockito.never()).save(Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Only the fields sent must be part of the update statement")
+    void updateTask_Partial() {
+        Mockito.when(repository.patch(1L, 3L, new TaskRepositoryCustom.Changes("Changed", null, null, null)))
+                .thenReturn(1);
+        Mockito.when(repository.findById(1L))
+                .thenReturn(Optional.of(new Task(1L, "Changed", Status.PENDENTE, null, null, 4L)));
+
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Changed");
+
+        assertEquals(4L, service.updateTask(dto, 1L, null, 3L).getVersion());
+    }
+
+    @Test
+    @DisplayName("When the task was changed since the version the client has, the precondition must fail")
+    void updateTask_VersionMismatch() {
+        Mockito.when(repository.existsById(1L)).thenReturn(true);
+
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Changed");
+
+        assertThrows(PreconditionFailedException.class, () -> service.updateTask(dto, 1L, null, 3L));
     }
 
     @Test
     @DisplayName("Should throw exception when trying to update task not found")
     void updateTask_IdNotFound() {
         MultipartFile multipartFile = null;
-        assertThrows(EntityNotFoundException.class, () -> service.updateTask(mapper.map(new Task(), TaskDTO.class), 1L, multipartFile));
+        assertThrows(EntityNotFoundException.class, () -> service.updateTask(mapper.toDTO(new Task()), 1L, multipartFile, null));
     }
 
     @Test
     @DisplayName("Must delete a task")
     void deleteTask() {
-        Task task = new Task(1L, "Task 1", Status.PENDENTE, "www.google.com");
+        Mockito.when(repository.findStatusById(1L)).thenReturn(Optional.of(Status.PENDENTE));
+        Mockito.when(repository.deleteTaskById(1L)).thenReturn(1);
 
-        Mockito.when(repository.findById(1L))
-                .thenReturn(Optional.of(task));
+        service.deleteById(1L);
+
+        Mockito.verify(repository).deleteTaskById(1L);
+        Mockito.verify(repository, Mockito.never()).findById(1L);
+    }
+
+    @Test
+    @DisplayName("Tasks with a status must be deleted with one statement and dropped from the cache")
+    void deleteByStatus() {
+        Task task = new Task(1L, "Task 1", Status.FINALIZADA, null);
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(task));
+        Mockito.when(repository.deleteAllByStatusInBatch(Status.FINALIZADA)).thenReturn(3);
+        service.findById(1L);
+
+        assertEquals(3, service.deleteByStatus(Status.FINALIZADA));
+
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.empty());
+        assertThrows(EntityNotFoundException.class, () -> service.findById(1L));
+    }
+
+    @Test
+    @DisplayName("Every write must bump the change version inside its transaction")
+    void writesRecordChange() {
+        Mockito.when(repository.save(Mockito.any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(repository.patch(Mockito.eq(1L), Mockito.isNull(), Mockito.any())).thenReturn(1);
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(new Task(1L, "Task 1", Status.PENDENTE, null)));
+        Mockito.when(repository.findStatusById(1L)).thenReturn(Optional.of(Status.PENDENTE));
+        Mockito.when(repository.deleteTaskById(1L)).thenReturn(1);
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Task 1");
+
+        service.saveTask(dto, null);
+        service.updateTask(dto, 1L, null, null);
+        service.deleteById(1L);
+
+        Mockito.verify(changeTracker, Mockito.times(3)).recordChange();
+        Mockito.verify(transactionManager, Mockito.times(2)).commit(Mockito.any());
+        Mockito.verify(eventPublisher, Mockito.times(3)).publishAfterCommit(Mockito.anyList());
+    }
+
+    @Test
+    @DisplayName("Creations, status changes and deletes must be reported to the stats")
+    void writesRecordStats() {
+        Mockito.when(repository.save(Mockito.any(Task.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Mockito.when(repository.findStatusById(1L)).thenReturn(Optional.of(Status.PENDENTE));
+        Mockito.when(repository.patch(Mockito.eq(1L), Mockito.isNull(), Mockito.any())).thenReturn(1);
+        Mockito.when(repository.findById(1L)).thenReturn(Optional.of(new Task(1L, "Task 1", Status.FINALIZADA, null)));
+        Mockito.when(repository.deleteTaskById(1L)).thenReturn(1);
+        TaskDTO dto = new TaskDTO();
+        dto.setDescription("Task 1");
+        dto.setStatus(Status.FINALIZADA);
+
+        service.saveTask(dto, null);
+        service.updateTask(dto, 1L, null, null);
+        service.deleteById(1L);
+
+        ArgumentCaptor<TaskStats.Delta> deltas = ArgumentCaptor.forClass(TaskStats.Delta.class);
+        Mockito.verify(stats, Mockito.times(3)).recordAfterCommit(deltas.capture());
+        assertEquals(1, deltas.getAllValues().get(0).change(Status.PENDENTE));
+        assertEquals(-1, deltas.getAllValues().get(1).change(Status.PENDENTE));
+        assertEquals(1, deltas.getAllValues().get(1).change(Status.FINALIZADA));
+        assertEquals(-1, deltas.getAllValues().get(2).change(Status.PENDENTE));
+    }
+
+    @Test
+    @DisplayName("A rejected update must roll back without bumping the change version")
+    void updateTask_RejectedDoesNotRecordChange() {
+        Mockito.when(repository.patch(Mockito.eq(1L), Mockito.eq(3L), Mockito.any())).thenReturn(0);
+        Mockito.when(repository.existsById(1L)).thenReturn(true);
 
-        service.deleteById(task.getId());
+        assertThrows(PreconditionFailedException.class, () -> service.updateTask(new TaskDTO(), 1L, null, 3L));
 
-        Mockito.verify(repository).findById(task.getId());
-        Mockito.verify(repository).deleteById(task.getId());
+        Mockito.verify(changeTracker, Mockito.never()).recordChange();
+        Mockito.verify(transactionManager).rollback(Mockito.any());
+        Mockito.verifyNoInteractions(eventPublisher);
     }
 
     @Test
@@ -0,0 +1,145 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.TaskStatsDTO;
+import app.brickup.apirest.model.Status;
+import app.brickup.apirest.repository.TaskRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class TaskStatsTest {
+    @Mock
+    private TaskRepository repository;
+
+    private final TestClock clock = new TestClock();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("The counts must start from the database and follow the writes without querying again")
+    void counts() {
+        Mockito.when(repository.countByStatus()).thenReturn(List.of(
+                new Object[]{Status.PENDENTE, 3L}, new Object[]{Status.FINALIZADA, 2L}));
+        TaskStats stats = stats();
+        assertEquals(5, stats.snapshot().getTotal());
+
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 2));
+        stats.recordAfterCommit(new TaskStats.Delta().changed(Status.PENDENTE, Status.FINALIZADA));
+        stats.recordAfterCommit(new TaskStats.Delta().deleted(Status.FINALIZADA, 1));
+        TaskStatsDTO snapshot = stats.snapshot();
+
+        assertEquals(4, snapshot.getCounts().get(Status.PENDENTE));
+        assertEquals(2, snapshot.getCounts().get(Status.FINALIZADA));
+        assertEquals(6, snapshot.getTotal());
+        assertEquals(clock.instant(), snapshot.getReconciledAt());
+        Mockito.verify(repository).countByStatus();
+    }
+
+    @Test
+    @DisplayName("Changes must only count once their transaction has committed")
+    void afterCommit() {
+        TaskStats stats = stats();
+        stats.reconcile();
+
+        TransactionSynchronizationManager.initSynchronization();
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 1));
+        assertEquals(0, stats.snapshot().getTotal());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(1, stats.snapshot().getTotal());
+    }
+
+    @Test
+    @DisplayName("Reconciling must replace counts that drifted from the database")
+    void reconcile() {
+        Mockito.when(repository.countByStatus())
+                .thenReturn(List.of())
+                .thenReturn(List.<Object[]>of(new Object[]{Status.FINALIZADA, 7L}));
+        TaskStats stats = stats();
+        stats.reconcile();
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 4));
+
+        clock.advance(Duration.ofMinutes(1));
+        stats.reconcile();
+
+        TaskStatsDTO snapshot = stats.snapshot();
+        assertEquals(0, snapshot.getCounts().get(Status.PENDENTE));
+        assertEquals(7, snapshot.getCounts().get(Status.FINALIZADA));
+        assertEquals(clock.instant(), snapshot.getReconciledAt());
+    }
+
+    @Test
+    @DisplayName("Creations must be counted over the last minute, five minutes and hour")
+    void creationRates() {
+        TaskStats stats = stats();
+        stats.reconcile();
+
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 5));
+        clock.advance(Duration.ofMinutes(3));
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 2));
+        assertCreated(stats, 2, 7, 7);
+
+        clock.advance(Duration.ofMinutes(10));
+        assertCreated(stats, 0, 0, 7);
+
+        // The ring is back at the first minute; its old count must not leak into the new one.
+        clock.advance(Duration.ofMinutes(47));
+        stats.recordAfterCommit(new TaskStats.Delta().created(Status.PENDENTE, 1));
+        assertCreated(stats, 1, 1, 3);
+    }
+
+    private static void assertCreated(TaskStats stats, long lastMinute, long last5Minutes, long lastHour) {
+        TaskStatsDTO snapshot = stats.snapshot();
+        assertEquals(List.of(lastMinute, last5Minutes, lastHour), List.of(snapshot.getCreatedLastMinute(),
+                snapshot.getCreatedLast5Minutes(), snapshot.getCreatedLastHour()));
+    }
+
+    private TaskStats stats() {
+        return new TaskStats(repository, new SimpleMeterRegistry(), clock);
+    }
+
+    private static class TestClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T10:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
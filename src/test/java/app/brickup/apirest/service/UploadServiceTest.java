@@ -0,0 +1,197 @@
+package app.brickup.apirest.service;
+
+import app.brickup.apirest.dto.StoredImage;
+import app.brickup.apirest.dto.TaskDTO;
+import app.brickup.apirest.dto.UploadDTO;
+import app.brickup.apirest.exceptions.InvalidUploadException;
+import app.brickup.apirest.exceptions.PreconditionFailedException;
+import app.brickup.apirest.exceptions.TooManyUploadsException;
+import app.brickup.apirest.exceptions.UploadNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(MockitoExtension.class)
+class UploadServiceTest {
+    private static final byte[] IMAGE = image(300_000);
+
+    @TempDir
+    private Path root;
+
+    @Mock
+    private TaskService taskService;
+
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(root.toString());
+    }
+
+    @Test
+    @DisplayName("Chunks sent in parallel and out of order must be assembled on disk and attached to the task")
+    void parallelChunks() throws Exception {
+        UploadService service = service(Duration.ofMinutes(30));
+        UploadDTO upload = service.create(IMAGE.length);
+        Mockito.when(taskService.updateImage(Mockito.eq(1L), Mockito.any(), Mockito.isNull())).thenReturn(new TaskDTO());
+
+        int chunk = 64 * 1024;
+        List<Callable<UploadDTO>> chunks = IntStream.iterate(IMAGE.length / chunk * chunk, start -> start >= 0,
+                        start -> start - chunk)
+                .mapToObj(start -> (Callable<UploadDTO>) () -> write(service, upload.getId(), start,
+                        Math.min(start + chunk, IMAGE.length)))
+                .toList();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (Future<UploadDTO> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        UploadDTO status = service.status(upload.getId());
+        assertEquals(IMAGE.length, status.getReceived());
+        assertEquals(1, status.getRanges().size());
+
+        service.complete(upload.getId(), 1L, null);
+
+        ArgumentCaptor<StoredImage> stored = ArgumentCaptor.forClass(StoredImage.class);
+        Mockito.verify(taskService).updateImage(Mockito.eq(1L), stored.capture(), Mockito.isNull());
+        assertArrayEquals(IMAGE, Files.readAllBytes(Path.of(stored.getValue().getLocation())));
+        assertEquals("image/png", stored.getValue().getContentType());
+        assertThrows(UploadNotFoundException.class, () -> service.status(upload.getId()));
+        assertEquals(0, countFiles(store.tempDirectory()));
+    }
+
+    @Test
+    @DisplayName("A chunk cut short must keep the bytes that arrived so only the gap is resent")
+    void shortChunk() throws IOException {
+        UploadService service = service(Duration.ofMinutes(30));
+        String id = service.create(IMAGE.length).getId();
+
+        ByteArrayInputStream body = new ByteArrayInputStream(IMAGE, 0, 1000);
+        assertThrows(InvalidUploadException.class,
+                () -> service.write(id, "bytes 0-" + (IMAGE.length - 1) + "/" + IMAGE.length, body));
+
+        UploadDTO status = service.status(id);
+        assertEquals(1000, status.getReceived());
+        assertEquals(0, status.getRanges().get(0).getStart());
+        assertEquals(1000, status.getRanges().get(0).getEnd());
+        assertThrows(InvalidUploadException.class, () -> service.complete(id, 1L, null));
+        Mockito.verifyNoInteractions(taskService);
+    }
+
+    @Test
+    @DisplayName("Ranges outside the announced size or with another total must be rejected")
+    void invalidRange() throws IOException {
+        UploadService service = service(Duration.ofMinutes(30));
+        String id = service.create(100).getId();
+        ByteArrayInputStream body = new ByteArrayInputStream(new byte[10]);
+
+        assertThrows(InvalidUploadException.class, () -> service.write(id, "bytes 95-104/100", body));
+        assertThrows(InvalidUploadException.class, () -> service.write(id, "bytes 0-9/200", body));
+        assertThrows(InvalidUploadException.class, () -> service.write(id, "0-9/100", body));
+        assertThrows(InvalidUploadException.class, () -> service.create(DataSize.ofMegabytes(51).toBytes()));
+    }
+
+    @Test
+    @DisplayName("A failed attach must keep the stored image so completing can be retried")
+    void completeRetried() throws IOException {
+        UploadService service = service(Duration.ofMinutes(30));
+        String id = service.create(IMAGE.length).getId();
+        write(service, id, 0, IMAGE.length);
+        Mockito.when(taskService.updateImage(Mockito.eq(1L), Mockito.any(), Mockito.eq(3L)))
+                .thenThrow(PreconditionFailedException.class);
+        Mockito.when(taskService.updateImage(Mockito.eq(1L), Mockito.any(), Mockito.eq(4L))).thenReturn(new TaskDTO());
+
+        assertThrows(PreconditionFailedException.class, () -> service.complete(id, 1L, 3L));
+        service.complete(id, 1L, 4L);
+
+        Mockito.verify(taskService, Mockito.times(2)).updateImage(Mockito.eq(1L), Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    @DisplayName("Cancelled and idle sessions must be dropped along with their file")
+    void cancelAndExpire() throws IOException {
+        UploadService service = service(Duration.ZERO);
+        String cancelled = service.create(100).getId();
+        String idle = service.create(100).getId();
+
+        service.cancel(cancelled);
+        assertThrows(UploadNotFoundException.class, () -> service.status(cancelled));
+        assertEquals(1, countFiles(store.tempDirectory()));
+
+        service.expire();
+        assertThrows(UploadNotFoundException.class, () -> service.status(idle));
+        assertEquals(0, countFiles(store.tempDirectory()));
+    }
+
+    @Test
+    @DisplayName("Sessions beyond the session or reserved byte limit must be rejected until others end")
+    void limits() throws IOException {
+        UploadService service = new UploadService(store, taskService, new TaskMetrics(new SimpleMeterRegistry()),
+                DataSize.ofMegabytes(50), 2, DataSize.ofBytes(1000), Duration.ofMinutes(30));
+
+        String first = service.create(600).getId();
+        assertThrows(TooManyUploadsException.class, () -> service.create(500));
+        String second = service.create(400).getId();
+        assertThrows(TooManyUploadsException.class, () -> service.create(1));
+        assertEquals(2, countFiles(store.tempDirectory()));
+
+        service.cancel(first);
+        service.create(500);
+        assertThrows(TooManyUploadsException.class, () -> service.create(100));
+        service.cancel(second);
+        service.create(100);
+    }
+
+    private UploadService service(Duration expireAfter) {
+        return new UploadService(store, taskService, new TaskMetrics(new SimpleMeterRegistry()),
+                DataSize.ofMegabytes(50), 100, DataSize.ofGigabytes(1), expireAfter);
+    }
+
+    private static UploadDTO write(UploadService service, String id, int start, int end) throws IOException {
+        return service.write(id, "bytes " + start + "-" + (end - 1) + "/" + IMAGE.length,
+                new ByteArrayInputStream(Arrays.copyOfRange(IMAGE, start, end)));
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] image(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + i / 251);
+        }
+        System.arraycopy(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'}, 0, bytes, 0, 8);
+        return bytes;
+    }
+}